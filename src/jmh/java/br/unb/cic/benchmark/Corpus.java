@@ -0,0 +1,94 @@
+package br.unb.cic.benchmark;
+
+import br.unb.cic.goda.model.Actor;
+import br.unb.cic.goda.model.Goal;
+import br.unb.cic.goda.rtgoretoprism.generator.goda.producer.PARAMProducer;
+import br.unb.cic.goda.rtgoretoprism.generator.goda.producer.RTGoreProducer;
+import br.unb.cic.goda.rtgoretoprism.generator.goda.writer.GenerationWorkspace;
+import br.unb.cic.integration.PistarModelConverter;
+import br.unb.cic.pistar.model.PistarModel;
+import br.unb.cic.pistar.model.SyntheticModelGenerator;
+import com.google.gson.Gson;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The piStar models the benchmarks run on, as JSON.
+ * <p>
+ * {@code corpus} is every model of the testFiles resources from which both
+ * the PRISM model and the PARAM formula are generated without errors;
+ * {@code synthetic-N} is a model of about N nodes from the
+ * {@link SyntheticModelGenerator}.
+ */
+final class Corpus {
+
+    private static final int TEST_FILES = 35;
+
+    private Corpus() {
+    }
+
+    static List<String> load(String name) throws IOException {
+        if ("corpus".equals(name))
+            return testFiles();
+        if (name.startsWith("synthetic-")) {
+            SyntheticModelGenerator generator = new SyntheticModelGenerator(1);
+            generator.setDepth(8);
+            generator.setFanOut(2, 5);
+            generator.setMaxNodes(Integer.parseInt(name.substring("synthetic-".length())));
+            List<String> models = new ArrayList<>();
+            models.add(generator.generateJson());
+            return models;
+        }
+        throw new IllegalArgumentException("Unknown model set " + name);
+    }
+
+    private static List<String> testFiles() throws IOException {
+        List<String> models = new ArrayList<>();
+        for (int i = 1; i <= TEST_FILES; i++) {
+            String json = resource("testFiles/Test" + i + ".txt");
+            if (json != null && generates(json))
+                models.add(json);
+        }
+        return models;
+    }
+
+    private static boolean generates(String json) {
+        try {
+            PistarModel pistarModel = new Gson().fromJson(json, PistarModel.class);
+            Set<Actor> actors = new LinkedHashSet<>();
+            Set<Goal> goals = new LinkedHashSet<>();
+            new PistarModelConverter(pistarModel).convert(actors, goals);
+            if (actors.isEmpty())
+                return false;
+            try (GenerationWorkspace workspace = new GenerationWorkspace()) {
+                new RTGoreProducer(actors, goals, workspace).run();
+                PARAMProducer producer = new PARAMProducer(actors, goals, workspace, "tools");
+                producer.setModelCheckerFactory(id -> model -> "rTask" + id);
+                producer.run();
+            }
+            return true;
+        } catch (Exception | StackOverflowError e) {
+            return false;
+        }
+    }
+
+    private static String resource(String name) throws IOException {
+        try (InputStream in = Corpus.class.getClassLoader().getResourceAsStream(name)) {
+            if (in == null)
+                return null;
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1)
+                out.write(buffer, 0, read);
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
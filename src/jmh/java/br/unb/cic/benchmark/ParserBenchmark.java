@@ -0,0 +1,72 @@
+package br.unb.cic.benchmark;
+
+import br.unb.cic.goda.rtgoretoprism.generator.goda.parser.CtxParser;
+import br.unb.cic.goda.rtgoretoprism.generator.goda.parser.RTParser;
+import br.unb.cic.goda.rtgoretoprism.model.kl.Const;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The RT annotation and context condition parsers, on annotations like those
+ * in the testFiles models. The {@code cached} benchmarks hit the parser
+ * caches; the {@code uncached} ones make every key unique so each call
+ * parses.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParserBenchmark {
+
+    private static final String[] RT_ANNOTATIONS = {
+            "G1#G2\n", "G1;G2\n", "G1|G2\n", "G3;G1\n", "T1#3\n", "T1+3\n", "T1.1#T1.2\n",
+            "T1.1@2\n", "T1@2\n", "opt(T1.11)\n", "try(T1)?skip:T2\n", "try(T1.1)?T1.2:T1.3\n"
+    };
+
+    private static final String[] CONTEXTS = {
+            "assertion condition OPERANDO = true",
+            "assertion condition OPERANDO > 10",
+            "assertion condition MEMORY<30&PROCESSOR<=80"
+    };
+
+    private long sequence;
+
+    @Benchmark
+    public void rtCached(Blackhole bh) throws Exception {
+        for (String annotation : RT_ANNOTATIONS)
+            bh.consume(RTParser.parseRegex("G0", annotation, Const.AND));
+    }
+
+    @Benchmark
+    public void rtUncached(Blackhole bh) throws Exception {
+        String uid = "G" + sequence++;
+        for (String annotation : RT_ANNOTATIONS)
+            bh.consume(RTParser.parseRegex(uid, annotation, Const.AND));
+    }
+
+    @Benchmark
+    public void ctxCached(Blackhole bh) throws Exception {
+        for (String context : CONTEXTS)
+            bh.consume(CtxParser.parseRegex(context));
+    }
+
+    @Benchmark
+    public void ctxUncached(Blackhole bh) throws Exception {
+        String suffix = Long.toString(sequence++);
+        for (String context : CONTEXTS)
+            bh.consume(CtxParser.parseRegex(context.replace("OPERANDO", "OPERANDO" + suffix)
+                    .replace("MEMORY", "MEMORY" + suffix)));
+    }
+}
@@ -0,0 +1,142 @@
+package br.unb.cic.benchmark;
+
+import br.unb.cic.goda.model.Actor;
+import br.unb.cic.goda.model.Goal;
+import br.unb.cic.goda.rtgoretoprism.generator.goda.producer.PARAMProducer;
+import br.unb.cic.goda.rtgoretoprism.generator.goda.producer.RTGoreProducer;
+import br.unb.cic.goda.rtgoretoprism.generator.goda.writer.GenerationWorkspace;
+import br.unb.cic.goda.rtgoretoprism.paramwrapper.NativeModelChecker;
+import br.unb.cic.goda.rtgoretoprism.paramwrapper.ParametricModelChecker;
+import br.unb.cic.integration.PistarModelConverter;
+import br.unb.cic.pistar.model.PistarModel;
+import br.unb.cic.pistar.model.PistarModelReader;
+import com.google.gson.Gson;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Each stage of the generation pipeline, on every model of the set:
+ * reading the piStar JSON, converting it to goal model entities, writing
+ * the PRISM model and composing the PARAM formula. The later stages start
+ * from the output of the earlier ones, prepared once per trial.
+ * <p>
+ * {@code checker=stub} answers every leaf with its reliability variable, so
+ * the PARAM stage measures the formula composition alone;
+ * {@code checker=native} also solves the leaf DTMCs. The PARAM executable is
+ * never run.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PipelineBenchmark {
+
+    @Param({"corpus", "synthetic-1000", "synthetic-10000"})
+    public String models;
+
+    private final Gson gson = new Gson();
+    private List<String> json;
+    private List<PistarModel> parsed;
+    private List<Set<Actor>> actors;
+    private List<Set<Goal>> goals;
+
+    @Setup
+    public void setUp() throws Exception {
+        json = Corpus.load(models);
+        parsed = new ArrayList<>();
+        actors = new ArrayList<>();
+        goals = new ArrayList<>();
+        for (String model : json) {
+            PistarModel pistarModel = gson.fromJson(model, PistarModel.class);
+            Set<Actor> selectedActors = new LinkedHashSet<>();
+            Set<Goal> selectedGoals = new LinkedHashSet<>();
+            new PistarModelConverter(pistarModel).convert(selectedActors, selectedGoals);
+            parsed.add(pistarModel);
+            actors.add(selectedActors);
+            goals.add(selectedGoals);
+        }
+    }
+
+    @Benchmark
+    public void parseGson(Blackhole bh) {
+        for (String model : json)
+            bh.consume(gson.fromJson(model, PistarModel.class));
+    }
+
+    @Benchmark
+    public void parseStreaming(Blackhole bh) throws Exception {
+        for (String model : json)
+            bh.consume(PistarModelReader.read(new StringReader(model)));
+    }
+
+    @Benchmark
+    public void convert(Blackhole bh) {
+        for (PistarModel model : parsed) {
+            Set<Actor> selectedActors = new LinkedHashSet<>();
+            Set<Goal> selectedGoals = new LinkedHashSet<>();
+            new PistarModelConverter(model).convert(selectedActors, selectedGoals);
+            bh.consume(selectedGoals);
+        }
+    }
+
+    @Benchmark
+    public void prism(Blackhole bh) throws Exception {
+        for (int i = 0; i < actors.size(); i++) {
+            try (GenerationWorkspace workspace = new GenerationWorkspace()) {
+                bh.consume(new RTGoreProducer(actors.get(i), goals.get(i), workspace).run());
+                bh.consume(workspace.getFileNames());
+            }
+        }
+    }
+
+    @Benchmark
+    public void param(Checker checker, Blackhole bh) throws Exception {
+        for (int i = 0; i < actors.size(); i++) {
+            try (GenerationWorkspace workspace = new GenerationWorkspace()) {
+                PARAMProducer producer = new PARAMProducer(actors.get(i), goals.get(i), workspace, "tools");
+                producer.setModelCheckerFactory(checker.factory);
+                producer.run();
+                for (String name : workspace.getFileNames())
+                    if (name.startsWith("result"))
+                        bh.consume(workspace.readFile(name));
+            }
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Checker {
+
+        @Param({"stub", "native"})
+        public String checker;
+
+        private Function<String, ParametricModelChecker> factory;
+
+        @Setup
+        public void setUp() {
+            if ("native".equals(checker))
+                factory = NativeModelChecker::new;
+            else
+                factory = id -> model -> "rTask" + id;
+        }
+    }
+}
@@ -3,7 +3,9 @@ package br.unb.cic.goda.rtgoretoprism.action;
 import br.unb.cic.goda.model.Actor;
 import br.unb.cic.goda.model.Goal;
 import br.unb.cic.goda.rtgoretoprism.generator.CodeGenerationException;
+import br.unb.cic.goda.rtgoretoprism.generator.goda.writer.GenerationWorkspace;
 import br.unb.cic.goda.rtgoretoprism.generator.goda.producer.RTGoreProducer;
+import br.unb.cic.goda.rtgoretoprism.util.Span;
 
 import java.io.IOException;
 import java.util.Set;
@@ -12,23 +14,36 @@ public class PRISMCodeGenerationAction {
 
     private Set<Actor> selectedActors;
     private Set<Goal> selectedGoals;
+    private GenerationWorkspace workspace;
+    private Span span = Span.NONE;
 
-    public PRISMCodeGenerationAction(Set<Actor> selectedActors, Set<Goal> selectedGoals) {
+    public PRISMCodeGenerationAction(Set<Actor> selectedActors, Set<Goal> selectedGoals, GenerationWorkspace workspace) {
         this.selectedActors = selectedActors;
         this.selectedGoals = selectedGoals;
+        this.workspace = workspace;
+    }
+
+    public void setSpan(Span span) {
+        this.span = span;
     }
 
     public void run() {
-        if (selectedActors.isEmpty())
-            return;
-        String sourceFolder = "src/main/resources/TemplateInput";
-        String targetFolder = "dtmc";
-        RTGoreProducer producer = new RTGoreProducer(selectedActors, selectedGoals, sourceFolder, targetFolder);
         try {
-            producer.run();
+            execute();
         } catch (CodeGenerationException | IOException e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * Same as {@link #run()}, but reports failures to the caller.
+     */
+    public void execute() throws CodeGenerationException, IOException {
+        if (selectedActors.isEmpty())
+            return;
+        RTGoreProducer producer = new RTGoreProducer(selectedActors, selectedGoals, workspace);
+        producer.setSpan(span);
+        producer.run();
+    }
+
 }
\ No newline at end of file
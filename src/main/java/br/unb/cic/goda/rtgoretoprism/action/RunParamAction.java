@@ -3,7 +3,10 @@ package br.unb.cic.goda.rtgoretoprism.action;
 import br.unb.cic.goda.model.Actor;
 import br.unb.cic.goda.model.Goal;
 import br.unb.cic.goda.rtgoretoprism.generator.CodeGenerationException;
+import br.unb.cic.goda.rtgoretoprism.generator.goda.writer.GenerationWorkspace;
 import br.unb.cic.goda.rtgoretoprism.generator.goda.producer.PARAMProducer;
+import br.unb.cic.goda.rtgoretoprism.generator.goda.producer.ParamProgressListener;
+import br.unb.cic.goda.rtgoretoprism.util.Span;
 
 import java.io.IOException;
 import java.util.Set;
@@ -12,24 +15,43 @@ public class RunParamAction {
 
     private Set<Actor> selectedActors;
     private Set<Goal> selectedGoals;
+    private GenerationWorkspace workspace;
+    private ParamProgressListener progressListener = ParamProgressListener.NONE;
+    private Span span = Span.NONE;
 
-    public RunParamAction(Set<Actor> selectedActors, Set<Goal> selectedGoals) {
+    public RunParamAction(Set<Actor> selectedActors, Set<Goal> selectedGoals, GenerationWorkspace workspace) {
         this.selectedActors = selectedActors;
         this.selectedGoals = selectedGoals;
+        this.workspace = workspace;
+    }
+
+    public void setProgressListener(ParamProgressListener progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    public void setSpan(Span span) {
+        this.span = span;
     }
 
     public void run() {
-        if (selectedActors.isEmpty())
-            return;
-        String sourceFolder = "src/main/resources/TemplateInput";
-        String targetFolder = "dtmc";
-        String toolsFolder = "tools";
-        PARAMProducer producer = new PARAMProducer(selectedActors, selectedGoals, sourceFolder, targetFolder, toolsFolder);
         try {
-            producer.run();
+            execute();
         } catch (CodeGenerationException | IOException e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * Same as {@link #run()}, but reports failures to the caller.
+     */
+    public void execute() throws CodeGenerationException, IOException {
+        if (selectedActors.isEmpty())
+            return;
+        String toolsFolder = "tools";
+        PARAMProducer producer = new PARAMProducer(selectedActors, selectedGoals, workspace, toolsFolder);
+        producer.setProgressListener(progressListener);
+        producer.setSpan(span);
+        producer.run();
+    }
+
 }
\ No newline at end of file
@@ -1,17 +1,18 @@
 package br.unb.cic.goda.rtgoretoprism.generator.goda.parser;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
 import org.antlr.v4.runtime.ANTLRInputStream;
-import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.BailErrorStrategy;
 import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.DefaultErrorStrategy;
 import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.atn.PredictionMode;
 import org.antlr.v4.runtime.misc.ParseCancellationException;
 import org.antlr.v4.runtime.tree.ParseTree;
 
@@ -36,8 +37,21 @@ import br.unb.cic.CtxRegexParser.PrintExprContext;
 import br.unb.cic.CtxRegexParser.TriggerContext;
 import br.unb.cic.goda.rtgoretoprism.model.ctx.ContextCondition;
 import br.unb.cic.goda.rtgoretoprism.model.ctx.CtxSymbols;
+import br.unb.cic.goda.rtgoretoprism.util.LruCache;
+import br.unb.cic.goda.rtgoretoprism.util.PipelineMetrics;
+import br.unb.cic.goda.rtgoretoprism.util.Span;
 
 public class CtxParser{
+
+	private static final LruCache<String, Object[]> CACHE =
+			new LruCache<>(Integer.getInteger("goda.parser.cache.size", 4096));
+
+	private static final ThreadLocal<CtxRegexParser> PARSER = ThreadLocal.withInitial(() -> {
+		CtxRegexLexer lexer = new CtxRegexLexer(null);
+		lexer.removeErrorListeners();
+		lexer.addErrorListener(ThrowingErrorListener.INSTANCE);
+		return new CtxRegexParser(new CommonTokenStream(lexer));
+	});
 	
 	public static void main (String [] args){
 		try {
@@ -48,28 +62,57 @@ public class CtxParser{
 	}
 	
 	public static Object[] parseRegex(String regex) throws IOException, ParseCancellationException {
-		//Reading the DSL script
-		InputStream is = new ByteArrayInputStream((regex + '\n').getBytes("UTF-8"));
-	    
-	    //Loading the DSL  into the ANTLR stream.
-	    CharStream cs = new ANTLRInputStream(is);
-	    
-	    //Passing the input to the lexer to create tokens
-	    CtxRegexLexer lexer = new CtxRegexLexer(cs);
-	    lexer.removeErrorListeners();
-	    lexer.addErrorListener(ThrowingErrorListener.INSTANCE);
-	    
-	    CommonTokenStream tokens = new CommonTokenStream(lexer);
-	    
-	    //Passing the tokens to the parser to create the parse trea. 
-	    CtxRegexParser parser = new CtxRegexParser(tokens);
-	    parser.removeErrorListeners();
-	    parser.addErrorListener(ThrowingErrorListener.INSTANCE);
-	    
-	    ParseTree tree = parser.ctx();
-	    CtxFormulaParserVisitor CtxRegexVisitor = new CtxFormulaParserVisitor();
-	    
-	    return new Object[]{CtxRegexVisitor.memory, CtxRegexVisitor.visit(tree), CtxRegexVisitor.type};
+		return parseRegex(regex, Span.NONE);
+	}
+
+	/**
+	 * Same as {@link #parseRegex(String)}, counting the cache hits and misses
+	 * on the span.
+	 */
+	public static Object[] parseRegex(String regex, Span span) throws IOException, ParseCancellationException {
+		Object[] res = CACHE.get(regex);
+		span.count(res != null ? "ctxParser.hits" : "ctxParser.misses");
+		if (res == null) {
+			try (PipelineMetrics.Timer timer = PipelineMetrics.start("ctx.parse")) {
+				ParseTree tree = parseTree(regex + '\n');
+				CtxFormulaParserVisitor CtxRegexVisitor = new CtxFormulaParserVisitor();
+				String formula = CtxRegexVisitor.visit(tree);
+				res = new Object[]{Collections.unmodifiableList(CtxRegexVisitor.memory), formula, CtxRegexVisitor.type};
+			}
+			CACHE.put(regex, res);
+		}
+		return res.clone();
+	}
+
+	/**
+	 * Parses with SLL prediction first and falls back to full LL, which also
+	 * reports the syntax errors, see RTParser.
+	 */
+	private static ParseTree parseTree(String regex) {
+		CtxRegexParser parser = PARSER.get();
+		CtxRegexLexer lexer = (CtxRegexLexer) parser.getTokenStream().getTokenSource();
+		try {
+			lexer.setInputStream(new ANTLRInputStream(regex));
+			parser.setTokenStream(new CommonTokenStream(lexer));
+			parser.removeErrorListeners();
+			parser.setErrorHandler(new BailErrorStrategy());
+			parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+			try {
+				return parser.ctx();
+			} catch (ParseCancellationException e) {
+				if (e.getCause() == null)
+					throw e;
+				lexer.setInputStream(new ANTLRInputStream(regex));
+				parser.setTokenStream(new CommonTokenStream(lexer));
+				parser.addErrorListener(ThrowingErrorListener.INSTANCE);
+				parser.setErrorHandler(new DefaultErrorStrategy());
+				parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+				return parser.ctx();
+			}
+		} finally {
+			lexer.setInputStream(new ANTLRInputStream(""));
+			parser.setTokenStream(new CommonTokenStream(lexer));
+		}
 	}
 }
 
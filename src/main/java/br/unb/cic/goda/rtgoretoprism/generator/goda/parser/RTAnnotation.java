@@ -0,0 +1,41 @@
+package br.unb.cic.goda.rtgoretoprism.generator.goda.parser;
+
+import br.unb.cic.goda.rtgoretoprism.paramformula.Expr;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * A parsed runtime regex annotation: what it says about each element it
+ * names and the PARAM formula it stands for. Immutable, so parses can be
+ * cached and shared between the producers.
+ */
+public final class RTAnnotation {
+
+    private final Map<String, RTElement> elements;
+    private final Expr paramFormula;
+
+    RTAnnotation(Map<String, RTElement> elements, Expr paramFormula) {
+        this.elements = elements;
+        this.paramFormula = paramFormula;
+    }
+
+    /**
+     * The element with the given id, or {@link RTElement#NONE}.
+     */
+    public RTElement getElement(String id) {
+        return elements.getOrDefault(id, RTElement.NONE);
+    }
+
+    public Collection<RTElement> getElements() {
+        return elements.values();
+    }
+
+    /**
+     * The formula of the annotation, or {@code null} when it names a single
+     * element.
+     */
+    public Expr getParamFormula() {
+        return paramFormula;
+    }
+}
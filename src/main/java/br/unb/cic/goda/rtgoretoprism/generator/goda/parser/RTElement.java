@@ -0,0 +1,116 @@
+package br.unb.cic.goda.rtgoretoprism.generator.goda.parser;
+
+import br.unb.cic.goda.rtgoretoprism.model.kl.Const;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * What a runtime regex annotation says about one of the elements (or group
+ * of elements, such as {@code G1-G2}) it names. Immutable.
+ */
+public final class RTElement {
+
+    public enum Flag {
+        /** Named by the annotation, so its time path is set by it */
+        SORTED,
+        /** Runs interleaved with its siblings ({@code #}) */
+        PARALLEL,
+        /** Runs after its predecessor ({@code ;} or a try branch) */
+        SEQUENTIAL,
+        /** Declared with {@code opt(...)} */
+        OPTIONAL
+    }
+
+    /** An element the annotations say nothing about */
+    public static final RTElement NONE = new RTElement(null, 0, null, 0, Collections.emptySet(), false, null, null);
+
+    private final String id;
+    private final int flags;
+    private final Const cardType;
+    private final int cardNumber;
+    private final Set<String> alternatives;
+    private final boolean tried;
+    private final String trySuccess;
+    private final String tryFailure;
+
+    RTElement(String id, int flags, Const cardType, int cardNumber, Set<String> alternatives,
+              boolean tried, String trySuccess, String tryFailure) {
+        this.id = id;
+        this.flags = flags;
+        this.cardType = cardType;
+        this.cardNumber = cardNumber;
+        this.alternatives = alternatives;
+        this.tried = tried;
+        this.trySuccess = trySuccess;
+        this.tryFailure = tryFailure;
+    }
+
+    static int mask(Flag flag) {
+        return 1 << flag.ordinal();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public boolean has(Flag flag) {
+        return (flags & mask(flag)) != 0;
+    }
+
+    /**
+     * The cardinality ({@link Const#INT}, {@link Const#SEQ} or
+     * {@link Const#RTRY}), or {@code null} when there is none.
+     */
+    public Const getCardType() {
+        return cardType;
+    }
+
+    public int getCardNumber() {
+        return cardNumber;
+    }
+
+    /**
+     * The ids of the elements this one is an alternative to, possibly none.
+     */
+    public Set<String> getAlternatives() {
+        return alternatives;
+    }
+
+    /**
+     * Whether the element is tried, with {@link #getTrySuccess()} and
+     * {@link #getTryFailure()} (either may be {@code null}, for skip) as
+     * what follows.
+     */
+    public boolean isTried() {
+        return tried;
+    }
+
+    public String getTrySuccess() {
+        return trySuccess;
+    }
+
+    public String getTryFailure() {
+        return tryFailure;
+    }
+
+    /**
+     * This element updated with what a later annotation says about it: each
+     * of the time, cardinality, alternative and try details the later one
+     * has replaces this one's, the others are kept.
+     */
+    public RTElement overriddenBy(RTElement later) {
+        int timeMask = mask(Flag.SORTED) | mask(Flag.PARALLEL) | mask(Flag.SEQUENTIAL);
+        int merged = later.has(Flag.SORTED) ? later.flags & timeMask : flags & timeMask;
+        merged |= (flags | later.flags) & mask(Flag.OPTIONAL);
+        boolean laterCard = later.cardType != null;
+        boolean laterAlternatives = !later.alternatives.isEmpty();
+        return new RTElement(id, merged,
+                laterCard ? later.cardType : cardType,
+                laterCard ? later.cardNumber : cardNumber,
+                laterAlternatives ? later.alternatives : alternatives,
+                later.tried || tried,
+                later.tried ? later.trySuccess : trySuccess,
+                later.tried ? later.tryFailure : tryFailure);
+    }
+}
@@ -5,67 +5,148 @@ import br.unb.cic.RTRegexLexer;
 import br.unb.cic.RTRegexParser;
 import br.unb.cic.RTRegexParser.*;
 import br.unb.cic.goda.rtgoretoprism.model.kl.Const;
+import br.unb.cic.goda.rtgoretoprism.paramformula.Constant;
+import br.unb.cic.goda.rtgoretoprism.paramformula.Expr;
+import br.unb.cic.goda.rtgoretoprism.paramformula.Group;
+import br.unb.cic.goda.rtgoretoprism.paramformula.Power;
+import br.unb.cic.goda.rtgoretoprism.paramformula.Product;
+import br.unb.cic.goda.rtgoretoprism.paramformula.Sum;
 import br.unb.cic.goda.rtgoretoprism.paramformula.SymbolicParamAltGenerator;
+import br.unb.cic.goda.rtgoretoprism.paramformula.Variable;
+
+import br.unb.cic.goda.rtgoretoprism.util.LruCache;
+import br.unb.cic.goda.rtgoretoprism.util.PipelineMetrics;
+import br.unb.cic.goda.rtgoretoprism.util.Span;
 
 import org.antlr.v4.runtime.ANTLRInputStream;
-import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.BailErrorStrategy;
 import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.DefaultErrorStrategy;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
 import org.antlr.v4.runtime.tree.ParseTree;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 
+/**
+ * Parses the runtime regex annotations of goals.
+ * <p>
+ * The same annotation is parsed several times per generation (for the PRISM
+ * model and again for the PARAM formula), so results are kept in a bounded
+ * cache keyed by node, annotation and decomposition type; its size is set
+ * with the {@code goda.parser.cache.size} system property.
+ */
 public class RTParser {
 
-    public static Object[] parseRegex(String uid, String regex, Const decType) throws IOException {
-        //Reading the DSL script
-        InputStream is = new ByteArrayInputStream(regex.getBytes("UTF-8"));
-
-        //Loading the DSL script into the ANTLR stream.
-        CharStream cs = new ANTLRInputStream(is);
-
-        //Passing the input to the lexer to create tokens
-        RTRegexLexer lexer = new RTRegexLexer(cs);
-	    lexer.removeErrorListeners();
-	    lexer.addErrorListener(ThrowingErrorListener.INSTANCE);        
-
-        CommonTokenStream tokens = new CommonTokenStream(lexer);
-
-        //Passing the tokens to the parser to create the parse trea.
-        RTRegexParser parser = new RTRegexParser(tokens);
-	    parser.removeErrorListeners();
-	    parser.addErrorListener(ThrowingErrorListener.INSTANCE);        
+    private static final LruCache<List<Object>, RTAnnotation> CACHE =
+            new LruCache<>(Integer.getInteger("goda.parser.cache.size", 4096));
 
-        //Semantic model to be populated
-        //Graph g = new Graph();
+    private static final ThreadLocal<RTRegexParser> PARSER = ThreadLocal.withInitial(() -> {
+        RTRegexLexer lexer = new RTRegexLexer(null);
+        lexer.removeErrorListeners();
+        lexer.addErrorListener(ThrowingErrorListener.INSTANCE);
+        return new RTRegexParser(new CommonTokenStream(lexer));
+    });
 
-        //Adding the listener to facilitate walking through parse tree.
-        //parser.addParseListener(new MyRTRegexBaseListener());
-
-        //invoking the parser.
-        //parser.prog();
-
-        //Graph.printGraph(g);
+    public static RTAnnotation parseRegex(String uid, String regex, Const decType) throws IOException {
+        return parseRegex(uid, regex, decType, Span.NONE);
+    }
 
-        //ParseTreeWalker walker = new ParseTreeWalker();
-        //walker.walk(new MyRTRegexBaseListener(), parser.prog());
+    /**
+     * Same as {@link #parseRegex(String, String, Const)}, counting the cache
+     * hits and misses on the span.
+     */
+    public static RTAnnotation parseRegex(String uid, String regex, Const decType, Span span) throws IOException {
+        List<Object> key = Arrays.asList(uid, regex, decType);
+        RTAnnotation annotation = CACHE.get(key);
+        span.count(annotation != null ? "rtParser.hits" : "rtParser.misses");
+        if (annotation == null) {
+            try (PipelineMetrics.Timer timer = PipelineMetrics.start("rt.parse")) {
+                annotation = parse(uid, regex, decType);
+            }
+            CACHE.put(key, annotation);
+        }
+        return annotation;
+    }
 
-        ParseTree tree = parser.rt();
-        CustomRTRegexVisitor rtRegexVisitor = new CustomRTRegexVisitor(uid, decType);
-        rtRegexVisitor.visit(tree);
+    private static RTAnnotation parse(String uid, String regex, Const decType) {
+        ParseTree tree = parseTree(regex);
+        CustomRTRegexVisitor v = new CustomRTRegexVisitor(uid, decType);
+        v.visit(tree);
+
+        Set<String> ids = new LinkedHashSet<>(v.timeMemory.keySet());
+        ids.addAll(v.cardMemory.keySet());
+        ids.addAll(v.altMemory.keySet());
+        ids.addAll(v.tryMemory.keySet());
+        ids.addAll(v.optMemory.keySet());
+        Map<String, RTElement> elements = new HashMap<>();
+        for (String id : ids) {
+            int flags = 0;
+            Boolean[] time = v.timeMemory.get(id);
+            if (time != null) {
+                flags |= RTElement.mask(RTElement.Flag.SORTED);
+                if (time[0])
+                    flags |= RTElement.mask(RTElement.Flag.PARALLEL);
+                if (time[1])
+                    flags |= RTElement.mask(RTElement.Flag.SEQUENTIAL);
+            }
+            if (v.optMemory.containsKey(id))
+                flags |= RTElement.mask(RTElement.Flag.OPTIONAL);
+            Object[] card = v.cardMemory.get(id);
+            Set<String> alternatives = new HashSet<>();
+            for (String alternative : v.altMemory.getOrDefault(id, Collections.emptySet()))
+                alternatives.add(alternative.intern());
+            String[] tried = v.tryMemory.get(id);
+            elements.put(id.intern(), new RTElement(id.intern(), flags,
+                    card != null ? (Const) card[0] : null,
+                    card != null ? (Integer) card[1] : 0,
+                    alternatives.isEmpty() ? Collections.emptySet() : Collections.unmodifiableSet(alternatives),
+                    tried != null,
+                    tried != null && tried[0] != null ? tried[0].intern() : null,
+                    tried != null && tried[1] != null ? tried[1].intern() : null));
+        }
+        return new RTAnnotation(Collections.unmodifiableMap(elements), v.paramFormula);
+    }
 
-        return new Object[]{rtRegexVisitor.timeMemory,
-                rtRegexVisitor.cardMemory,
-                rtRegexVisitor.altMemory,
-                rtRegexVisitor.tryMemory,
-                rtRegexVisitor.optMemory,
-                rtRegexVisitor.paramFormula};
+    /**
+     * Parses with the faster SLL prediction first, and only when that fails
+     * again with full LL, which also reports the syntax errors.
+     */
+    private static ParseTree parseTree(String regex) {
+        RTRegexParser parser = PARSER.get();
+        RTRegexLexer lexer = (RTRegexLexer) parser.getTokenStream().getTokenSource();
+        try {
+            lexer.setInputStream(new ANTLRInputStream(regex));
+            parser.setTokenStream(new CommonTokenStream(lexer));
+            parser.removeErrorListeners();
+            parser.setErrorHandler(new BailErrorStrategy());
+            parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+            try {
+                return parser.rt();
+            } catch (ParseCancellationException e) {
+                if (e.getCause() == null)
+                    throw e; // reported by the lexer, LL would fail the same way
+                lexer.setInputStream(new ANTLRInputStream(regex));
+                parser.setTokenStream(new CommonTokenStream(lexer));
+                parser.addErrorListener(ThrowingErrorListener.INSTANCE);
+                parser.setErrorHandler(new DefaultErrorStrategy());
+                parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+                return parser.rt();
+            }
+        } finally {
+            // Do not keep the last input alive in the pooled parser
+            lexer.setInputStream(new ANTLRInputStream(""));
+            parser.setTokenStream(new CommonTokenStream(lexer));
+        }
     }
 }
 
@@ -73,7 +154,8 @@ class CustomRTRegexVisitor extends RTRegexBaseVisitor<String> {
 
     final String uid;
     final Const decType;
-    String paramFormula = new String();
+    /* Formula of the last composite expression visited, not yet used by its parent */
+    Expr paramFormula;
     Map<String, Boolean[]> timeMemory = new HashMap<String, Boolean[]>();
     Map<String, Object[]> cardMemory = new HashMap<String, Object[]>();
     Map<String, Set<String>> altMemory = new HashMap<String, Set<String>>();
@@ -108,23 +190,25 @@ class CustomRTRegexVisitor extends RTRegexBaseVisitor<String> {
         return gid;
     }
 
-    private String checkNestedRT(String paramFormulaAux) {
-        if (!paramFormula.isEmpty()) {
+    private Expr checkNestedRT(Expr paramFormulaAux) {
+        if (paramFormula != null) {
             paramFormulaAux = paramFormula;
-            paramFormula = "";
+            paramFormula = null;
         }
         return paramFormulaAux;
     }
 
+    private static Variable paramVariable(String gid) {
+        return new Variable(gid.replaceAll("\\.", "_"));
+    }
+
     @Override
     public String visitGTime(GTimeContext ctx) {
         String gidAo = visit(ctx.expr(0));
-        String paramFormulaAo = gidAo.replaceAll("\\.", "_");
-        paramFormulaAo = checkNestedRT(paramFormulaAo);
+        Expr paramFormulaAo = checkNestedRT(paramVariable(gidAo));
 
         String gidBo = visit(ctx.expr(1));
-        String paramFormulaBo = gidBo.replaceAll("\\.", "_");
-        paramFormulaBo = checkNestedRT(paramFormulaBo);
+        Expr paramFormulaBo = checkNestedRT(paramVariable(gidBo));
 
         //String [] gidAs = gidAo.split("-");
         String[] gidBs = gidBo.split("-");
@@ -138,11 +222,16 @@ class CustomRTRegexVisitor extends RTRegexBaseVisitor<String> {
         }
 
         if (decType.equals(Const.AND)) {
-            paramFormula = "( " + paramFormulaAo + " * " + paramFormulaBo + " )";
+            // ( A * B )
+            paramFormula = Group.spaced(new Product(paramFormulaAo, paramFormulaBo));
         } else {
             //paramFormula = "(MAX( " + paramFormulaAo + " , " + paramFormulaBo + " ))";
-            paramFormula = "(-1 * ( " + paramFormulaAo + " * " + paramFormulaBo + " ) + "
-                    + paramFormulaAo + " + " + paramFormulaBo + " )";
+            // (-1 * ( A * B ) + A + B )
+            paramFormula = new Group(Sum.builder()
+                    .plus(new Product(Constant.MINUS_ONE, Group.spaced(new Product(paramFormulaAo, paramFormulaBo))))
+                    .plus(paramFormulaAo)
+                    .plus(paramFormulaBo)
+                    .build(), false, true);
         }
         return gidAo + '-' + gidBo;
     }
@@ -171,7 +260,7 @@ class CustomRTRegexVisitor extends RTRegexBaseVisitor<String> {
         }
 
         SymbolicParamAltGenerator param = new SymbolicParamAltGenerator();
-        paramFormula = param.getAlternativeFormula(gids);
+        paramFormula = param.getAlternativeExpr(gids);
 
         return gidAo + '-' + gidBo;
     }
@@ -185,12 +274,16 @@ class CustomRTRegexVisitor extends RTRegexBaseVisitor<String> {
     @Override
     public String visitGOpt(GOptContext ctx) {
         String gId = super.visit(ctx.expr());
-        String paramFormulaId = gId.replaceAll("\\.", "_");
-        paramFormulaId = checkNestedRT(paramFormulaId);
+        Expr paramFormulaId = checkNestedRT(paramVariable(gId));
 
         String clearId = gId.replaceAll("\\.", "_");
-        paramFormula = "(OPT_" + clearId + " * " + paramFormulaId
-                + " - " + "OPT_" + clearId + " + 1)";
+        Variable opt = new Variable("OPT_" + clearId);
+        // (OPT_id * A - OPT_id + 1)
+        paramFormula = Group.tight(Sum.builder()
+                .plus(new Product(opt, paramFormulaId))
+                .minus(opt)
+                .plus(Constant.ONE)
+                .build());
         optMemory.put(gId, true);
 
         return gId;
@@ -199,21 +292,23 @@ class CustomRTRegexVisitor extends RTRegexBaseVisitor<String> {
     @Override
     public String visitGCard(GCardContext ctx) {
         String gid = visit(ctx.expr());
-        String paramFormulaId = gid.replaceAll("\\.", "_");
-        paramFormulaId = checkNestedRT(paramFormulaId);
+        Expr paramFormulaId = checkNestedRT(paramVariable(gid));
 
         String k = ctx.FLOAT().getText();
         if (ctx.op.getType() == RTRegexParser.INT) {
             cardMemory.put(gid, new Object[]{Const.INT, Integer.parseInt(ctx.FLOAT().getText())});
-            paramFormula = "(( " + paramFormulaId + " )^" + k + ")";
+            // (( A )^k)
+            paramFormula = Group.tight(new Power(Group.spaced(paramFormulaId), k));
         } else if (ctx.op.getType() == RTRegexParser.C_SEQ) {
             cardMemory.put(gid, new Object[]{Const.SEQ, Integer.parseInt(ctx.FLOAT().getText())});
-            paramFormula = "(( " + paramFormulaId + " )^" + k + ")";
+            paramFormula = Group.tight(new Power(Group.spaced(paramFormulaId), k));
         } else {
             cardMemory.put(gid, new Object[]{Const.RTRY, Integer.parseInt(ctx.FLOAT().getText())});
 
             k = String.valueOf(Integer.valueOf(k) + 1);
-            paramFormula = "(1 - (1 - " + paramFormulaId + " )^" + k + ")";
+            // (1 - (1 - A )^k)
+            Expr failure = new Group(Sum.builder().plus(Constant.ONE).minus(paramFormulaId).build(), false, true);
+            paramFormula = Group.tight(Sum.builder().plus(Constant.ONE).minus(new Power(failure, k)).build());
         }
         return gid;
     }
@@ -221,32 +316,32 @@ class CustomRTRegexVisitor extends RTRegexBaseVisitor<String> {
     @Override
     public String visitGTry(GTryContext ctx) {
         String gidT = visit(ctx.expr(0));
-        String paramFormulaT = gidT.replaceAll("\\.", "_");
-        paramFormulaT = checkNestedRT(paramFormulaT);
+        Expr paramFormulaT = checkNestedRT(paramVariable(gidT));
 
         String gidS = visit(ctx.expr(1));
-        String paramFormulaS = "1";
-        paramFormulaS = checkNestedRT(paramFormulaS);
+        Expr paramFormulaS = checkNestedRT(Constant.ONE);
 
         String gidF = visit(ctx.expr(2));
-        String paramFormulaF = "0";
-        paramFormulaF = checkNestedRT(paramFormulaF);
+        Expr paramFormulaF = checkNestedRT(Constant.ZERO);
 
         Boolean[] pathTimeS, pathTimeF;
         if (gidS != null) {
             pathTimeS = timeMemory.get(gidS);
             pathTimeS[1] = pathTimeS[1] = true;
-            paramFormulaS = gidS.replaceAll("\\.", "_");
+            paramFormulaS = paramVariable(gidS);
         }
         if (gidF != null) {
             pathTimeF = timeMemory.get(gidF);
             pathTimeF[1] = pathTimeF[1] = true;
-            paramFormulaF = gidF.replaceAll("\\.", "_");
+            paramFormulaF = paramVariable(gidF);
         }
         tryMemory.put(gidT, new String[]{gidS, gidF});
-        paramFormula = "( " + paramFormulaT + " * " + paramFormulaS
-                + " - " + paramFormulaT + " * " + paramFormulaF
-                + " + " + paramFormulaF + " )";
+        // ( T * S - T * F + F )
+        paramFormula = Group.spaced(Sum.builder()
+                .plus(new Product(paramFormulaT, paramFormulaS))
+                .minus(new Product(paramFormulaT, paramFormulaF))
+                .plus(paramFormulaF)
+                .build());
         return gidT;
     }
 
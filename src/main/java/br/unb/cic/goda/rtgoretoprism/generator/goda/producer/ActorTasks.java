@@ -0,0 +1,112 @@
+package br.unb.cic.goda.rtgoretoprism.generator.goda.producer;
+
+import br.unb.cic.goda.rtgoretoprism.generator.CodeGenerationException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the generation of independent actors concurrently.
+ * <p>
+ * The actors of every request run on one shared pool, and the PARAM leaf
+ * tasks of their formulas on another, each with
+ * {@code goda.param.threads} threads (default: the number of processors).
+ * The actors wait for their leaves, so they need a pool of their own.
+ */
+final class ActorTasks {
+
+    private static final int THREADS = Math.max(1,
+            Integer.getInteger("goda.param.threads", Runtime.getRuntime().availableProcessors()));
+
+    private static final ThreadPoolExecutor ACTORS = pool("actor-generation");
+    private static final ThreadPoolExecutor LEAVES = pool("param-leaf");
+
+    private ActorTasks() {
+    }
+
+    static ExecutorService actors() {
+        return ACTORS;
+    }
+
+    static ExecutorService leaves() {
+        return LEAVES;
+    }
+
+    private static ThreadPoolExecutor pool(String name) {
+        AtomicInteger threads = new AtomicInteger();
+        return new ThreadPoolExecutor(THREADS, THREADS, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread thread = new Thread(r, name + "-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Runs the tasks on the pool and returns their results in the order of
+     * the tasks. A single task runs on the calling thread. The first failure,
+     * or an interrupt, cancels the other tasks, interrupting those running.
+     */
+    static <T> List<T> invokeAll(ExecutorService pool, List<Callable<T>> tasks, String what) throws CodeGenerationException, IOException {
+        List<T> results = new ArrayList<>(tasks.size());
+        if (tasks.size() == 1) {
+            results.add(call(tasks.get(0)));
+            return results;
+        }
+        List<Future<T>> running = new ArrayList<>(tasks.size());
+        try {
+            for (Callable<T> task : tasks)
+                running.add(pool.submit(task));
+            for (Future<T> task : running)
+                results.add(task.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CodeGenerationException(what + " cancelled.");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof CodeGenerationException)
+                throw (CodeGenerationException) cause;
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new CodeGenerationException(what + " failed.", cause);
+        } finally {
+            cancel(pool, running);
+        }
+        return results;
+    }
+
+    /**
+     * Cancels the tasks, interrupting those running, and drops the ones
+     * still queued from the pool.
+     */
+    static void cancel(ExecutorService pool, Collection<? extends Future<?>> tasks) {
+        boolean cancelled = false;
+        for (Future<?> task : tasks)
+            cancelled |= task.cancel(true);
+        if (cancelled && pool instanceof ThreadPoolExecutor)
+            ((ThreadPoolExecutor) pool).purge();
+    }
+
+    private static <T> T call(Callable<T> task) throws CodeGenerationException, IOException {
+        try {
+            return task.call();
+        } catch (CodeGenerationException | IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new CodeGenerationException(e);
+        }
+    }
+}
@@ -4,57 +4,197 @@ import br.unb.cic.goda.model.Actor;
 import br.unb.cic.goda.model.Goal;
 import br.unb.cic.goda.rtgoretoprism.generator.CodeGenerationException;
 import br.unb.cic.goda.rtgoretoprism.generator.goda.parser.RTParser;
+import br.unb.cic.goda.rtgoretoprism.generator.goda.writer.GenerationWorkspace;
 import br.unb.cic.goda.rtgoretoprism.generator.goda.writer.ManageWriter;
 import br.unb.cic.goda.rtgoretoprism.generator.goda.writer.ParamWriter;
+import br.unb.cic.goda.rtgoretoprism.generator.goda.writer.TemplateRegistry;
 import br.unb.cic.goda.rtgoretoprism.generator.kl.AgentDefinition;
 import br.unb.cic.goda.rtgoretoprism.model.kl.Const;
 import br.unb.cic.goda.rtgoretoprism.model.kl.GoalContainer;
 import br.unb.cic.goda.rtgoretoprism.model.kl.PlanContainer;
+import br.unb.cic.goda.rtgoretoprism.paramformula.Expr;
+import br.unb.cic.goda.rtgoretoprism.paramformula.FormulaStyle;
+import br.unb.cic.goda.rtgoretoprism.paramformula.NodeFormula;
+import br.unb.cic.goda.rtgoretoprism.paramformula.Text;
+import br.unb.cic.goda.rtgoretoprism.paramformula.Variable;
+import br.unb.cic.goda.rtgoretoprism.paramwrapper.NativeModelChecker;
 import br.unb.cic.goda.rtgoretoprism.paramwrapper.ParamWrapper;
-import br.unb.cic.goda.rtgoretoprism.util.FileUtility;
-import br.unb.cic.goda.rtgoretoprism.util.PathLocation;
+import br.unb.cic.goda.rtgoretoprism.paramwrapper.ParametricModelChecker;
+import br.unb.cic.goda.rtgoretoprism.util.PipelineMetrics;
+import br.unb.cic.goda.rtgoretoprism.util.Span;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+import java.util.logging.Logger;
 
 public class PARAMProducer {
 
-    private String sourceFolder;
-    private String targetFolder;
+    private static final Logger LOGGER = Logger.getLogger(PARAMProducer.class.getName());
+
+    /**
+     * The style of {@code goda.param.formula}, read once: an unknown style is
+     * reported and the formula is simplified.
+     */
+    private static final FormulaStyle DEFAULT_FORMULA_STYLE;
+
+    static {
+        String style = System.getProperty("goda.param.formula", "simplified");
+        FormulaStyle parsed;
+        try {
+            parsed = FormulaStyle.valueOf(style.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            LOGGER.warning("Unknown goda.param.formula " + style + ", using " + FormulaStyle.SIMPLIFIED);
+            parsed = FormulaStyle.SIMPLIFIED;
+        }
+        DEFAULT_FORMULA_STYLE = parsed;
+    }
+
+    private GenerationWorkspace workspace;
     private String toolsFolder;
+    private ParamProgressListener progressListener = ParamProgressListener.NONE;
+    private String engine = System.getProperty("goda.param.engine", "native");
+    private FormulaStyle formulaStyle = DEFAULT_FORMULA_STYLE;
+    private Function<String, ParametricModelChecker> modelCheckerFactory;
+    private Span span = Span.NONE;
     private Set<Actor> allActors;
     private Set<Goal> allGoals;
 
     private String agentName;
-    private List<String> leavesId = new ArrayList<>();
+    private Span formulaSpan = Span.NONE;
     private List<String> opts_formula = new ArrayList<>();
 
-    public PARAMProducer(Set<Actor> allActors, Set<Goal> allGoals, String in, String out, String tools) {
-        this.sourceFolder = in;
-        this.targetFolder = out;
+    public PARAMProducer(Set<Actor> allActors, Set<Goal> allGoals, GenerationWorkspace workspace, String tools) {
+        this.workspace = workspace;
         this.toolsFolder = tools;
         this.allActors = allActors;
         this.allGoals = allGoals;
     }
 
+    /**
+     * A producer with the settings of the given one, for the formula of one
+     * actor.
+     */
+    private PARAMProducer(PARAMProducer settings) {
+        this(settings.allActors, settings.allGoals, settings.workspace, settings.toolsFolder);
+        this.progressListener = settings.progressListener;
+        this.engine = settings.engine;
+        this.formulaStyle = settings.formulaStyle;
+        this.modelCheckerFactory = settings.modelCheckerFactory;
+    }
+
+    public void setProgressListener(ParamProgressListener progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    /**
+     * Selects how leaf task formulas are computed: {@code native} (the
+     * default, falling back to PARAM for models it cannot handle) or
+     * {@code param} to always run the PARAM executable. Defaults to the
+     * {@code goda.param.engine} system property.
+     */
+    public void setEngine(String engine) {
+        this.engine = engine;
+    }
+
+    /**
+     * Sets how the model checker of a leaf task is created from its id,
+     * instead of by {@link #setEngine(String)}; used to measure or test the
+     * formula composition without PARAM.
+     */
+    public void setModelCheckerFactory(Function<String, ParametricModelChecker> modelCheckerFactory) {
+        this.modelCheckerFactory = modelCheckerFactory;
+    }
+
+    /**
+     * Sets how the formulas are written to the result files. Defaults to the
+     * {@code goda.param.formula} system property ({@code plain},
+     * {@code simplified} or {@code shared}), or simplified.
+     */
+    public void setFormulaStyle(FormulaStyle formulaStyle) {
+        this.formulaStyle = formulaStyle;
+    }
+
+    /**
+     * Sets the span the formula of each actor is traced under: the PRISM
+     * generation, every leaf task evaluation and the composition.
+     */
+    public void setSpan(Span span) {
+        this.span = span;
+    }
+
+    /**
+     * Generates the model of every actor once, then the formula of each actor.
+     * The actors are independent of each other, so their formulas are
+     * computed concurrently on the shared actor pool, and their leaf tasks
+     * on the shared leaf pool. A PARAM result file holds a single formula,
+     * so each actor gets its own result file.
+     */
     public void run() throws CodeGenerationException, IOException {
-        long startTime = new Date().getTime();
-        for (Actor actor : allActors) {
-            RTGoreProducer producer = new RTGoreProducer(allActors, allGoals, sourceFolder, targetFolder);
-            AgentDefinition ad = producer.run();
-            agentName = ad.getAgentName();
-            System.out.println("Generating PARAM formulas for: " + agentName);
+        try (PipelineMetrics.Timer timer = PipelineMetrics.start("param")) {
+            RTGoreProducer producer = new RTGoreProducer(allActors, allGoals, workspace);
+            producer.setSpan(span);
+            List<AgentDefinition> definitions = producer.run();
+            if (definitions.isEmpty())
+                return;
             generatePctlFormula();
-            String nodeForm = composeNodeForm(ad.rootlist.getFirst(), null);
-            printFormula(nodeForm);
+            List<Callable<String>> formulas = new ArrayList<>();
+            for (AgentDefinition ad : definitions) {
+                // Each actor gets its own producer, as the leaves and options of the formula are per actor
+                PARAMProducer actorProducer = new PARAMProducer(this);
+                Span formula = span.start("formula").put("id", ad.getAgentName());
+                formulas.add(() -> actorProducer.generateFormula(ad, formula, ActorTasks.leaves()));
+            }
+            List<String> results = ActorTasks.invokeAll(ActorTasks.actors(), formulas, "PARAM formula generation");
+            for (int i = 0; i < definitions.size(); i++)
+                printFormula(resultFileName(definitions, i), results.get(i));
+        }
+    }
+
+    /**
+     * The result file of the i-th actor: result.out when the model has a
+     * single actor, as before, or result_&lt;actor&gt;.out for each of several.
+     */
+    private static String resultFileName(List<AgentDefinition> definitions, int i) {
+        if (definitions.size() == 1)
+            return "result.out";
+        return "result_" + definitions.get(i).getAgentName() + ".out";
+    }
+
+    private String generateFormula(AgentDefinition ad, Span formula, ExecutorService leafPool) throws CodeGenerationException, IOException {
+        try {
+            formulaSpan = formula;
+            agentName = ad.getAgentName();
+            GoalContainer root = ad.rootlist.getFirst();
+            Set<String> leaves = new LinkedHashSet<>();
+            collectLeaves(root, null, leaves);
+            PipelineMetrics.record("param.leaves", leaves.size());
+            formula.put("leaves", leaves.size());
+            Map<String, String> leafForms;
+            try (Span evaluate = formula.start("leaves")) {
+                leafForms = evaluateLeaves(leaves, evaluate, leafPool);
+            }
+            NodeFormula nodeForm;
+            try (Span compose = formula.start("compose")) {
+                nodeForm = composeNodeForm(root, null, leafForms);
+            }
+            String result = composeFormula(formulaStyle.write(nodeForm.toExpr()), leaves);
+            formula.put("formulaBytes", result.getBytes(StandardCharsets.UTF_8).length);
+            return result;
+        } finally {
+            formula.close();
         }
-        System.out.println("PARAM formulas created in " + (new Date().getTime() - startTime) + "ms.");
     }
 
-    private void generatePctlFormula() throws IOException {
+    private void generatePctlFormula() {
         StringBuilder pctl = new StringBuilder("P=? [ true U (");
         StringBuilder goals = new StringBuilder();
         int i = 0;
@@ -64,40 +204,124 @@ public class PARAMProducer {
             i++;
         }
         pctl.append(") ]");
-        FileUtility.deleteFile(targetFolder + "/reachability.pctl", false);
-        FileUtility.writeFile(pctl.toString(), targetFolder + "/reachability.pctl");
+        workspace.deleteFile("reachability.pctl");
+        workspace.writeFile(pctl.toString(), "reachability.pctl");
     }
 
-    private void printFormula(String nodeForm) throws CodeGenerationException {
-        nodeForm = composeFormula(nodeForm);
-        String output = targetFolder + "/";
-        PrintWriter generalFormula = ManageWriter.createFile("result.out", output);
+    private void printFormula(String fileName, String nodeForm) {
+        PrintWriter generalFormula = workspace.createFile(fileName);
         ManageWriter.printModel(generalFormula, nodeForm);
+        byte[] result = workspace.readFile(fileName);
+        if (result != null)
+            PipelineMetrics.record("param.bytes", result.length);
     }
 
-    private String composeFormula(String nodeForm) throws CodeGenerationException {
-        String paramInputFolder = sourceFolder + "/PARAM/";
-        String body = ManageWriter.readFileAsString(paramInputFolder + "formulabody.param");
-        for (String opt : this.opts_formula) {
-            body = body + opt + ", ";
-        }
-        for (String leaf : this.leavesId) {
-            body = body + "rTask" + leaf + (leaf.equals(leavesId.get(leavesId.size() - 1)) ? "]\n[" : ", ");
+    /**
+     * Writes the variables of the formula and their ranges, one per option
+     * and one per leaf task, followed by the formula itself. A leaf shared by
+     * several goals is a single variable.
+     */
+    private String composeFormula(String nodeForm, Set<String> leaves) throws CodeGenerationException {
+        StringBuilder body = new StringBuilder(TemplateRegistry.shared().getText("PARAM/formulabody.param"));
+        for (String opt : this.opts_formula)
+            body.append(opt).append(", ");
+        if (!leaves.isEmpty())
+            body.append("rTask").append(String.join(", rTask", leaves)).append("]\n[");
+        for (String opt : this.opts_formula)
+            body.append("[0, 1] ");
+        if (!leaves.isEmpty())
+            body.append(String.join(" ", Collections.nCopies(leaves.size(), "[0, 1]"))).append("]\n");
+        body.append("  ").append(nodeForm);
+        return body.toString();
+    }
+
+    /**
+     * Collects the ids of the leaf tasks below the given node, in the order
+     * {@link #composeNodeForm} visits them.
+     */
+    private void collectLeaves(GoalContainer rootGoal, PlanContainer rootPlan, Set<String> leaves) {
+        String nodeId;
+        LinkedList<GoalContainer> decompGoal;
+        LinkedList<PlanContainer> decompPlans;
+        if (rootGoal != null) {
+            nodeId = rootGoal.getClearUId();
+            decompGoal = rootGoal.getDecompGoals();
+            decompPlans = rootGoal.getDecompPlans();
+        } else {
+            nodeId = rootPlan.getClearElId();
+            decompGoal = rootPlan.getDecompGoals();
+            decompPlans = rootPlan.getDecompPlans();
         }
-        for (String opt : this.opts_formula) {
-            body = body + "[0, 1] ";
+        for (GoalContainer subNode : decompGoal)
+            collectLeaves(subNode, null, leaves);
+        for (PlanContainer subNode : decompPlans)
+            collectLeaves(null, subNode, leaves);
+        if ((decompGoal.size() == 0) && (decompPlans.size() == 0))
+            leaves.add(nodeId);
+    }
+
+    /**
+     * Runs PARAM for every leaf task. The leaves are independent of each other,
+     * so they are evaluated concurrently on the pool; a failure or an
+     * interrupt cancels the remaining ones.
+     */
+    private Map<String, String> evaluateLeaves(Set<String> leaves, Span evaluate, ExecutorService pool) throws CodeGenerationException {
+        Map<String, String> leafForms = new HashMap<>();
+        Map<String, Future<String>> pending = new LinkedHashMap<>();
+        try {
+            for (String leaf : leaves)
+                pending.put(leaf, pool.submit(() -> evaluateLeaf(leaf, evaluate)));
+            for (Map.Entry<String, Future<String>> entry : pending.entrySet())
+                leafForms.put(entry.getKey(), entry.getValue().get());
+        } catch (RejectedExecutionException | CancellationException e) {
+            throw new CodeGenerationException("PARAM formula generation cancelled.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CodeGenerationException("PARAM formula generation cancelled.");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof CodeGenerationException)
+                throw (CodeGenerationException) e.getCause();
+            throw new CodeGenerationException("PARAM formula generation failed.", e.getCause());
+        } finally {
+            // Interrupts the leaves still running, which destroys their PARAM processes
+            ActorTasks.cancel(pool, pending.values());
         }
-        for (String leaf : this.leavesId) {
-            body = body + "[0, 1]" + (leaf.equals(leavesId.get(leavesId.size() - 1)) ? "]\n" : " ");
+        return leafForms;
+    }
+
+    private String evaluateLeaf(String nodeId, Span evaluate) throws CodeGenerationException {
+        if (Thread.currentThread().isInterrupted())
+            throw new CodeGenerationException("PARAM formula generation cancelled.");
+        progressListener.leafStarted(nodeId);
+        String formula;
+        try (PipelineMetrics.Timer timer = PipelineMetrics.start("param.leaf");
+             Span leaf = evaluate.start("leaf").put("id", nodeId)) {
+            //Create DTMC model (param)
+            ParamWriter writer = new ParamWriter(nodeId);
+            String model = writer.writeModel();
+            //Call to param
+            ParametricModelChecker modelChecker = createModelChecker(nodeId, leaf);
+            formula = modelChecker.getFormula(model);
+            leaf.put("formulaChars", formula.length());
         }
-        body = body + "  " + nodeForm;
-        return body;
+        progressListener.leafFinished(nodeId);
+        return formula;
     }
 
-    private String composeNodeForm(GoalContainer rootGoal, PlanContainer rootPlan) throws IOException, CodeGenerationException {
+    private ParametricModelChecker createModelChecker(String nodeId, Span leaf) {
+        if (modelCheckerFactory != null)
+            return modelCheckerFactory.apply(nodeId);
+        ParamWrapper paramWrapper = new ParamWrapper(toolsFolder, nodeId);
+        paramWrapper.setSpan(leaf);
+        if ("param".equals(engine))
+            return paramWrapper;
+        return new NativeModelChecker(nodeId, paramWrapper);
+    }
+
+    private NodeFormula composeNodeForm(GoalContainer rootGoal, PlanContainer rootPlan, Map<String, String> leafForms) throws IOException, CodeGenerationException {
         Const decType;
         String rtAnnot;
-        String nodeForm;
+        NodeFormula nodeForm;
         String nodeId;
         LinkedList<GoalContainer> decompGoal;
         LinkedList<PlanContainer> decompPlans;
@@ -118,72 +342,51 @@ public class PARAMProducer {
         /*Run for sub goals*/
         for (GoalContainer subNode : decompGoal) {
             String subNodeId = subNode.getClearUId();
-            String subNodeForm = composeNodeForm(subNode, null);
+            NodeFormula subNodeForm = composeNodeForm(subNode, null, leafForms);
             nodeForm = replaceSubForm(nodeForm, subNodeForm, nodeId, subNodeId);
         }
 		/*Run for sub tasks*/
         for (PlanContainer subNode : decompPlans) {
             String subNodeId = subNode.getClearElId();
-            String subNodeForm = composeNodeForm(null, subNode);
+            NodeFormula subNodeForm = composeNodeForm(null, subNode, leafForms);
             nodeForm = replaceSubForm(nodeForm, subNodeForm, nodeId, subNodeId);
         }
 		/*If leaf task*/
         if ((decompGoal.size() == 0) && (decompPlans.size() == 0)) {
-            this.leavesId.add(nodeId);
-            //Create DTMC model (param)
-            ParamWriter writer = new ParamWriter(sourceFolder, nodeId);
-            String model = writer.writeModel();
-            //Call to param
-            ParamWrapper paramWrapper = new ParamWrapper(toolsFolder, nodeId);
-            nodeForm = paramWrapper.getFormula(model);
+            nodeForm = NodeFormula.of(new Text(leafForms.get(nodeId)));
         }
         return nodeForm;
     }
 
-    private String replaceSubForm(String nodeForm, String subNodeForm, String nodeId, String subNodeId) {
-        if (nodeForm.equals(nodeId)) {
+    private NodeFormula replaceSubForm(NodeFormula nodeForm, NodeFormula subNodeForm, String nodeId, String subNodeId) {
+        if (nodeForm.isText(nodeId)) {
             nodeForm = subNodeForm;
         } else {
-            subNodeId = restricToString(subNodeId);
-            subNodeForm = restricToString(subNodeForm);
-            nodeForm = nodeForm.replaceAll(subNodeId, subNodeForm);
+            nodeForm.substitute(subNodeId, subNodeForm);
         }
         return nodeForm;
     }
 
-    private String restricToString(String subNodeString) {
-        return " " + subNodeString + " ";
-    }
-
-    private String getNodeForm(Const decType, String rtAnnot, String uid) throws IOException {
+    private NodeFormula getNodeForm(Const decType, String rtAnnot, String uid) throws IOException {
         if (rtAnnot == null) {
-            return uid;
+            return NodeFormula.of(new Variable(uid));
         }
-        Object[] res = RTParser.parseRegex(uid, rtAnnot + '\n', decType);
-        checkOptXorDeclaration((String) res[5]);
-        return (String) res[5];
-    }
-
-    private void checkOptXorDeclaration (String formula) {
-        if (formula.contains("OPT")) {
-            String regex = "OPT_(.*?) ";
-            Matcher match = Pattern.compile(regex).matcher(formula);
-            while (match.find()) {
-                String optDeclaration = "OPT_" + match.group(1);
-                if (!this.opts_formula.contains(optDeclaration)) {
-                    this.opts_formula.add(optDeclaration);
+        Expr formula = RTParser.parseRegex(uid, rtAnnot + '\n', decType, formulaSpan).getParamFormula();
+        if (formula == null)
+            formula = Text.EMPTY;
+        checkOptXorDeclaration(formula);
+        return NodeFormula.of(formula);
+    }
+
+    private void checkOptXorDeclaration (Expr formula) {
+        List<String> variables = new ArrayList<>();
+        formula.collectVariables(variables);
+        for (String prefix : new String[]{"OPT_", "XOR_"}) {
+            for (String variable : variables) {
+                if (variable.startsWith(prefix) && !this.opts_formula.contains(variable)) {
+                    this.opts_formula.add(variable);
                 }
             }
         }
-        if (formula.contains("XOR")) {
-			String regex = "XOR_(.*?) ";
-			Matcher match = Pattern.compile(regex).matcher(formula);
-			while (match.find()) {
-				String optDeclaration = "XOR_" + match.group(1);
-				if (!this.opts_formula.contains(optDeclaration)) {
-					this.opts_formula.add(optDeclaration);
-				}
-			}
-        }
     }
 }
@@ -0,0 +1,22 @@
+package br.unb.cic.goda.rtgoretoprism.generator.goda.producer;
+
+/**
+ * Receives progress notifications while {@link PARAMProducer} evaluates the
+ * leaf tasks of a goal model with the parametric model checker.
+ */
+public interface ParamProgressListener {
+
+    ParamProgressListener NONE = new ParamProgressListener() {
+        @Override
+        public void leafStarted(String leafId) {
+        }
+
+        @Override
+        public void leafFinished(String leafId) {
+        }
+    };
+
+    void leafStarted(String leafId);
+
+    void leafFinished(String leafId);
+}
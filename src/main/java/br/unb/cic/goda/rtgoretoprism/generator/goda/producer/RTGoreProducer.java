@@ -5,67 +5,117 @@ import br.unb.cic.goda.model.GeneralEntity;
 import br.unb.cic.goda.model.Goal;
 import br.unb.cic.goda.model.Plan;
 import br.unb.cic.goda.rtgoretoprism.generator.CodeGenerationException;
+import br.unb.cic.goda.rtgoretoprism.generator.goda.parser.RTAnnotation;
+import br.unb.cic.goda.rtgoretoprism.generator.goda.parser.RTElement;
 import br.unb.cic.goda.rtgoretoprism.generator.goda.parser.RTParser;
+import br.unb.cic.goda.rtgoretoprism.generator.goda.writer.GenerationWorkspace;
 import br.unb.cic.goda.rtgoretoprism.generator.goda.writer.PrismWriter;
+import br.unb.cic.goda.rtgoretoprism.generator.goda.writer.TemplateRegistry;
 import br.unb.cic.goda.rtgoretoprism.generator.kl.AgentDefinition;
 import br.unb.cic.goda.rtgoretoprism.model.kl.Const;
 import br.unb.cic.goda.rtgoretoprism.model.kl.GoalContainer;
 import br.unb.cic.goda.rtgoretoprism.model.kl.PlanContainer;
 import br.unb.cic.goda.rtgoretoprism.model.kl.RTContainer;
+import br.unb.cic.goda.rtgoretoprism.util.PipelineMetrics;
+import br.unb.cic.goda.rtgoretoprism.util.Span;
 import br.unb.cic.goda.rtgoretoprism.util.kl.TroposNavigator;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.Callable;
 
 public class RTGoreProducer {
 
     private TroposNavigator tn;
-    private String inputFolder;
-    private String outputFolder;
+    private GenerationWorkspace workspace;
     private Set<Actor> allActors;
     private Set<Goal> allGoals;
+    private Span span = Span.NONE;
 
-    private Map<String, Boolean[]> rtSortedGoals;
-    private Map<String, Object[]> rtCardGoals;
-    private Map<String, Set<String>> rtAltGoals;
-    private Map<String, String[]> rtTryGoals;
-    private Map<String, Boolean> rtOptGoals;
+    // State of the generation of one actor, see generate()
+    private final Map<String, RTElement> rtElements = new HashMap<>();
+    private Span actorSpan = Span.NONE;
+    private PrismWriter writer;
+    private int alternatives;
+    private int cardinalities;
 
-    public RTGoreProducer(Set<Actor> allActors, Set<Goal> allGoals, String in, String out) {
+    public RTGoreProducer(Set<Actor> allActors, Set<Goal> allGoals, GenerationWorkspace workspace) {
         tn = new TroposNavigator();
-        this.inputFolder = in;
-        this.outputFolder = out;
+        this.workspace = workspace;
         this.allActors = allActors;
         this.allGoals = allGoals;
-        this.rtSortedGoals = new TreeMap<>();
-        this.rtCardGoals = new TreeMap<>();
-        this.rtAltGoals = new TreeMap<>();
-        this.rtTryGoals = new TreeMap<>();
-        this.rtOptGoals = new TreeMap<>();
     }
 
-    public AgentDefinition run() throws CodeGenerationException, IOException {
+    /**
+     * Sets the span the generation of each actor is traced under.
+     */
+    public void setSpan(Span span) {
+        this.span = span;
+    }
+
+    /**
+     * Generates the DTMC model of every actor, once each. Actors are
+     * independent of each other, so they are generated concurrently on the
+     * shared actor pool; the definitions are returned in the order of the
+     * actors, and eval_formula.sh gets the parameters of all their models in
+     * that order.
+     */
+    public List<AgentDefinition> run() throws CodeGenerationException, IOException {
         System.out.println("Starting PRISM Model Generation Process (Knowledge Level)");
-        System.out.println("\tTemplate Input Folder: " + inputFolder);
-        System.out.println("\tOutput Folder: " + outputFolder);
-        long startTime = new Date().getTime();
-        AgentDefinition ad = null;
-        for (Actor a : allActors) {
-            System.out.println("Generating DTMC model for: " + a.getName());
-            ad = new AgentDefinition(a);
+        System.out.println("\tTemplate Input Folder: " + TemplateRegistry.shared());
+        try (PipelineMetrics.Timer timer = PipelineMetrics.start("prism")) {
+            List<RTGoreProducer> producers = new ArrayList<>();
+            List<Callable<AgentDefinition>> generations = new ArrayList<>();
+            for (Actor a : allActors) {
+                // Each actor gets its own producer, as the RT elements and the span are per actor
+                RTGoreProducer producer = new RTGoreProducer(allActors, allGoals, workspace);
+                Span actor = span.start("actor");
+                producers.add(producer);
+                generations.add(() -> producer.generate(a, actor));
+            }
+            List<AgentDefinition> definitions = ActorTasks.invokeAll(ActorTasks.actors(), generations, "PRISM model generation");
+            if (!producers.isEmpty()) {
+                Map<String, String> evalParams = new LinkedHashMap<>();
+                for (RTGoreProducer producer : producers)
+                    producer.writer.getEvalParams().forEach(evalParams::putIfAbsent);
+                producers.get(producers.size() - 1).writer.writeEvalScript(evalParams);
+            }
+            return definitions;
+        }
+    }
+
+    private AgentDefinition generate(Actor a, Span actor) throws CodeGenerationException, IOException {
+        AgentDefinition ad = new AgentDefinition(a);
+        actor.put("id", ad.getAgentName());
+        try {
+            actorSpan = actor;
             for (Goal rootgoal : tn.getRootGoals(a)) {
-                Const type = Const.ACHIEVE;
-                Const request = Const.NONE;
-                GoalContainer gc = ad.createGoal(rootgoal, type);
-                gc.setRequest(request);
-                ad.addRootGoal(gc);
-                addGoal(rootgoal, gc, ad, false);
+                try (Span goalSpan = actor.start("goal").put("id", AgentDefinition.parseElId(rootgoal.getName()))) {
+                    Const type = Const.ACHIEVE;
+                    Const request = Const.NONE;
+                    GoalContainer gc = ad.createGoal(rootgoal, type);
+                    gc.setRequest(request);
+                    ad.addRootGoal(gc);
+                    addGoal(rootgoal, gc, ad, false);
+                }
             }
             List<Plan> planList = a.getPlanList();
-            PrismWriter writer = new PrismWriter(ad, planList, inputFolder, outputFolder);
-            writer.writeModel();
+            try (Span write = actor.start("write")) {
+                writer = new PrismWriter(ad, planList, workspace);
+                writer.setSpan(write);
+                writer.writeModel();
+            }
+            byte[] model = workspace.readFile(ad.getAgentName() + ".pm");
+            if (model != null)
+                PipelineMetrics.record("prism.bytes", model.length);
+            actor.put("goals", ad.getGoalCount())
+                    .put("tasks", ad.getPlanCount())
+                    .put("alternatives", alternatives)
+                    .put("cardinalities", cardinalities)
+                    .put("modelBytes", model != null ? model.length : 0);
+        } finally {
+            actor.close();
         }
-        System.out.println("DTMC model created in " + (new Date().getTime() - startTime) + "ms.");
         return ad;
     }
 
@@ -98,14 +148,14 @@ public class RTGoreProducer {
             boolean trivial = false;
             GoalContainer deccont = ad.createGoal(dec, Const.ACHIEVE);
             gc.addDecomp(deccont);
-            if (rtSortedGoals.containsKey(deccont.getElId())) {
-                Boolean[] decDeltaPathTime = rtSortedGoals.get(deccont.getElId());
-                if (decDeltaPathTime[1]) {
+            RTElement rt = getRTElement(deccont.getElId());
+            if (rt.has(RTElement.Flag.SORTED)) {
+                if (rt.has(RTElement.Flag.SEQUENTIAL)) {
                     deccont.setPrevTimePath(gc.getTimePath());
                     deccont.setFutTimePath(gc.getFutTimePath());
                     deccont.setTimePath(rootPath);
                     deccont.setTimeSlot(gc.getTimeSlot() + 1);
-                } else if (decDeltaPathTime[0]) {
+                } else if (rt.has(RTElement.Flag.PARALLEL)) {
                     if (gc.getFutTimePath() > 0)
                         deccont.setTimePath(gc.getFutTimePath() + 1);
                     else
@@ -126,10 +176,9 @@ public class RTGoreProducer {
                 deccont.setTimePath(gc.getTimePath());
                 deccont.setTimeSlot(gc.getTimeSlot());
             }
-            if (rtCardGoals.containsKey(deccont.getElId())) {
-                Object[] card = rtCardGoals.get(deccont.getElId());
-                Const cardType = (Const) card[0];
-                Integer cardNumber = (Integer) card[1];
+            if (rt.getCardType() != null) {
+                Const cardType = rt.getCardType();
+                int cardNumber = rt.getCardNumber();
                 deccont.setCardType(cardType);
                 if (cardType.equals(Const.SEQ))
                     deccont.setTimeSlot(deccont.getTimeSlot() + cardNumber - 1);
@@ -138,7 +187,7 @@ public class RTGoreProducer {
             if (newgoal) {
                 addGoal(dec, deccont, ad, include);
                 gc.setFutTimePath(Math.max(deccont.getTimePath(), deccont.getFutTimePath()));
-                if (trivial || (!parDec && rtAltGoals.get(deccont.getElId()) == null))
+                if (trivial || (!parDec && getRTElement(deccont.getElId()).getAlternatives().isEmpty()))
                     gc.setTimeSlot(deccont.getTimeSlot());
             }
         }
@@ -166,14 +215,14 @@ public class RTGoreProducer {
             boolean parPlan = false;
             PlanContainer deccont = ad.createPlan(dec);
             pc.addDecomp(deccont);
-            if (rtSortedGoals.containsKey(deccont.getElId())) {
-                Boolean[] decDeltaPathTime = rtSortedGoals.get(deccont.getElId());
-                if (decDeltaPathTime[1]) {
+            RTElement rt = getRTElement(deccont.getElId());
+            if (rt.has(RTElement.Flag.SORTED)) {
+                if (rt.has(RTElement.Flag.SEQUENTIAL)) {
                     deccont.setPrevTimePath(pc.getTimePath());
                     deccont.setFutTimePath(pc.getFutTimePath());
                     deccont.setTimePath(rootPath);
                     deccont.setTimeSlot(pc.getTimeSlot() + 1);
-                } else if (decDeltaPathTime[0]) {
+                } else if (rt.has(RTElement.Flag.PARALLEL)) {
                     if (pc.getFutTimePath() > 0)
                         deccont.setTimePath(pc.getFutTimePath() + 1);
                     else
@@ -192,10 +241,9 @@ public class RTGoreProducer {
                 deccont.setTimePath(pc.getTimePath());
                 deccont.setTimeSlot(pc.getTimeSlot());
             }
-            if (rtCardGoals.containsKey(deccont.getElId())) {
-                Object[] card = rtCardGoals.get(deccont.getElId());
-                Const cardType = (Const) card[0];
-                Integer cardNumber = (Integer) card[1];
+            if (rt.getCardType() != null) {
+                Const cardType = rt.getCardType();
+                int cardNumber = rt.getCardNumber();
                 if (cardType.equals(Const.SEQ))
                     deccont.setTimeSlot(deccont.getTimeSlot() + cardNumber - 1);
             }
@@ -203,7 +251,7 @@ public class RTGoreProducer {
             if (newplan) {
                 addPlan(dec, deccont, ad);
                 pc.setFutTimePath(Math.max(deccont.getTimePath(), deccont.getFutTimePath()));
-                if (!parPlan && rtAltGoals.get(deccont.getElId()) == null) {
+                if (!parPlan && getRTElement(deccont.getElId()).getAlternatives().isEmpty()) {
                     pc.setTimeSlot(deccont.getTimeSlot());
                 }
             }
@@ -225,14 +273,14 @@ public class RTGoreProducer {
                 boolean trivial = false;
                 PlanContainer pc = ad.createPlan(p);
                 gc.addMERealPlan(pc);
-                if (rtSortedGoals.containsKey(pc.getElId())) {
-                    Boolean[] decDeltaPathTime = rtSortedGoals.get(pc.getElId());
-                    if (decDeltaPathTime[1]) {
+                RTElement rt = getRTElement(pc.getElId());
+                if (rt.has(RTElement.Flag.SORTED)) {
+                    if (rt.has(RTElement.Flag.SEQUENTIAL)) {
                         pc.setPrevTimePath(gc.getTimePath());
                         pc.setFutTimePath(gc.getFutTimePath());
                         pc.setTimePath(rootPath);
                         pc.setTimeSlot(gc.getTimeSlot() + 1);
-                    } else if (decDeltaPathTime[0]) {
+                    } else if (rt.has(RTElement.Flag.PARALLEL)) {
                         parPlan = true;
                         pc.setPrevTimePath(prevPath);
                         if (gc.getFutTimePath() > 0)
@@ -254,10 +302,9 @@ public class RTGoreProducer {
                     pc.setTimePath(gc.getTimePath());
                     pc.setTimeSlot(gc.getTimeSlot());
                 }
-                if (rtCardGoals.containsKey(pc.getElId())) {
-                    Object[] card = rtCardGoals.get(pc.getElId());
-                    Const cardType = (Const) card[0];
-                    Integer cardNumber = (Integer) card[1];
+                if (rt.getCardType() != null) {
+                    Const cardType = rt.getCardType();
+                    int cardNumber = rt.getCardNumber();
                     if (cardType.equals(Const.SEQ))
                         pc.setTimeSlot(pc.getTimeSlot() + cardNumber - 1);
                 }
@@ -265,7 +312,7 @@ public class RTGoreProducer {
                 if (newplan) {
                     addPlan(p, pc, ad);
                     gc.setFutTimePath(Math.max(pc.getTimePath(), pc.getFutTimePath()));
-                    if (trivial || (!parPlan && rtAltGoals.get(pc.getElId()) == null))
+                    if (trivial || (!parPlan && getRTElement(pc.getElId()).getAlternatives().isEmpty()))
                         gc.setTimeSlot(pc.getTimeSlot());
                 }
 
@@ -284,14 +331,15 @@ public class RTGoreProducer {
     private void iterateRts(RTContainer gc, List<? extends RTContainer> rts) {
         for (RTContainer dec : rts) {
             String elId = dec.getElId();
-            LinkedList<RTContainer> decPlans = RTContainer.fowardMeansEnd(dec, new LinkedList<>());
-            if (rtAltGoals.get(elId) != null) {
+            List<RTContainer> decPlans = dec.getLeaves();
+            RTElement rt = getRTElement(elId);
+            if (!rt.getAlternatives().isEmpty()) {
                 // TODO Nunca entra aqui!
                 if (!dec.getFirstAlternatives().contains(rts.get(0))) {
-                    for (String altGoalId : rtAltGoals.get(elId)) {
+                    for (String altGoalId : rt.getAlternatives()) {
                         RTContainer altDec = gc.getDecompElement(altGoalId);
                         if (altDec != null) {
-                            LinkedList<RTContainer> decAltPlans = RTContainer.fowardMeansEnd(altDec, new LinkedList<>());
+                            List<RTContainer> decAltPlans = altDec.getLeaves();
                             if (!decPlans.contains(dec)) {
                                 if (dec.getAlternatives().get(dec) == null)
                                     dec.getAlternatives().put(dec, new LinkedList<>());
@@ -310,11 +358,10 @@ public class RTGoreProducer {
                     }
                 }
             }
-            if (rtTryGoals.get(elId) != null) {
-                String[] tryGoals = rtTryGoals.get(elId);
-                if (tryGoals[0] != null) {
-                    RTContainer successPlan = gc.getDecompElement(tryGoals[0]);
-                    LinkedList<RTContainer> decSucessPlans = RTContainer.fowardMeansEnd(successPlan, new LinkedList<>());
+            if (rt.isTried()) {
+                if (rt.getTrySuccess() != null) {
+                    RTContainer successPlan = gc.getDecompElement(rt.getTrySuccess());
+                    List<RTContainer> decSucessPlans = successPlan.getLeaves();
                     for (RTContainer decPlan : decPlans) {
                         decPlan.setTrySuccess(successPlan);
                     }
@@ -323,9 +370,9 @@ public class RTGoreProducer {
                         decSucessPlan.setSuccessTry(true);
                     }
                 }
-                if (tryGoals[1] != null) {
-                    RTContainer failurePlan = gc.getDecompElement(tryGoals[1]);
-                    LinkedList<RTContainer> decFailurePlans = RTContainer.fowardMeansEnd(failurePlan, new LinkedList<>());
+                if (rt.getTryFailure() != null) {
+                    RTContainer failurePlan = gc.getDecompElement(rt.getTryFailure());
+                    List<RTContainer> decFailurePlans = failurePlan.getLeaves();
                     for (RTContainer decPlan : decPlans) {
                         decPlan.setTryFailure(failurePlan);
                     }
@@ -335,13 +382,12 @@ public class RTGoreProducer {
                     }
                 }
             }
-            if (rtOptGoals.containsKey(elId))
+            if (rt.has(RTElement.Flag.OPTIONAL))
                 for (RTContainer decPlan : decPlans)
-                    decPlan.setOptional(rtOptGoals.get(elId));
-            if (rtCardGoals.containsKey(elId)) {
-                Object[] card = rtCardGoals.get(elId);
-                Const cardType = (Const) card[0];
-                Integer cardNumber = (Integer) card[1];
+                    decPlan.setOptional(true);
+            if (rt.getCardType() != null) {
+                Const cardType = rt.getCardType();
+                int cardNumber = rt.getCardNumber();
                 for (RTContainer decPlan : decPlans) {
                     decPlan.setCardType(cardType);
                     decPlan.setCardNumber(cardNumber);
@@ -354,15 +400,21 @@ public class RTGoreProducer {
 
     private void storeRegexResults(String uid, String rtRegex, Const decType) throws IOException {
         if (rtRegex != null) {
-            Object[] res = RTParser.parseRegex(uid, rtRegex + '\n', decType);
-            rtSortedGoals.putAll((Map<String, Boolean[]>) res[0]);
-            rtCardGoals.putAll((Map<String, Object[]>) res[1]);
-            rtAltGoals.putAll((Map<String, Set<String>>) res[2]);
-            rtTryGoals.putAll((Map<String, String[]>) res[3]);
-            rtOptGoals.putAll((Map<String, Boolean>) res[4]);
+            RTAnnotation annotation = RTParser.parseRegex(uid, rtRegex + '\n', decType, actorSpan);
+            for (RTElement element : annotation.getElements()) {
+                rtElements.merge(element.getId(), element, RTElement::overriddenBy);
+                if (!element.getAlternatives().isEmpty())
+                    alternatives++;
+                if (element.getCardType() != null)
+                    cardinalities++;
+            }
         }
     }
 
+    private RTElement getRTElement(String elId) {
+        return rtElements.getOrDefault(elId, RTElement.NONE);
+    }
+
     private void sortIntentionalElements(List<? extends GeneralEntity> elements) {
         elements.sort((Comparator<GeneralEntity>) (gA, gB) -> {
             float idA = Float.parseFloat(AgentDefinition.parseElId(gA.getName()).replaceAll("[TG]", ""));
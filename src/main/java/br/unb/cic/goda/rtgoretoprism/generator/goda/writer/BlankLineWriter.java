@@ -0,0 +1,86 @@
+package br.unb.cic.goda.rtgoretoprism.generator.goda.writer;
+
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.CharBuffer;
+
+/**
+ * Removes multiple line breaks while the text is written, with the same
+ * result as {@code text.replaceAll("[\t\r\n][\t\r\n]+[\n]+", "\n\n")} on the
+ * whole text: in a run of tabs and line breaks whose last line break is at
+ * least its third character, everything up to that line break becomes a
+ * single blank line. Only the current run is held back; call
+ * {@link #finish()} to write it once the text is complete.
+ */
+class BlankLineWriter extends FilterWriter {
+
+	private final StringBuilder run = new StringBuilder();
+
+	BlankLineWriter(Writer out) {
+		super(out);
+	}
+
+	@Override
+	public void write(int c) throws IOException {
+		write(String.valueOf((char) c), 0, 1);
+	}
+
+	@Override
+	public void write(char[] cbuf, int off, int len) throws IOException {
+		write(CharBuffer.wrap(cbuf), off, len);
+	}
+
+	@Override
+	public void write(String str, int off, int len) throws IOException {
+		write((CharSequence) str, off, len);
+	}
+
+	@Override
+	public Writer append(CharSequence csq) throws IOException {
+		write(csq, 0, csq.length());
+		return this;
+	}
+
+	@Override
+	public Writer append(CharSequence csq, int start, int end) throws IOException {
+		write(csq, start, end - start);
+		return this;
+	}
+
+	private void write(CharSequence text, int off, int len) throws IOException {
+		int end = off + len;
+		int pending = off;
+		for (int i = off; i < end; i++) {
+			char c = text.charAt(i);
+			if (c == '\t' || c == '\r' || c == '\n') {
+				if (i > pending)
+					out.append(text, pending, i);
+				run.append(c);
+				pending = i + 1;
+			} else if (run.length() > 0) {
+				writeRun();
+			}
+		}
+		if (end > pending)
+			out.append(text, pending, end);
+	}
+
+	private void writeRun() throws IOException {
+		int lastBreak = run.lastIndexOf("\n");
+		if (lastBreak >= 2)
+			out.append("\n\n").append(run, lastBreak + 1, run.length());
+		else
+			out.append(run);
+		run.setLength(0);
+	}
+
+	/**
+	 * Writes the whitespace held back at the end of the text, without
+	 * closing the underlying writer.
+	 */
+	public void finish() throws IOException {
+		writeRun();
+		out.flush();
+	}
+}
@@ -0,0 +1,103 @@
+package br.unb.cic.goda.rtgoretoprism.generator.goda.writer;
+
+import br.unb.cic.goda.rtgoretoprism.util.PipelineMetrics;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * The output folder of a single generation request, kept in memory.
+ * <p>
+ * Every request gets its own workspace, so concurrent requests never share
+ * files. Nothing is written to disk: the external tools get their input in
+ * temporary files of their own.
+ */
+public class GenerationWorkspace implements Closeable {
+
+    private final Map<String, byte[]> files = new TreeMap<>();
+
+    /**
+     * Creates (or truncates) the named file. Its content is stored in the
+     * workspace when the returned writer is closed.
+     */
+    public PrintWriter createFile(String name) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream() {
+            @Override
+            public void close() {
+                store(name, toByteArray());
+            }
+        };
+        return new PrintWriter(new OutputStreamWriter(buffer, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Appends the content, followed by a line separator, to the named file.
+     */
+    public synchronized void writeFile(String content, String name) {
+        byte[] previous = files.get(name);
+        byte[] line = (content + System.lineSeparator()).getBytes(StandardCharsets.UTF_8);
+        if (previous == null) {
+            files.put(name, line);
+        } else {
+            byte[] joined = new byte[previous.length + line.length];
+            System.arraycopy(previous, 0, joined, 0, previous.length);
+            System.arraycopy(line, 0, joined, previous.length, line.length);
+            files.put(name, joined);
+        }
+    }
+
+    public synchronized void deleteFile(String name) {
+        files.remove(name);
+    }
+
+    public synchronized boolean exists(String name) {
+        return files.containsKey(name);
+    }
+
+    public synchronized byte[] readFile(String name) {
+        return files.get(name);
+    }
+
+    public synchronized List<String> getFileNames() {
+        return new ArrayList<>(files.keySet());
+    }
+
+    protected synchronized void store(String name, byte[] content) {
+        files.put(name, content);
+    }
+
+    /**
+     * Writes every file of the workspace as an entry of a ZIP archive.
+     */
+    public void writeZip(OutputStream out) throws IOException {
+        try (PipelineMetrics.Timer timer = PipelineMetrics.start("zip")) {
+            ZipOutputStream zos = new ZipOutputStream(out);
+            long size = 0;
+            for (String name : getFileNames()) {
+                byte[] bytes = readFile(name);
+                zos.putNextEntry(new ZipEntry(name));
+                zos.write(bytes, 0, bytes.length);
+                zos.closeEntry();
+                size += bytes.length;
+            }
+            zos.finish();
+            PipelineMetrics.record("zip.bytes", size);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        files.clear();
+    }
+}
@@ -7,16 +7,19 @@ public class ParamWriter {
     private final String TEMPLATE_PARAM_BASE_PATH = "PARAM/";
     private static final String PLAN_ID = "$PLAN_ID$";
 
-    private String inputPARAMFolder;
+    private TemplateRegistry templates = TemplateRegistry.shared();
     private String planName;
 
-    public ParamWriter(String input, String planName) {
-        this.inputPARAMFolder = input + "/" + TEMPLATE_PARAM_BASE_PATH;
+    public ParamWriter(String planName) {
         this.planName = planName;
     }
 
+    public void setTemplates(TemplateRegistry templates) {
+        this.templates = templates;
+    }
+
     public String writeModel() throws CodeGenerationException {
-        String model = ManageWriter.readFileAsString(inputPARAMFolder + "modelbody.param");
+        String model = templates.getText(TEMPLATE_PARAM_BASE_PATH + "modelbody.param");
         model = model.replace(PLAN_ID, planName);
         return model;
     }
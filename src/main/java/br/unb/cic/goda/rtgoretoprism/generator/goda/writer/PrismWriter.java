@@ -11,132 +11,246 @@ import br.unb.cic.goda.rtgoretoprism.model.kl.GoalContainer;
 import br.unb.cic.goda.rtgoretoprism.model.kl.PlanContainer;
 import br.unb.cic.goda.rtgoretoprism.model.kl.RTContainer;
 import br.unb.cic.goda.rtgoretoprism.util.PathLocation;
+import br.unb.cic.goda.rtgoretoprism.util.Span;
 
-import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.*;
 
 public class PrismWriter {
 
-	private static final String MODULE_NAME_TAG = "$MODULE_NAME$";
 	private static final String NO_ERROR_TAG = "$NO_ERROR$";
-	private static final String TIME_SLOT_TAG = "$TIME_SLOT";
-	private static final String PREV_TIME_SLOT_TAG = "$PREV_TIME_SLOT";
-	private static final String GID_TAG = "$GID$";
-	private static final String DEFAULT_VAL = "$DEFAULT_VAL$";
-	private static final String PREV_GID_TAG = "$PREV_GID$";
 	private static final String GOAL_MODULES_TAG = "$GOAL_MODULES$";
-	private static final String SKIPPED_TAG = "$SKIPPED$";
-	private static final String NOT_SKIPPED_TAG = "$NOT_SKIPPED$";
-	private static final String DEC_HEADER_TAG = "$DEC_HEADER$";
-	private static final String DEC_TYPE_TAG = "$DEC_TYPE$";
-	private static final String MAX_TRIES_TAG = "$MAX_TRIES$";
-	private static final String MAX_RETRIES_TAG = "$MAX_RETRIES$";
 	private static final String CARD_N_TAG = "$CARD_N$";
-	private static final String CTX_CONDITION_TAG = "$CTX_CONDITION$";
-	private static final String CTX_EFFECT_TAG = "$CTX_EFFECT$";
-	private static final String CONST_PARAM_TAG = "$CONST_PARAM$";
 	private static final String PARAMS_BASH_TAG = "$PARAMS_BASH$";
 	private static final String REPLACE_BASH_TAG = "$REPLACE_BASH$";
 
+	/**
+	 * Placeholders of the module patterns, see {@link Template}
+	 */
+	private static final String MODULE_NAME_TAG = "MODULE_NAME";
+	private static final String SEQ_RENAMES_TAG = "SEQ_RENAMES";
+	private static final String TIME_SLOT_TAG = "TIME_SLOT";
+	private static final String PREV_TIME_SLOT_TAG = "PREV_TIME_SLOT";
+	private static final String GID_TAG = "GID";
+	private static final String DEFAULT_VAL = "DEFAULT_VAL";
+	private static final String PREV_GID_TAG = "PREV_GID";
+	private static final String SKIPPED_TAG = "SKIPPED";
+	private static final String NOT_SKIPPED_TAG = "NOT_SKIPPED";
+	private static final String DEC_HEADER_TAG = "DEC_HEADER";
+	private static final String DEC_TYPE_TAG = "DEC_TYPE";
+	private static final String MAX_TRIES_TAG = "MAX_TRIES";
+	private static final String MAX_RETRIES_TAG = "MAX_RETRIES";
+	private static final String CTX_CONDITION_TAG = "CTX_CONDITION";
+	private static final String CTX_EFFECT_TAG = "CTX_EFFECT";
+	private static final String PREV_EFFECT_TAG = "PREV_EFFECT";
+	private static final String PREV_SUCCESS_TAG = "PREV_SUCCESS";
+	private static final String CONST_PARAM_TAG = "CONST_PARAM";
+
 	private final String constOrParam;
 	private final String TEMPLATE_PRISM_BASE_PATH = "PRISM/";
 
-	private String templateInputBaseFolder;
-	private String inputPRISMFolder;
-	private String basicOutputFolder;
+	private TemplateRegistry templates = TemplateRegistry.shared();
+	private GenerationWorkspace workspace;
 	private String basicAgentPackage;
-	private String header, body, evalBash;
-	private String noErrorFormula = "";
+	private String header, body;
 	private StringBuilder planModules = new StringBuilder();
-	private String evalFormulaParams = "";
-	private String evalFormulaReplace = "";
+	private BlankLineWriter modules;
+
+	/**
+	 * Terms of the noError formula, in the order of the leaf tasks
+	 */
+	private List<String> noErrorTerms = new ArrayList<>();
+
+	/**
+	 * Parameters set by eval_formula.sh, each once, with their default value
+	 */
+	private Map<String, String> evalParams = new LinkedHashMap<>();
 
 	/**
 	 * PRISM patterns
 	 */
-	private String leafGoalPattern;
-	private String andDecPattern;
-	private String xorDecPattern;
-	private String xorDecHeaderPattern;
-	private String xorNotSkippedPattern;
+	private Template leafGoalPattern;
+	private Template andDecPattern;
+	private Template xorDecPattern;
+	private Template xorDecHeaderPattern;
+	private Template xorNotSkippedPattern;
 	private String seqRenamePattern;
 	private String intlRenamePattern;
-	private String trySDecPattern;
-	private String tryFDecPattern;
-	private String optDecPattern;
-	private String optHeaderPattern;
-	private String seqCardPattern;
-	private String intlCardPattern;
-	private String rtryCardPattern;
-	private String ctxGoalPattern;
-	private String ctxTaskPattern;
-	private String prevFailurePattern;
+	private Template trySDecPattern;
+	private Template tryFDecPattern;
+	private Template optDecPattern;
+	private Template optHeaderPattern;
+	private Template seqCardPattern;
+	private Template intlCardPattern;
+	private Template rtryCardPattern;
+	private Template ctxGoalPattern;
+	private Template ctxTaskPattern;
+	private Template prevFailurePattern;
+	private Map<Integer, Template> seqRenames = new HashMap<>();
+	private Map<Integer, Template> intlRenames = new HashMap<>();
+
+	/**
+	 * Placeholder values of the module being written
+	 */
+	private Map<String, Object> bindings = new HashMap<>();
 
 	private AgentDefinition ad;
 	private List<Plan> capabilityPlanList;
 
 	private Map<String, String> ctxVars;
 
-	public PrismWriter(AgentDefinition ad, List<Plan> capPlan, String input, String output) {
+	/**
+	 * The span of the model, and of the root goal or module being written.
+	 */
+	private Span span = Span.NONE;
+	private Span current = Span.NONE;
+
+	public PrismWriter(AgentDefinition ad, List<Plan> capPlan, GenerationWorkspace workspace) {
 		this.ad = ad;
 		this.capabilityPlanList = capPlan;
-		this.templateInputBaseFolder = input + "/";
-		this.inputPRISMFolder = templateInputBaseFolder + TEMPLATE_PRISM_BASE_PATH;
-		this.basicOutputFolder = output + "/";
+		this.workspace = workspace;
 		this.basicAgentPackage = PathLocation.BASIC_AGENT_PACKAGE_PREFIX + ad.getAgentName();
 		this.constOrParam = "const";
 		this.ctxVars = new TreeMap<>();
 	}
 
+	/**
+	 * Sets where the PRISM patterns are read from. Defaults to
+	 * {@link TemplateRegistry#shared()}.
+	 */
+	public void setTemplates(TemplateRegistry templates) {
+		this.templates = templates;
+	}
+
+	/**
+	 * Sets the span the root goals and module renders are traced under.
+	 */
+	public void setSpan(Span span) {
+		this.span = span;
+	}
+
 	public void writeModel() throws CodeGenerationException, IOException {
 		String utilPkgName = basicAgentPackage + PathLocation.UTIL_KL_PKG;
-		String prismInputFolder = inputPRISMFolder;
-		String planOutputFolder = basicOutputFolder + "plans" + "/";
+		String prismInputFolder = TEMPLATE_PRISM_BASE_PATH;
+		String planOutputFolder = "plans" + "/";
 		String planPkgName = basicAgentPackage + ".plans";
-		header = ManageWriter.readFileAsString(prismInputFolder + "modelheader.pm");
-		body = ManageWriter.readFileAsString(prismInputFolder + "modelbody.pm");
-		evalBash = ManageWriter.readFileAsString(prismInputFolder + "eval_formula.sh");
-		writeAnOutputDir(basicOutputFolder);
-		PrintWriter modelFile = ManageWriter.createFile(ad.getAgentName() + ".pm", basicOutputFolder);
-		PrintWriter evalBashFile = ManageWriter.createFile("eval_formula.sh", basicOutputFolder);
-		writePrismModel(prismInputFolder, ad.rootlist, planOutputFolder, basicAgentPackage, utilPkgName, planPkgName);
-		printModel(modelFile);
-		printEvalBash(evalBashFile);
+		header = templates.getText(prismInputFolder + "modelheader.pm");
+		body = templates.getText(prismInputFolder + "modelbody.pm");
+		for (GoalContainer root : ad.rootlist)
+			checkHasModules(root);
+		PrintWriter modelFile = workspace.createFile(ad.getAgentName() + ".pm");
+		writePrismModel(modelFile, prismInputFolder, ad.rootlist, planOutputFolder, basicAgentPackage, utilPkgName, planPkgName);
+	}
+
+	/**
+	 * The parameters eval_formula.sh sets for this model, once
+	 * {@link #writeModel()} has run, with their default values.
+	 */
+	public Map<String, String> getEvalParams() {
+		return evalParams;
+	}
+
+	/**
+	 * Writes eval_formula.sh, which sets the given parameters (those of one or
+	 * more models, see {@link #getEvalParams()}) in a formula.
+	 */
+	public void writeEvalScript(Map<String, String> params) throws CodeGenerationException {
+		String evalBash = templates.getText(TEMPLATE_PRISM_BASE_PATH + "eval_formula.sh");
+		printEvalBash(workspace.createFile("eval_formula.sh"), evalBash, params);
 	}
 
-	private void writePrismModel(String input, LinkedList<GoalContainer> rootGoals,
+	/**
+	 * Writes the header, the modules and the formulas straight to the model
+	 * file, in order. Only the module being written is kept in planModules.
+	 */
+	private void writePrismModel(PrintWriter adf, String input, LinkedList<GoalContainer> rootGoals,
 			String planOutputFolder, String pkgName, String utilPkgName, String planPkgName) throws CodeGenerationException, IOException {
-		leafGoalPattern = ManageWriter.readFileAsString(input + "pattern_leafgoal.pm");
-		andDecPattern = ManageWriter.readFileAsString(input + "pattern_and.pm");
-		xorDecPattern = ManageWriter.readFileAsString(input + "pattern_xor.pm");
-		xorDecHeaderPattern = ManageWriter.readFileAsString(input + "pattern_xor_header.pm");
-		xorNotSkippedPattern = ManageWriter.readFileAsString(input + "pattern_skip_not_xor.pm");
-		seqRenamePattern = ManageWriter.readFileAsString(input + "pattern_seq_rename.pm");
-		intlRenamePattern = ManageWriter.readFileAsString(input + "pattern_intl_rename.pm");
-		trySDecPattern = ManageWriter.readFileAsString(input + "pattern_try_success.pm");
-		tryFDecPattern = ManageWriter.readFileAsString(input + "pattern_try_fail.pm");
-		optDecPattern = ManageWriter.readFileAsString(input + "pattern_opt.pm");
-		optHeaderPattern = ManageWriter.readFileAsString(input + "pattern_opt_header.pm");
-		seqCardPattern = ManageWriter.readFileAsString(input + "pattern_card_seq.pm");
-		intlCardPattern = ManageWriter.readFileAsString(input + "pattern_card_intl.pm");
-		rtryCardPattern = ManageWriter.readFileAsString(input + "pattern_card_retry.pm");
-		ctxGoalPattern = ManageWriter.readFileAsString(input + "pattern_ctx_goal.pm");
-		ctxTaskPattern = ManageWriter.readFileAsString(input + "pattern_ctx_task.pm");
-		prevFailurePattern = ManageWriter.readFileAsString(input + "pattern_prev_failure.pm");
+		leafGoalPattern = templates.getTemplate(input + "pattern_leafgoal.pm");
+		andDecPattern = templates.getTemplate(input + "pattern_and.pm");
+		xorDecPattern = templates.getTemplate(input + "pattern_xor.pm");
+		xorDecHeaderPattern = templates.getTemplate(input + "pattern_xor_header.pm");
+		xorNotSkippedPattern = templates.getTemplate(input + "pattern_skip_not_xor.pm");
+		seqRenamePattern = templates.getText(input + "pattern_seq_rename.pm");
+		intlRenamePattern = templates.getText(input + "pattern_intl_rename.pm");
+		trySDecPattern = templates.getTemplate(input + "pattern_try_success.pm");
+		tryFDecPattern = templates.getTemplate(input + "pattern_try_fail.pm");
+		optDecPattern = templates.getTemplate(input + "pattern_opt.pm");
+		optHeaderPattern = templates.getTemplate(input + "pattern_opt_header.pm");
+		seqCardPattern = templates.getTemplate(input + "pattern_card_seq.pm");
+		intlCardPattern = templates.getTemplate(input + "pattern_card_intl.pm");
+		rtryCardPattern = templates.getTemplate(input + "pattern_card_retry.pm");
+		ctxGoalPattern = templates.getTemplate(input + "pattern_ctx_goal.pm");
+		ctxTaskPattern = templates.getTemplate(input + "pattern_ctx_task.pm");
+		prevFailurePattern = templates.getTemplate(input + "pattern_prev_failure.pm");
 		Collections.sort(rootGoals);
+		for (GoalContainer root : rootGoals)
+			appendNoErrorFormula(root);
+		int modulesAt = body.indexOf(GOAL_MODULES_TAG);
+		adf.println(header.replace(NO_ERROR_TAG, buildNoErrorFormula()));
+		adf.print(body.substring(0, modulesAt));
+		//Every module and formula ends with a line break, which used to be copied in front of them
+		adf.print("\n");
+		modules = new BlankLineWriter(adf);
 		for (GoalContainer root : rootGoals) {
-			writeElement(root, leafGoalPattern, null);
-			StringBuilder sbCtxVars = new StringBuilder();
-			for (String ctx : ctxVars.keySet())
-				sbCtxVars.append(constOrParam + " " + ctxVars.get(ctx) + " " + ctx + ";\n");
-			planModules = planModules.append(sbCtxVars.toString());
+			try (Span goalSpan = span.start("goal").put("id", root.getClearElId())) {
+				current = goalSpan;
+				writeElement(root, leafGoalPattern, null);
+				StringBuilder sbCtxVars = new StringBuilder();
+				for (String ctx : ctxVars.keySet())
+					sbCtxVars.append(constOrParam + " " + ctxVars.get(ctx) + " " + ctx + ";\n");
+				planModules = planModules.append(sbCtxVars.toString());
+				flushPlanModules();
+			}
+		}
+		modules.finish();
+		adf.println(body.substring(modulesAt + GOAL_MODULES_TAG.length()));
+		adf.close();
+	}
+
+	private void flushPlanModules() throws IOException {
+		modules.append(planModules);
+		planModules.setLength(0);
+	}
+
+	/**
+	 * A root goal whose decompositions end in no task would give a model
+	 * without any module, so it is rejected before the model file is created.
+	 */
+	private void checkHasModules(GoalContainer root) throws CodeGenerationException {
+		for (RTContainer leaf : root.getLeaves())
+			if (leaf instanceof PlanContainer)
+				return;
+		throw new CodeGenerationException("Goal " + root.getClearElId() + " of actor " + ad.getAgentName()
+				+ " has no task to generate a PRISM module from");
+	}
+
+	/**
+	 * The noError formula goes in the header, before any module is written,
+	 * so it is built from the leaf tasks in the order they are written.
+	 */
+	private void appendNoErrorFormula(RTContainer root) {
+		if (!root.getDecompGoals().isEmpty()) {
+			for (GoalContainer gc : root.getDecompGoals())
+				appendNoErrorFormula(gc);
+		} else if (!root.getDecompPlans().isEmpty()) {
+			for (PlanContainer pc : root.getDecompPlans())
+				appendNoErrorFormula(pc);
+		} else if (root instanceof PlanContainer) {
+			PlanContainer plan = (PlanContainer) root;
+			if ((plan.getTryOriginal() != null || plan.getTrySuccess() != null || plan.getTryFailure() != null) ||
+					(!plan.getAlternatives().isEmpty() || !plan.getFirstAlternatives().isEmpty()) ||
+					(plan.isOptional())) {
+				if (plan.getTrySuccess() != null || plan.getTryFailure() != null)
+					appendTryToNoErrorFormula(plan);
+				if (plan.isOptional())
+					noErrorTerms.add("s" + plan.getClearElId() + " < 4");
+			} else
+				noErrorTerms.add("s" + plan.getClearElId() + " < 4");
 		}
-		cleanPlanModules();
 	}
 
-	private String[] writeElement(RTContainer root, String pattern, String prevFormula) throws IOException {
+	private String[] writeElement(RTContainer root, Template pattern, String prevFormula) throws IOException {
 		String operator = root.getDecomposition() == Const.AND ? " & " : " | ";
 		if (!root.getDecompGoals().isEmpty()) {
 			StringBuilder goalFormula = new StringBuilder();
@@ -173,110 +287,87 @@ public class PrismWriter {
 				planModules = planModules.append("\nformula " + root.getClearElId() + " = " + taskFormula + ";\n");
 			return new String[]{root.getClearElId(), taskFormula.toString()};
 		} else if (root instanceof PlanContainer) {
-			return writePrismModule(root, pattern, prevFormula);
+			Span goalSpan = current;
+			try (Span render = goalSpan.start("render").put("id", root.getClearElId())) {
+				current = render;
+				return writePrismModule(root, pattern, prevFormula);
+			} finally {
+				current = goalSpan;
+			}
 		}
 		return new String[]{"", ""};
 	}
 
 	@SuppressWarnings("unchecked")
-	private String[] writePrismModule(RTContainer root, String singlePattern, String prevFormula) throws IOException {
-		singlePattern = new String(singlePattern);
-		String seqCardPattern = new String(this.seqCardPattern),
-				intlCardPattern = new String(this.intlCardPattern),
-				andDecPattern = new String(this.andDecPattern),
-				xorDecPattern = new String(this.xorDecPattern),
-				xorDecHeaderPattern = new String(this.xorDecHeaderPattern),
-				trySDecPattern = new String(this.trySDecPattern),
-				tryFDecPattern = new String(this.tryFDecPattern),
-				optHeaderPattern = new String(this.optHeaderPattern),
-				optDecPattern = new String(this.optDecPattern);
+	private String[] writePrismModule(RTContainer root, Template singlePattern, String prevFormula) throws IOException {
 		PlanContainer plan = (PlanContainer) root;
-		String planModule;
+		Template planModule;
 		StringBuilder planFormula = new StringBuilder();
+		bindings.clear();
 		if (plan.getCardNumber() > 1) {
-			StringBuilder renames = new StringBuilder();
 			if (plan.getCardType() == Const.SEQ) {
-				for (int i = 2; i <= plan.getCardNumber(); i++) {
-					String seqRename = new String(seqRenamePattern);
-					seqRename = seqRename.replace(CARD_N_TAG, i + "");
-					renames.append(seqRename);
-				}
-				seqCardPattern = seqCardPattern.replace("$SEQ_RENAMES$", renames);
-				planModule = seqCardPattern.replace(MODULE_NAME_TAG, plan.getClearElName());
+				bindings.put(SEQ_RENAMES_TAG, renames(seqRenames, seqRenamePattern, plan.getCardNumber()));
+				planModule = seqCardPattern;
+				current.put("pattern", "card_seq");
 			} else if (plan.getCardType() == Const.INT){
-				for (int i = 2; i <= plan.getCardNumber(); i++) {
-					String intlRename = new String(intlRenamePattern);
-					intlRename = intlRename.replace(CARD_N_TAG, i + "");
-					renames.append(intlRename);
-				}
-				intlCardPattern = intlCardPattern.replace("$SEQ_RENAMES$", renames);
-				planModule = intlCardPattern.replace(MODULE_NAME_TAG, plan.getClearElName());
+				bindings.put(SEQ_RENAMES_TAG, renames(intlRenames, intlRenamePattern, plan.getCardNumber()));
+				planModule = intlCardPattern;
+				current.put("pattern", "card_intl");
 			} else {
-				planModule = rtryCardPattern.replace(MODULE_NAME_TAG, plan.getClearElName());
+				planModule = rtryCardPattern;
+				current.put("pattern", "card_retry");
 			}
-		} else
-			planModule = singlePattern.replace(MODULE_NAME_TAG, plan.getClearElName());
-		StringBuilder sbHeader = new StringBuilder();
-		StringBuilder sbType = new StringBuilder();
+		} else {
+			planModule = singlePattern;
+			current.put("pattern", "leafgoal");
+		}
+		bindings.put(MODULE_NAME_TAG, plan.getClearElName());
+		List<Object> decHeader = new ArrayList<>();
+		List<Object> decType = new ArrayList<>();
 		if ((plan.getTryOriginal() != null || plan.getTrySuccess() != null || plan.getTryFailure() != null) ||
 				(!plan.getAlternatives().isEmpty() || !plan.getFirstAlternatives().isEmpty()) ||
 				(plan.isOptional())) {
 			if (plan.getTryOriginal() != null || plan.getTrySuccess() != null || plan.getTryFailure() != null) {
 				if (plan.getTrySuccess() != null || plan.getTryFailure() != null) {
 					if (plan.getAlternatives().isEmpty() && plan.getFirstAlternatives().isEmpty())
-						sbType.append(andDecPattern);
-					appendTryToNoErrorFormula(plan);
+						decType.add(andDecPattern);
 					processPlanFormula(plan, planFormula, Const.TRY);
 				} else if (plan.isSuccessTry()) {
 					PlanContainer tryPlan = (PlanContainer) plan.getTryOriginal();
-					trySDecPattern = trySDecPattern.replace(PREV_GID_TAG, tryPlan.getClearElId());
-					sbType.append(trySDecPattern);
+					decType.add(trySDecPattern.with(PREV_GID_TAG, tryPlan.getClearElId()));
 					processPlanFormula(plan, planFormula, Const.TRY_S);
 				} else {
 					PlanContainer tryPlan = (PlanContainer) plan.getTryOriginal();
-					tryFDecPattern = tryFDecPattern.replace(PREV_GID_TAG, tryPlan.getClearElId());
-					sbType.append(tryFDecPattern);
+					decType.add(tryFDecPattern.with(PREV_GID_TAG, tryPlan.getClearElId()));
 					processPlanFormula(plan, planFormula, Const.TRY_F);
 				}
 			}
 			if (!plan.getAlternatives().isEmpty() || !plan.getFirstAlternatives().isEmpty()) {
 				String xorNotSkippeds = new String();
-				StringBuilder xorHeaders = new StringBuilder();
-				String xorNotSkipped = new String(xorNotSkippedPattern);
 				if (false && constOrParam.equals("param")) {
-					String xorVar = new String(xorDecHeaderPattern);
-					evalFormulaParams += "XOR_" + plan.getClearElId() + "=\"0\";\n";
-					evalFormulaReplace += " -e \"s/XOR_" + plan.getClearElId() + "/$XOR_" + plan.getClearElId() + "/g\"";
-					xorHeaders.append(xorVar.replace(GID_TAG, plan.getClearElId()));
-					sbHeader.append(xorHeaders);
-					xorNotSkippeds = xorNotSkippeds.concat(xorNotSkipped.replace(GID_TAG, plan.getClearElId()) + "*");
+					evalParams.putIfAbsent("XOR_" + plan.getClearElId(), "0");
+					decHeader.add(xorDecHeaderPattern.with(GID_TAG, plan.getClearElId()));
+					xorNotSkippeds = xorNotSkippeds.concat(xorNotSkipped(plan) + "*");
 				} else {
 					if (!plan.getAlternatives().isEmpty()) {
 						for (RTContainer altFirst : plan.getAlternatives().keySet()) {
-							String xorVar = new String(xorDecHeaderPattern);
-							evalFormulaParams += "XOR_" + altFirst.getClearElId() + "=\"0\";\n";
-							evalFormulaReplace += " -e \"s/XOR_" + altFirst.getClearElId() + "/$XOR_" + altFirst.getClearElId() + "/g\"";
-							xorHeaders.append(xorVar.replace(GID_TAG, altFirst.getClearElId()));
-							xorNotSkippeds = xorNotSkipped.replace(GID_TAG, altFirst.getClearElId());
+							evalParams.putIfAbsent("XOR_" + altFirst.getClearElId(), "0");
+							decHeader.add(xorDecHeaderPattern.with(GID_TAG, altFirst.getClearElId()));
+							xorNotSkippeds = xorNotSkipped(altFirst);
 
 							LinkedList<RTContainer> alts = plan.getAlternatives().get(altFirst);
 							for (RTContainer alt : alts) {
-								xorVar = new String(xorDecHeaderPattern);
-								evalFormulaParams += "XOR_" + alt.getClearElId() + "=\"0\";\n";
-								evalFormulaReplace += " -e \"s/XOR_" + alt.getClearElId() + "/$XOR_" + alt.getClearElId() + "/g\"";
-								xorHeaders.append(xorVar.replace(GID_TAG, alt.getClearElId()));
+								evalParams.putIfAbsent("XOR_" + alt.getClearElId(), "0");
+								decHeader.add(xorDecHeaderPattern.with(GID_TAG, alt.getClearElId()));
 							}
 						}
-						sbHeader.append(xorHeaders);
 						processPlanFormula(plan, planFormula, Const.XOR);
 					}
 					if (!plan.getFirstAlternatives().isEmpty()) {
 						for (RTContainer firstAlt : plan.getFirstAlternatives()) {
 							for (RTContainer alt : firstAlt.getAlternatives().get(firstAlt)) {
-								if (alt.equals(plan) || equalsRoot(alt,plan)) {
-									xorNotSkipped = new String(xorNotSkippedPattern);
-									xorNotSkippeds = xorNotSkipped.replace(GID_TAG, alt.getClearElId());
-								}
+								if (alt.equals(plan) || equalsRoot(alt,plan))
+									xorNotSkippeds = xorNotSkipped(alt);
 							}
 						}
 						processPlanFormula(plan, planFormula, Const.XOR);
@@ -284,36 +375,34 @@ public class PrismWriter {
 				}
 				xorNotSkippeds = xorNotSkippeds.trim();
 				xorNotSkippeds = xorNotSkippeds.replaceAll("[\n]", "");
-				xorDecPattern = xorDecPattern.replace(NOT_SKIPPED_TAG, xorNotSkippeds);
-				sbType.append(xorDecPattern.replace(SKIPPED_TAG, "(1 - " + xorNotSkippeds + ")"));
+				decType.add(xorDecPattern.with(NOT_SKIPPED_TAG, xorNotSkippeds)
+						.with(SKIPPED_TAG, "(1 - " + xorNotSkippeds + ")"));
 			}
 			if (plan.isOptional()) {
-				sbHeader.append(optHeaderPattern);
-				sbType.append(optDecPattern);
-				noErrorFormula += " & s" + plan.getClearElId() + " < 4";
-				evalFormulaParams += "OPT_" + plan.getClearElId() + "=\"1\";\n";
-				evalFormulaReplace += " -e \"s/OPT_" + plan.getClearElId() + "/$OPT_" + plan.getClearElId() + "/g\"";
+				decHeader.add(optHeaderPattern);
+				decType.add(optDecPattern);
+				evalParams.putIfAbsent("OPT_" + plan.getClearElId(), "1");
 				processPlanFormula(plan, planFormula, Const.OPT);
 			}
 		} else {
-			sbType.append(andDecPattern + "\n\n");
-			noErrorFormula += " & s" + plan.getClearElId() + " < 4";
+			decType.add(andDecPattern);
+			decType.add("\n\n");
 			processPlanFormula(plan, planFormula, plan.getRoot().getDecomposition());
 		}
 
-		evalFormulaParams += "rTask" + plan.getClearElId() + "=\"0.999\";\n";
-		evalFormulaReplace += " -e \"s/rTask" + plan.getClearElId() + "/$rTask" + plan.getClearElId() + "/g\"";
-		planModule = planModule.replace(DEC_HEADER_TAG, sbHeader.toString() + "\n");
-		planModule = planModule.replace(DEC_TYPE_TAG, sbType.toString());
+		evalParams.putIfAbsent("rTask" + plan.getClearElId(), "0.999");
+		decHeader.add("\n");
+		bindings.put(DEC_HEADER_TAG, decHeader);
+		bindings.put(DEC_TYPE_TAG, decType);
 		if (constOrParam.equals("const") &&
 				(!plan.getFulfillmentConditions().isEmpty() ||
 						!plan.getAdoptionConditions().isEmpty())) {
 			StringBuilder fulfillmentContition = new StringBuilder(),
-					adoptionContition = new StringBuilder(),
-					ctxEffect = new StringBuilder();
+					adoptionContition = new StringBuilder();
+			List<Object> ctxEffect = new ArrayList<>();
 			if (!plan.getFulfillmentConditions().isEmpty()) {
 				for (String ctxCondition : plan.getFulfillmentConditions()) {
-					Object[] parsedCtxs = CtxParser.parseRegex(ctxCondition);
+					Object[] parsedCtxs = CtxParser.parseRegex(ctxCondition, current);
 					List<ContextCondition> ctxConditions = (List<ContextCondition>) parsedCtxs[0];
 					addCtxVar(ctxConditions);
 					if ((CtxSymbols) parsedCtxs[2] == CtxSymbols.COND) {
@@ -324,52 +413,66 @@ public class PrismWriter {
 						.append(parsedCtxs[1]);
 					}
 				}
-				if (fulfillmentContition.length() > 0) {
-					String ctxGoalPattern = new String(this.ctxGoalPattern);
-					ctxGoalPattern = ctxGoalPattern.replace(CTX_CONDITION_TAG, "(" + fulfillmentContition.toString() + ")" + " &");
-					ctxEffect.append(ctxGoalPattern);
-				}
+				if (fulfillmentContition.length() > 0)
+					ctxEffect.add(ctxGoalPattern.with(CTX_CONDITION_TAG, "(" + fulfillmentContition.toString() + ")" + " &"));
 				if (adoptionContition.length() > 0) {
 					if (fulfillmentContition.length() > 0) {
-						ctxEffect.append("\n\t");
+						ctxEffect.add("\n\t");
 						fulfillmentContition.append(" & ");
 					}
-					String ctxTaskPattern = new String(this.ctxTaskPattern);
-					ctxTaskPattern = ctxTaskPattern.replace(CTX_CONDITION_TAG, "(" + adoptionContition.toString() + ")" + " &");
-					ctxEffect.append(ctxTaskPattern);
+					ctxEffect.add(ctxTaskPattern.with(CTX_CONDITION_TAG, "(" + adoptionContition.toString() + ")" + " &"));
 				}
 			}
-			planModule = planModule.replace(CTX_EFFECT_TAG, ctxEffect.toString());
-			planModule = planModule.replace(CTX_CONDITION_TAG, "(" + fulfillmentContition.append(adoptionContition).toString() + ")" + " &");
+			bindings.put(CTX_EFFECT_TAG, ctxEffect);
+			bindings.put(CTX_CONDITION_TAG, "(" + fulfillmentContition.append(adoptionContition).toString() + ")" + " &");
 		} else {
-			planModule = planModule.replace(CTX_EFFECT_TAG, "");
-			planModule = planModule.replace(CTX_CONDITION_TAG, "");
+			bindings.put(CTX_EFFECT_TAG, "");
+			bindings.put(CTX_CONDITION_TAG, "");
 		}
 		//Prev Failure Guard Condition
-		planModule = planModule.replace("$PREV_EFFECT$", buildPrevFailureFormula(prevFormula));
+		bindings.put(PREV_EFFECT_TAG, prevFormula == null ? "" : prevFailurePattern);
 		//Prev Success Guard Condition
-		planModule = planModule.replace("$PREV_SUCCESS$", buildPrevSuccessFormula(prevFormula, plan));
+		bindings.put(PREV_SUCCESS_TAG, buildPrevSuccessFormula(prevFormula, plan));
 		Integer prevTimePath = plan.getPrevTimePath();
 		Integer timePath = plan.getTimePath();
 		Integer timeSlot = plan.getTimeSlot();
 		if (plan.getCardType().equals(Const.SEQ))
 			timeSlot -= plan.getCardNumber() - 1;
+		//Indexes 1 and 0 share the unnumbered tags, the higher one wins
 		for (int i = plan.getCardNumber(); i >= 0; i--) {
-			planModule = planModule.replace(PREV_TIME_SLOT_TAG + (i > 1 ? "_N" + i : "") + "$", prevTimePath + "_" + (timeSlot - 1 + i) + "");
-			planModule = planModule.replace(TIME_SLOT_TAG + (i > 1 ? "_N" + i : "") + "$", timePath + "_" + (timeSlot + i) + "");
+			String index = i > 1 ? "_N" + i : "";
+			bindings.putIfAbsent(PREV_TIME_SLOT_TAG + index, prevTimePath + "_" + (timeSlot - 1 + i));
+			bindings.putIfAbsent(TIME_SLOT_TAG + index, timePath + "_" + (timeSlot + i));
 		}
-		planModule = planModule.replace(GID_TAG, plan.getClearElId());
-		if (constOrParam.equals("const"))
-			planModule = planModule.replace(DEFAULT_VAL, "=0.99");
-		else
-			planModule = planModule.replace(DEFAULT_VAL, "");
-		planModule = planModule.replace(CONST_PARAM_TAG, constOrParam);
-		planModule = planModule.replace(MAX_TRIES_TAG, plan.getCardNumber() + 1 + "");
-		planModule = planModule.replace(MAX_RETRIES_TAG, plan.getCardNumber() + "");
-		planModules = planModules.append(planModule);
+		bindings.put(GID_TAG, plan.getClearElId());
+		bindings.put(DEFAULT_VAL, constOrParam.equals("const") ? "=0.99" : "");
+		bindings.put(CONST_PARAM_TAG, constOrParam);
+		bindings.put(MAX_TRIES_TAG, plan.getCardNumber() + 1);
+		bindings.put(MAX_RETRIES_TAG, plan.getCardNumber());
+		int renderedAt = planModules.length();
+		planModule.render(planModules, bindings::get);
+		current.put("chars", planModules.length() - renderedAt);
+		if (planModules.length() >= 8192)
+			flushPlanModules();
 		return new String[]{plan.getClearElId(), planFormula.toString()};
 	}
 
+	/**
+	 * The rename modules of a cardinality. The pattern builds tag names out of
+	 * $CARD_N$ ($TIME_SLOT_N$CARD_N$$), so it is bound as text and compiled
+	 * once per index.
+	 */
+	private List<Template> renames(Map<Integer, Template> compiled, String pattern, int cardNumber) {
+		List<Template> renames = new ArrayList<>();
+		for (int i = 2; i <= cardNumber; i++)
+			renames.add(compiled.computeIfAbsent(i, n -> Template.compile(pattern.replace(CARD_N_TAG, n + ""))));
+		return renames;
+	}
+
+	private String xorNotSkipped(RTContainer alt) {
+		return xorNotSkippedPattern.render(name -> GID_TAG.equals(name) ? alt.getClearElId() : null);
+	}
+
 	/*Check if plan descends from alt*/
 	private boolean equalsRoot(RTContainer alt, PlanContainer plan) {
 
@@ -465,20 +568,20 @@ public class PrismWriter {
 		if (!plan.getAlternatives().isEmpty()) {
 			for(RTContainer altFirst: plan.getAlternatives().keySet())
 				for(RTContainer alt : plan.getAlternatives().get(altFirst))
-					for(RTContainer decAlt : RTContainer.fowardMeansEnd(alt, new LinkedList<RTContainer>()))
+					for(RTContainer decAlt : alt.getLeaves())
 						sb.append("s" + decAlt.getClearElId() + "=3 & ");
 		}
 
 		if (!plan.getFirstAlternatives().isEmpty()) {
 			for(RTContainer firstAlt: plan.getFirstAlternatives()){
 				//Append the first node of alternatives
-				for(RTContainer decAlt : RTContainer.fowardMeansEnd(firstAlt, new LinkedList<RTContainer>()))
+				for(RTContainer decAlt : firstAlt.getLeaves())
 					if (!decAlt.equals(plan))
 						sb.append("s" + decAlt.getClearElId() + "=3 & ");
 
 				//Append other nodes
 				for(RTContainer alt : firstAlt.getAlternatives().get(firstAlt))
-					for(RTContainer decAlt : RTContainer.fowardMeansEnd(alt, new LinkedList<RTContainer>()))
+					for(RTContainer decAlt : alt.getLeaves())
 						if (!decAlt.equals(plan))
 							sb.append("s" + decAlt.getClearElId() + "=3 & ");
 			}
@@ -493,24 +596,18 @@ public class PrismWriter {
 			return "";
 		StringBuilder sb = new StringBuilder();
 		for (String ctxCondition : plan.getFulfillmentConditions())
-			sb.append(sb.length() > 0 ? " | " : "(").append("!(" + CtxParser.parseRegex(ctxCondition)[1] + ")");
+			sb.append(sb.length() > 0 ? " | " : "(").append("!(" + CtxParser.parseRegex(ctxCondition, current)[1] + ")");
 		if (sb.length() > 0)
 			sb.insert(0, " | (s" + plan.getClearElId() + "=3 & ").append("))");
 		return sb.toString();
 	}
 	
-	private String buildPrevFailureFormula(String prevFormula) {
-		if (prevFormula == null)
-			return "";
-		return new String(this.prevFailurePattern);
-	}
-
 	private String buildPrevSuccessFormula(String prevFormula, PlanContainer plan) {
 		if (prevFormula == null)
 			return "";
 		StringBuilder sb = new StringBuilder("(" + prevFormula);
 		for (RTContainer altFirst : plan.getAlternatives().keySet()) {
-			for (RTContainer decAlt : RTContainer.fowardMeansEnd(altFirst, new LinkedList<RTContainer>()))
+			for (RTContainer decAlt : altFirst.getLeaves())
 				if (!decAlt.equals(plan))
 					sb.append(" | s" + decAlt.getClearElId() + "=3");
 				else
@@ -518,7 +615,7 @@ public class PrismWriter {
 		}
 		for (RTContainer firstAlt : plan.getFirstAlternatives()) {
 			for (RTContainer alt : firstAlt.getAlternatives().get(firstAlt))
-				for (RTContainer decAlt : RTContainer.fowardMeansEnd(alt, new LinkedList<>()))
+				for (RTContainer decAlt : alt.getLeaves())
 					if (!decAlt.equals(plan)) {
 						sb.append(" | s" + decAlt.getClearElId() + "=3");
 					} else
@@ -528,44 +625,34 @@ public class PrismWriter {
 	}
 
 	private void appendTryToNoErrorFormula(PlanContainer plan) {
-		noErrorFormula += " & (s" + plan.getClearElId() + " < 4 | (true ";
+		StringBuilder term = new StringBuilder("(s" + plan.getClearElId() + " < 4 | (true ");
 		if (plan.getTrySuccess() != null) {
 			RTContainer trySucessPlan = plan.getTrySuccess();
-			noErrorFormula += " & s" + trySucessPlan.getClearElId() + " < 4";
+			term.append(" & s" + trySucessPlan.getClearElId() + " < 4");
 		}
 		if (plan.getTryFailure() != null) {
 			RTContainer tryFailurePlan = plan.getTryFailure();
-			noErrorFormula += " & s" + tryFailurePlan.getClearElId() + " < 4";
+			term.append(" & s" + tryFailurePlan.getClearElId() + " < 4");
 		}
-		noErrorFormula += "))";
+		noErrorTerms.add(term.append("))").toString());
 	}
 
-	private void writeAnOutputDir(String output) throws CodeGenerationException {
-		File dir = new File(output);
-		if (!dir.exists() && !dir.mkdirs()) {
-			String msg = "Error: Can't create directory \"" + dir + "\"!";
-			System.out.println(msg);
-			throw new CodeGenerationException(msg);
-		}
-	}
-
-	private void printModel(PrintWriter adf) {
-		header = header.replace(NO_ERROR_TAG, noErrorFormula);
-		body = body.replace(GOAL_MODULES_TAG, planModules);
-		ManageWriter.printModel(adf, header, body);
+	private String buildNoErrorFormula() {
+		StringBuilder sb = new StringBuilder();
+		for (String term : noErrorTerms)
+			sb.append(" & ").append(term);
+		return sb.toString();
 	}
 
-	private void printEvalBash(PrintWriter pw) {
-		evalBash = evalBash.replace(PARAMS_BASH_TAG, evalFormulaParams);
-		evalBash = evalBash.replace(REPLACE_BASH_TAG, evalFormulaReplace);
+	private void printEvalBash(PrintWriter pw, String evalBash, Map<String, String> evalParams) {
+		StringBuilder params = new StringBuilder();
+		StringBuilder replace = new StringBuilder();
+		for (Map.Entry<String, String> param : evalParams.entrySet()) {
+			params.append(param.getKey()).append("=\"").append(param.getValue()).append("\";\n");
+			replace.append(" -e \"s/").append(param.getKey()).append("/$").append(param.getKey()).append("/g\"");
+		}
+		evalBash = evalBash.replace(PARAMS_BASH_TAG, params);
+		evalBash = evalBash.replace(REPLACE_BASH_TAG, replace);
 		ManageWriter.printModel(pw, evalBash);
 	}
-	
-	/*Remove multiple line breaks*/
-	private void cleanPlanModules() {
-		String planModule = planModules.toString();
-		planModules = planModules.delete(0, planModules.length()-1);		
-		planModule = planModule.replaceAll("[\t\r\n][\t\r\n]+[\n]+", "\n\n");
-		planModules = planModules.append(planModule);
-	}
 }
\ No newline at end of file
@@ -0,0 +1,133 @@
+package br.unb.cic.goda.rtgoretoprism.generator.goda.writer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * A PRISM pattern parsed once into literal text and {@code $NAME$}
+ * placeholders (upper case letters, digits and underscores), so that a
+ * module is rendered in a single pass instead of by a chain of
+ * {@link String#replace} calls over the whole module text.
+ * <p>
+ * Placeholders are resolved against a scope when the template is rendered.
+ * A value may be plain text, another template, a {@link Fragment} or a list
+ * of those; nested templates are rendered against the same scope, so a
+ * pattern inserted for one placeholder still has its own placeholders
+ * filled in. A placeholder the scope does not bind is written back as is.
+ */
+public final class Template {
+
+	/** The literal text before each placeholder, plus the trailing text */
+	private final String[] texts;
+	private final String[] names;
+
+	private Template(String[] texts, String[] names) {
+		this.texts = texts;
+		this.names = names;
+	}
+
+	public static Template compile(String pattern) {
+		List<String> texts = new ArrayList<>();
+		List<String> names = new ArrayList<>();
+		int start = 0;
+		int i = pattern.indexOf('$');
+		while (i >= 0) {
+			int end = i + 1;
+			while (end < pattern.length() && isNameChar(pattern.charAt(end)))
+				end++;
+			if (end > i + 1 && end < pattern.length() && pattern.charAt(end) == '$') {
+				texts.add(pattern.substring(start, i));
+				names.add(pattern.substring(i + 1, end));
+				start = end + 1;
+				i = pattern.indexOf('$', start);
+			} else {
+				i = pattern.indexOf('$', i + 1);
+			}
+		}
+		texts.add(pattern.substring(start));
+		return new Template(texts.toArray(new String[0]), names.toArray(new String[0]));
+	}
+
+	private static boolean isNameChar(char c) {
+		return (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+	}
+
+	/**
+	 * Appends this template to {@code out}, looking placeholders up in
+	 * {@code scope}.
+	 */
+	public void render(StringBuilder out, Function<String, ?> scope) {
+		for (int i = 0; i < names.length; i++) {
+			out.append(texts[i]);
+			Object value = scope.apply(names[i]);
+			if (value == null)
+				out.append('$').append(names[i]).append('$');
+			else
+				write(out, value, scope);
+		}
+		out.append(texts[names.length]);
+	}
+
+	public String render(Function<String, ?> scope) {
+		StringBuilder out = new StringBuilder();
+		render(out, scope);
+		return out.toString();
+	}
+
+	/**
+	 * This template with the given placeholder bound; the others are left to
+	 * the scope it is rendered in.
+	 */
+	public Fragment with(String name, Object value) {
+		return new Fragment(this, new String[0], new Object[0]).with(name, value);
+	}
+
+	static void write(StringBuilder out, Object value, Function<String, ?> scope) {
+		if (value instanceof Template) {
+			((Template) value).render(out, scope);
+		} else if (value instanceof Fragment) {
+			((Fragment) value).render(out, scope);
+		} else if (value instanceof Iterable) {
+			for (Object part : (Iterable<?>) value)
+				write(out, part, scope);
+		} else {
+			out.append(value);
+		}
+	}
+
+	/**
+	 * A template with some of its placeholders already bound, which take
+	 * precedence over the scope it is rendered in.
+	 */
+	public static final class Fragment {
+
+		private final Template template;
+		private final String[] names;
+		private final Object[] values;
+
+		private Fragment(Template template, String[] names, Object[] values) {
+			this.template = template;
+			this.names = names;
+			this.values = values;
+		}
+
+		public Fragment with(String name, Object value) {
+			String[] names = Arrays.copyOf(this.names, this.names.length + 1);
+			Object[] values = Arrays.copyOf(this.values, this.values.length + 1);
+			names[this.names.length] = name;
+			values[this.values.length] = value;
+			return new Fragment(template, names, values);
+		}
+
+		void render(StringBuilder out, Function<String, ?> scope) {
+			template.render(out, name -> {
+				for (int i = 0; i < names.length; i++)
+					if (names[i].equals(name))
+						return values[i];
+				return scope.apply(name);
+			});
+		}
+	}
+}
@@ -0,0 +1,131 @@
+package br.unb.cic.goda.rtgoretoprism.generator.goda.writer;
+
+import br.unb.cic.goda.rtgoretoprism.generator.CodeGenerationException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The TemplateInput files (PRISM and PARAM patterns), read once per JVM and
+ * shared by every generation request.
+ * <p>
+ * Templates are looked up by their name under TemplateInput, e.g.
+ * {@code PRISM/pattern_and.pm}, on the classpath, so a packaged jar runs
+ * from any working directory. For template development the
+ * {@code goda.templates.dir} system property may point to a TemplateInput
+ * folder instead; a template is then read again whenever its file changes.
+ */
+public class TemplateRegistry {
+
+    public static final String RESOURCE_ROOT = "TemplateInput/";
+
+    private static final TemplateRegistry SHARED = create(System.getProperty("goda.templates.dir"));
+
+    private final Path directory;
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * @param directory the TemplateInput folder to read and watch, or
+     *                  {@code null} to load from the classpath
+     */
+    public TemplateRegistry(Path directory) {
+        this.directory = directory;
+    }
+
+    public static TemplateRegistry shared() {
+        return SHARED;
+    }
+
+    private static TemplateRegistry create(String directory) {
+        return new TemplateRegistry(directory == null || directory.isEmpty() ? null : Paths.get(directory));
+    }
+
+    public String getText(String name) throws CodeGenerationException {
+        return getEntry(name).text;
+    }
+
+    /**
+     * The template of the named file, compiled once.
+     */
+    public Template getTemplate(String name) throws CodeGenerationException {
+        return getEntry(name).getTemplate();
+    }
+
+    private Entry getEntry(String name) throws CodeGenerationException {
+        Entry entry = entries.get(name);
+        if (entry != null && (directory == null || entry.modified.equals(lastModified(name))))
+            return entry;
+        entry = load(name);
+        entries.put(name, entry);
+        return entry;
+    }
+
+    private Entry load(String name) throws CodeGenerationException {
+        try {
+            if (directory != null) {
+                // Time stamp first, so a change while reading is seen next time
+                FileTime modified = lastModified(name);
+                byte[] bytes = Files.readAllBytes(directory.resolve(name));
+                return new Entry(new String(bytes, StandardCharsets.UTF_8), modified);
+            }
+            try (InputStream in = TemplateRegistry.class.getClassLoader().getResourceAsStream(RESOURCE_ROOT + name)) {
+                if (in == null)
+                    throw new IOException(RESOURCE_ROOT + name);
+                return new Entry(readFully(in), null);
+            }
+        } catch (IOException e) {
+            String msg = "Error: template " + name + " not found.";
+            System.out.println(msg);
+            throw new CodeGenerationException(msg, e);
+        }
+    }
+
+    private FileTime lastModified(String name) {
+        try {
+            return Files.getLastModifiedTime(directory.resolve(name));
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private static String readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1)
+            out.write(buffer, 0, read);
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String toString() {
+        return directory == null ? "classpath:" + RESOURCE_ROOT : directory.toString();
+    }
+
+    private static class Entry {
+
+        private final String text;
+        private final FileTime modified;
+        private volatile Template template;
+
+        private Entry(String text, FileTime modified) {
+            this.text = text;
+            this.modified = modified;
+        }
+
+        private Template getTemplate() {
+            Template compiled = template;
+            if (compiled == null)
+                template = compiled = Template.compile(text);
+            return compiled;
+        }
+    }
+}
@@ -83,6 +83,14 @@ public class AgentDefinition {
         return agentname;
     }
 
+    public int getGoalCount() {
+        return goalbase.size();
+    }
+
+    public int getPlanCount() {
+        return planbase.size();
+    }
+
     public List<GoalContainer> getRootGoalList() {
     	return rootlist;
     }
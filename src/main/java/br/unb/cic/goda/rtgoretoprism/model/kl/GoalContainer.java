@@ -25,6 +25,7 @@ public class GoalContainer extends RTContainer {
 
     public PlanContainer addMERealPlan(PlanContainer child) {
         plans.add(child);
+        decompositionAdded(child);
         child.setRoot(this);
         if (decomposition == Const.OR || decomposition == Const.ME) {
             assert decomposition == Const.ME;// otherwise there is an error elsewhere!
@@ -36,6 +37,7 @@ public class GoalContainer extends RTContainer {
 
     public GoalContainer addDecomp(GoalContainer child) {
         goals.add(child);
+        decompositionAdded(child);
         child.setRoot(this);
         if (decomposition == Const.OR || decomposition == Const.ME) {
             child.addParent(this);
@@ -21,6 +21,7 @@ public class PlanContainer extends RTContainer {
 
     public PlanContainer addDecomp(PlanContainer child) {
         plans.add(child);
+        decompositionAdded(child);
         child.setRoot(this);
         if (decomposition == Const.OR || decomposition == Const.ME) {
             //mm: 'assert' commented to make ME goals possible
@@ -27,6 +27,8 @@ public abstract class RTContainer extends ElementContainer implements Comparable
     private boolean optional;
     private List<String> fulfillmentConditions;
     private List<String> adoptionConditions;
+    private List<RTContainer> leaves;
+    private List<RTContainer> decompParents = new ArrayList<>(1);
 
     public boolean isAlternative() {
         return !firstAlternatives.isEmpty() || !alternatives.isEmpty();
@@ -99,17 +101,46 @@ public abstract class RTContainer extends ElementContainer implements Comparable
         return sb.toString().replaceAll("[:\\.-]", "_").replace("[" + rtRegex + "]", "");
     }
 
-    public static LinkedList<RTContainer> fowardMeansEnd(RTContainer dec, LinkedList<RTContainer> decs) {
-        if (dec.getDecompGoals() != null && !dec.getDecompGoals().isEmpty())
-            for (RTContainer subDec : dec.getDecompGoals())
-                fowardMeansEnd(subDec, decs);
-        else if (dec.getDecompPlans() != null && !dec.getDecompPlans().isEmpty())
-            for (RTContainer subDec : dec.getDecompPlans())
-                fowardMeansEnd(subDec, decs);
-        else
-            decs.add(dec);
-
-        return decs;
+    /**
+     * The elements at the end of this one's decompositions (goals first, or
+     * else plans), or this element itself when it is not decomposed.
+     * <p>
+     * The list is computed once and kept until a decomposition is added
+     * below this element, through {@code addDecomp} or
+     * {@code addMERealPlan}.
+     */
+    public List<RTContainer> getLeaves() {
+        if (leaves == null) {
+            if (!goals.isEmpty() || !plans.isEmpty()) {
+                List<RTContainer> decs = new ArrayList<>();
+                for (RTContainer subDec : !goals.isEmpty() ? goals : plans)
+                    decs.addAll(subDec.getLeaves());
+                leaves = Collections.unmodifiableList(decs);
+            } else {
+                leaves = Collections.singletonList(this);
+            }
+        }
+        return leaves;
+    }
+
+    /**
+     * To be called when {@code child} has been added to a decomposition of
+     * this element. An element may be part of several decompositions, so
+     * every one of them is told.
+     */
+    protected void decompositionAdded(RTContainer child) {
+        child.decompParents.add(this);
+        invalidateLeaves();
+    }
+
+    private void invalidateLeaves() {
+        // Leaves are computed from the children's, so above an element
+        // without them none is cached either
+        if (leaves == null)
+            return;
+        leaves = null;
+        for (RTContainer parent : decompParents)
+            parent.invalidateLeaves();
     }
 
     public String getClearUId() {
@@ -0,0 +1,42 @@
+package br.unb.cic.goda.rtgoretoprism.paramformula;
+
+import java.util.List;
+
+/**
+ * A numeric constant, kept as written.
+ */
+public final class Constant extends Expr {
+
+    public static final Constant ZERO = new Constant("0");
+    public static final Constant ONE = new Constant("1");
+    public static final Constant MINUS_ONE = new Constant("-1");
+
+    private final String text;
+
+    public Constant(String text) {
+        this.text = text;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    @Override
+    public void appendTo(StringBuilder sb) {
+        sb.append(text);
+    }
+
+    @Override
+    public void collectVariables(List<String> variables) {
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Constant && text.equals(((Constant) o).text);
+    }
+
+    @Override
+    public int hashCode() {
+        return text.hashCode();
+    }
+}
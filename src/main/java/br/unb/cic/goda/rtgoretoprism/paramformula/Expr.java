@@ -0,0 +1,81 @@
+package br.unb.cic.goda.rtgoretoprism.paramformula;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+/**
+ * A node of a symbolic PARAM formula.
+ * <p>
+ * Nodes are immutable and may be shared, so a formula is a DAG rather than a
+ * tree. Formulas are only turned into text once, by {@link #toString()}.
+ */
+public abstract class Expr {
+
+    /**
+     * Appends the text of this formula.
+     */
+    public abstract void appendTo(StringBuilder sb);
+
+    /**
+     * Adds the variables of this formula, in the order they are written.
+     */
+    public abstract void collectVariables(List<String> variables);
+
+    /**
+     * The children of a composite node, in the order they are written.
+     */
+    static List<Expr> children(Expr expr) {
+        List<Expr> children = new ArrayList<>();
+        if (expr instanceof Sum)
+            children.addAll(((Sum) expr).getTerms());
+        else if (expr instanceof Product)
+            children.addAll(((Product) expr).getFactors());
+        else if (expr instanceof Power)
+            children.add(((Power) expr).getBase());
+        else if (expr instanceof Group)
+            children.add(((Group) expr).getInner());
+        return children;
+    }
+
+    /**
+     * Rebuilds a composite node with {@code f} applied to each of its
+     * children. Other nodes are returned as they are.
+     */
+    static Expr mapChildren(Expr expr, UnaryOperator<Expr> f) {
+        if (expr instanceof Sum) {
+            Sum sum = (Sum) expr;
+            Sum.Builder builder = Sum.builder();
+            for (int i = 0; i < sum.getTerms().size(); i++) {
+                Expr term = f.apply(sum.getTerms().get(i));
+                if (sum.isNegated(i))
+                    builder.minus(term);
+                else
+                    builder.plus(term);
+            }
+            return builder.build();
+        }
+        if (expr instanceof Product) {
+            List<Expr> factors = new ArrayList<>();
+            for (Expr factor : ((Product) expr).getFactors())
+                factors.add(f.apply(factor));
+            return new Product(factors);
+        }
+        if (expr instanceof Power) {
+            Power power = (Power) expr;
+            return new Power(f.apply(power.getBase()), power.getExponent());
+        }
+        if (expr instanceof Group) {
+            Group group = (Group) expr;
+            return group.withInner(f.apply(group.getInner()));
+        }
+        return expr;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        appendTo(sb);
+        return sb.toString();
+    }
+}
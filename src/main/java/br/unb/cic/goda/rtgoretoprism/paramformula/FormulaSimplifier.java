@@ -0,0 +1,316 @@
+package br.unb.cic.goda.rtgoretoprism.paramformula;
+
+import br.unb.cic.goda.rtgoretoprism.paramwrapper.symbolic.Rational;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Rewrites a formula into a smaller equivalent one: constants are folded,
+ * nested sums and products are flattened, like terms are added up and
+ * repeated factors become powers. Sums are never multiplied out, as that
+ * could make the formula grow exponentially.
+ * <p>
+ * Equal sub-formulas of the result are the same object, so the result can be
+ * written with each of them named once (see {@link SharedFormulaWriter}).
+ * A simplifier keeps its state between calls, use one per formula.
+ */
+public class FormulaSimplifier {
+
+    private final Map<Expr, Expr> interned = new HashMap<>();
+    private final Map<Expr, Integer> factorIds = new HashMap<>();
+    private final List<Expr> factors = new ArrayList<>();
+    private final Map<Expr, Linear> simplified = new IdentityHashMap<>();
+
+    public Expr simplify(Expr formula) {
+        return toExpr(linear(formula));
+    }
+
+    private Linear linear(Expr expr) {
+        Linear result = simplified.get(expr);
+        if (result != null)
+            return result;
+        if (expr instanceof Constant) {
+            Rational value = parse(((Constant) expr).getText());
+            result = value != null ? Linear.constant(value) : atom(expr);
+        } else if (expr instanceof Group) {
+            result = linear(((Group) expr).getInner());
+        } else if (expr instanceof Sum) {
+            Sum sum = (Sum) expr;
+            result = new Linear();
+            for (int i = 0; i < sum.getTerms().size(); i++)
+                result.add(linear(sum.getTerms().get(i)), sum.isNegated(i) ? Rational.ONE.negate() : Rational.ONE);
+        } else if (expr instanceof Product) {
+            result = Linear.constant(Rational.ONE);
+            for (Expr factor : ((Product) expr).getFactors())
+                result = multiply(result, linear(factor));
+        } else if (expr instanceof Power) {
+            Power power = (Power) expr;
+            Linear base = linear(power.getBase());
+            Integer exponent = parseExponent(power.getExponent());
+            result = exponent != null
+                    ? power(base, exponent)
+                    : atom(new Power(asFactor(toExpr(base), true), power.getExponent()));
+        } else if (expr instanceof Variable || expr instanceof Text) {
+            result = atom(expr);
+        } else {
+            result = atom(new Text(expr.toString()));
+        }
+        simplified.put(expr, result);
+        return result;
+    }
+
+    private Linear multiply(Linear a, Linear b) {
+        if (a.isZero() || b.isZero())
+            return new Linear();
+        if (a.terms.size() == 1 && b.terms.size() == 1) {
+            Map.Entry<Factors, Rational> x = a.terms.entrySet().iterator().next();
+            Map.Entry<Factors, Rational> y = b.terms.entrySet().iterator().next();
+            Linear product = new Linear();
+            product.terms.put(x.getKey().multiply(y.getKey()), x.getValue().multiply(y.getValue()));
+            return product;
+        }
+        // A constant is distributed, any other sum is kept as a factor
+        if (a.isConstant())
+            return b.scale(a.constantValue());
+        if (b.isConstant())
+            return a.scale(b.constantValue());
+        return multiply(a.terms.size() == 1 ? a : factor(a), b.terms.size() == 1 ? b : factor(b));
+    }
+
+    private Linear power(Linear base, int exponent) {
+        if (exponent == 0)
+            return Linear.constant(Rational.ONE);
+        if (exponent == 1)
+            return base;
+        if (base.terms.size() > 1)
+            base = factor(base);
+        if (base.isZero())
+            return base;
+        Map.Entry<Factors, Rational> term = base.terms.entrySet().iterator().next();
+        Rational coefficient = Rational.ONE;
+        for (int i = 0; i < exponent; i++)
+            coefficient = coefficient.multiply(term.getValue());
+        Linear result = new Linear();
+        result.terms.put(term.getKey().power(exponent), coefficient);
+        return result;
+    }
+
+    private Linear factor(Linear sum) {
+        return atom(Group.tight(toExpr(sum)));
+    }
+
+    private Linear atom(Expr expr) {
+        Expr canonical = intern(expr);
+        Integer id = factorIds.get(canonical);
+        if (id == null) {
+            id = factors.size();
+            factors.add(canonical);
+            factorIds.put(canonical, id);
+        }
+        Linear result = new Linear();
+        result.terms.put(Factors.of(id), Rational.ONE);
+        return result;
+    }
+
+    private Expr toExpr(Linear linear) {
+        List<Map.Entry<Factors, Rational>> terms = new ArrayList<>(linear.terms.entrySet());
+        terms.sort((x, y) -> x.getKey().compareTo(y.getKey()));
+        if (terms.isEmpty())
+            return intern(Constant.ZERO);
+        if (terms.size() == 1 && terms.get(0).getValue().signum() > 0)
+            return term(terms.get(0).getKey(), terms.get(0).getValue());
+        // Lead with a positive term, writing 1 - x rather than -x + 1
+        for (int i = 0; i < terms.size(); i++) {
+            if (terms.get(i).getValue().signum() > 0) {
+                terms.add(0, terms.remove(i));
+                break;
+            }
+        }
+        // bc reads -x^2 as (-x)^2, so a sum without a positive term is
+        // written as -(x^2 + y)
+        if (terms.get(0).getValue().signum() < 0) {
+            Expr negated = toExpr(linear.scale(Rational.ONE.negate()));
+            return intern(Sum.builder().minus(negated instanceof Constant ? negated : Group.tight(negated)).build());
+        }
+        Sum.Builder sum = Sum.builder();
+        for (Map.Entry<Factors, Rational> term : terms) {
+            Rational coefficient = term.getValue();
+            if (coefficient.signum() < 0)
+                sum.minus(term(term.getKey(), coefficient.negate()));
+            else
+                sum.plus(term(term.getKey(), coefficient));
+        }
+        return intern(sum.build());
+    }
+
+    private Expr term(Factors monomial, Rational coefficient) {
+        if (monomial.powers.isEmpty())
+            return intern(new Constant(coefficient.toString()));
+        List<Expr> product = new ArrayList<>();
+        if (!coefficient.isOne())
+            product.add(intern(new Constant(coefficient.toString())));
+        for (Map.Entry<Integer, Integer> power : monomial.powers.entrySet()) {
+            Expr factor = factors.get(power.getKey());
+            if (power.getValue() == 1)
+                product.add(asFactor(factor, false));
+            else
+                product.add(intern(new Power(asFactor(factor, true), String.valueOf(power.getValue()))));
+        }
+        return product.size() == 1 ? product.get(0) : intern(new Product(product));
+    }
+
+    /**
+     * Puts parentheses around what would otherwise bind wrongly as a factor
+     * or as the base of a power.
+     */
+    private Expr asFactor(Expr expr, boolean base) {
+        boolean plain;
+        if (expr instanceof Variable || expr instanceof Group)
+            plain = true;
+        else if (expr instanceof Text || expr instanceof Constant)
+            plain = expr.toString().matches("[\\w.]+");
+        else
+            plain = !base && expr instanceof Power;
+        return plain ? expr : intern(Group.tight(expr));
+    }
+
+    private Expr intern(Expr expr) {
+        Expr canonical = interned.putIfAbsent(expr, expr);
+        return canonical != null ? canonical : expr;
+    }
+
+    private static Rational parse(String text) {
+        try {
+            return Rational.parse(text);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static Integer parseExponent(String text) {
+        try {
+            int exponent = Integer.parseInt(text.trim());
+            return exponent >= 0 ? exponent : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Factors, by id, and their powers.
+     */
+    private static final class Factors implements Comparable<Factors> {
+
+        private static final Factors NONE = new Factors(new TreeMap<>());
+
+        private final TreeMap<Integer, Integer> powers;
+
+        private Factors(TreeMap<Integer, Integer> powers) {
+            this.powers = powers;
+        }
+
+        static Factors of(int id) {
+            TreeMap<Integer, Integer> powers = new TreeMap<>();
+            powers.put(id, 1);
+            return new Factors(powers);
+        }
+
+        Factors multiply(Factors other) {
+            TreeMap<Integer, Integer> product = new TreeMap<>(powers);
+            for (Map.Entry<Integer, Integer> power : other.powers.entrySet())
+                product.merge(power.getKey(), power.getValue(), Integer::sum);
+            return new Factors(product);
+        }
+
+        Factors power(int exponent) {
+            TreeMap<Integer, Integer> result = new TreeMap<>();
+            for (Map.Entry<Integer, Integer> power : powers.entrySet())
+                result.put(power.getKey(), power.getValue() * exponent);
+            return new Factors(result);
+        }
+
+        /**
+         * Orders by factor ids; the constant term comes last.
+         */
+        @Override
+        public int compareTo(Factors other) {
+            if (powers.isEmpty() || other.powers.isEmpty())
+                return Boolean.compare(powers.isEmpty(), other.powers.isEmpty());
+            Iterator<Map.Entry<Integer, Integer>> mine = powers.entrySet().iterator();
+            Iterator<Map.Entry<Integer, Integer>> theirs = other.powers.entrySet().iterator();
+            while (mine.hasNext() && theirs.hasNext()) {
+                Map.Entry<Integer, Integer> a = mine.next();
+                Map.Entry<Integer, Integer> b = theirs.next();
+                int byId = a.getKey().compareTo(b.getKey());
+                if (byId != 0)
+                    return byId;
+                int byPower = a.getValue().compareTo(b.getValue());
+                if (byPower != 0)
+                    return byPower;
+            }
+            return Boolean.compare(mine.hasNext(), theirs.hasNext());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Factors && powers.equals(((Factors) o).powers);
+        }
+
+        @Override
+        public int hashCode() {
+            return powers.hashCode();
+        }
+    }
+
+    /**
+     * A sum of terms, each a coefficient times some factors.
+     */
+    private static final class Linear {
+
+        private final Map<Factors, Rational> terms = new LinkedHashMap<>();
+
+        static Linear constant(Rational value) {
+            Linear linear = new Linear();
+            if (!value.isZero())
+                linear.terms.put(Factors.NONE, value);
+            return linear;
+        }
+
+        boolean isZero() {
+            return terms.isEmpty();
+        }
+
+        boolean isConstant() {
+            return terms.isEmpty() || (terms.size() == 1 && terms.containsKey(Factors.NONE));
+        }
+
+        Rational constantValue() {
+            Rational value = terms.get(Factors.NONE);
+            return value == null ? Rational.ZERO : value;
+        }
+
+        void add(Linear other, Rational factor) {
+            for (Map.Entry<Factors, Rational> term : other.terms.entrySet()) {
+                Rational coefficient = term.getValue().multiply(factor);
+                Rational sum = terms.containsKey(term.getKey()) ? terms.get(term.getKey()).add(coefficient) : coefficient;
+                if (sum.isZero())
+                    terms.remove(term.getKey());
+                else
+                    terms.put(term.getKey(), sum);
+            }
+        }
+
+        Linear scale(Rational factor) {
+            Linear scaled = new Linear();
+            scaled.add(this, factor);
+            return scaled;
+        }
+    }
+}
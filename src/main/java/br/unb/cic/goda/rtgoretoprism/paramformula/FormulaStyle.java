@@ -0,0 +1,25 @@
+package br.unb.cic.goda.rtgoretoprism.paramformula;
+
+/**
+ * How the composed formula of a goal model is written to {@code result.out}.
+ */
+public enum FormulaStyle {
+
+    /** As composed, without any rewriting. */
+    PLAIN,
+    /** Rewritten by {@link FormulaSimplifier}. */
+    SIMPLIFIED,
+    /** Simplified, with the shared sub-formulas named once, see {@link SharedFormulaWriter}. */
+    SHARED;
+
+    public String write(Expr formula) {
+        switch (this) {
+            case SIMPLIFIED:
+                return new FormulaSimplifier().simplify(formula).toString();
+            case SHARED:
+                return String.join("\n", SharedFormulaWriter.write(new FormulaSimplifier().simplify(formula)));
+            default:
+                return formula.toString();
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package br.unb.cic.goda.rtgoretoprism.paramformula;
+
+import java.util.List;
+
+/**
+ * An expression between parentheses. Whether there is a space after the
+ * opening or before the closing parenthesis is part of the node, so the
+ * formulas keep the layout they always had, e.g. {@code ( a * b )} or
+ * {@code (1 - a )}.
+ */
+public final class Group extends Expr {
+
+    private final Expr inner;
+    private final boolean spaceAfterOpen;
+    private final boolean spaceBeforeClose;
+
+    public Group(Expr inner, boolean spaceAfterOpen, boolean spaceBeforeClose) {
+        this.inner = inner;
+        this.spaceAfterOpen = spaceAfterOpen;
+        this.spaceBeforeClose = spaceBeforeClose;
+    }
+
+    /**
+     * Parentheses with a space on both sides, {@code ( inner )}.
+     */
+    public static Group spaced(Expr inner) {
+        return new Group(inner, true, true);
+    }
+
+    /**
+     * Parentheses without spaces, {@code (inner)}.
+     */
+    public static Group tight(Expr inner) {
+        return new Group(inner, false, false);
+    }
+
+    public Expr getInner() {
+        return inner;
+    }
+
+    /**
+     * The same parentheses around another expression.
+     */
+    public Group withInner(Expr other) {
+        return new Group(other, spaceAfterOpen, spaceBeforeClose);
+    }
+
+    @Override
+    public void appendTo(StringBuilder sb) {
+        sb.append(spaceAfterOpen ? "( " : "(");
+        inner.appendTo(sb);
+        sb.append(spaceBeforeClose ? " )" : ")");
+    }
+
+    @Override
+    public void collectVariables(List<String> variables) {
+        inner.collectVariables(variables);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (!(o instanceof Group))
+            return false;
+        Group other = (Group) o;
+        return spaceAfterOpen == other.spaceAfterOpen && spaceBeforeClose == other.spaceBeforeClose
+                && inner.equals(other.inner);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * inner.hashCode() + (spaceAfterOpen ? 2 : 0) + (spaceBeforeClose ? 1 : 0) + 5;
+    }
+}
@@ -0,0 +1,51 @@
+package br.unb.cic.goda.rtgoretoprism.paramformula;
+
+import java.util.List;
+
+/**
+ * A base raised to a constant exponent, written as {@code base^k}.
+ */
+public final class Power extends Expr {
+
+    private final Expr base;
+    private final String exponent;
+
+    public Power(Expr base, String exponent) {
+        this.base = base;
+        this.exponent = exponent;
+    }
+
+    public Expr getBase() {
+        return base;
+    }
+
+    public String getExponent() {
+        return exponent;
+    }
+
+    @Override
+    public void appendTo(StringBuilder sb) {
+        base.appendTo(sb);
+        sb.append('^').append(exponent);
+    }
+
+    @Override
+    public void collectVariables(List<String> variables) {
+        base.collectVariables(variables);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (!(o instanceof Power))
+            return false;
+        Power other = (Power) o;
+        return exponent.equals(other.exponent) && base.equals(other.base);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * base.hashCode() + exponent.hashCode()) + 4;
+    }
+}
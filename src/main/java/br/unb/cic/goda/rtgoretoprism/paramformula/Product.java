@@ -0,0 +1,53 @@
+package br.unb.cic.goda.rtgoretoprism.paramformula;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Factors written as {@code a * b * c}.
+ */
+public final class Product extends Expr {
+
+    private final List<Expr> factors;
+    private int hash;
+
+    public Product(Expr... factors) {
+        this(Arrays.asList(factors));
+    }
+
+    public Product(List<Expr> factors) {
+        this.factors = Collections.unmodifiableList(factors);
+    }
+
+    public List<Expr> getFactors() {
+        return factors;
+    }
+
+    @Override
+    public void appendTo(StringBuilder sb) {
+        for (int i = 0; i < factors.size(); i++) {
+            if (i > 0)
+                sb.append(" * ");
+            factors.get(i).appendTo(sb);
+        }
+    }
+
+    @Override
+    public void collectVariables(List<String> variables) {
+        for (Expr factor : factors)
+            factor.collectVariables(variables);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || (o instanceof Product && hashCode() == o.hashCode() && factors.equals(((Product) o).factors));
+    }
+
+    @Override
+    public int hashCode() {
+        if (hash == 0)
+            hash = 31 * factors.hashCode() + 2;
+        return hash;
+    }
+}
@@ -0,0 +1,58 @@
+package br.unb.cic.goda.rtgoretoprism.paramformula;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes a formula with every sub-formula used more than once named once,
+ * as a list of assignments followed by the formula itself:
+ * <pre>
+ * t1=rTaskG1_T1 * rTaskG1_T2
+ * t2=1 - t1
+ * t1 + rTaskG1_T1 * rTaskG1_T2 * t2 + t2^2
+ * </pre>
+ * The names are lower case so the lines can be fed to {@code bc} as they are.
+ */
+public class SharedFormulaWriter {
+
+    private final Map<Expr, Integer> uses = new IdentityHashMap<>();
+    private final Map<Expr, Expr> written = new IdentityHashMap<>();
+    private final List<String> lines = new ArrayList<>();
+
+    public static List<String> write(Expr formula) {
+        SharedFormulaWriter writer = new SharedFormulaWriter();
+        writer.countUses(formula);
+        Expr last = writer.name(formula, true);
+        writer.lines.add(last.toString());
+        return writer.lines;
+    }
+
+    private void countUses(Expr expr) {
+        Integer count = uses.get(expr);
+        uses.put(expr, count == null ? 1 : count + 1);
+        if (count == null)
+            for (Expr child : Expr.children(expr))
+                countUses(child);
+    }
+
+    /**
+     * Rewrites the formula with the shared sub-formulas replaced by their
+     * names, adding their definitions first.
+     */
+    private Expr name(Expr expr, boolean root) {
+        Expr result = written.get(expr);
+        if (result != null)
+            return result;
+        result = Expr.mapChildren(expr, child -> name(child, false));
+        if (!root && uses.get(expr) > 1 && !Expr.children(expr).isEmpty()) {
+            Expr definition = result instanceof Group ? ((Group) result).getInner() : result;
+            Variable variable = new Variable("t" + (lines.size() + 1));
+            lines.add(variable.getName() + "=" + definition);
+            result = variable;
+        }
+        written.put(expr, result);
+        return result;
+    }
+}
@@ -0,0 +1,88 @@
+package br.unb.cic.goda.rtgoretoprism.paramformula;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Terms added or subtracted, written as {@code a + b - c}.
+ */
+public final class Sum extends Expr {
+
+    private final List<Expr> terms;
+    private final List<Boolean> negated;
+    private int hash;
+
+    private Sum(List<Expr> terms, List<Boolean> negated) {
+        this.terms = Collections.unmodifiableList(terms);
+        this.negated = Collections.unmodifiableList(negated);
+    }
+
+    public List<Expr> getTerms() {
+        return terms;
+    }
+
+    public boolean isNegated(int term) {
+        return negated.get(term);
+    }
+
+    @Override
+    public void appendTo(StringBuilder sb) {
+        for (int i = 0; i < terms.size(); i++) {
+            if (i > 0)
+                sb.append(negated.get(i) ? " - " : " + ");
+            else if (negated.get(i))
+                sb.append('-');
+            terms.get(i).appendTo(sb);
+        }
+    }
+
+    @Override
+    public void collectVariables(List<String> variables) {
+        for (Expr term : terms)
+            term.collectVariables(variables);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+
+        private final List<Expr> terms = new ArrayList<>();
+        private final List<Boolean> negated = new ArrayList<>();
+
+        public Builder plus(Expr term) {
+            terms.add(term);
+            negated.add(false);
+            return this;
+        }
+
+        public Builder minus(Expr term) {
+            terms.add(term);
+            negated.add(true);
+            return this;
+        }
+
+        public Sum build() {
+            return new Sum(terms, negated);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (!(o instanceof Sum) || hashCode() != o.hashCode())
+            return false;
+        Sum other = (Sum) o;
+        return negated.equals(other.negated) && terms.equals(other.terms);
+    }
+
+    @Override
+    public int hashCode() {
+        if (hash == 0)
+            hash = 31 * (31 * terms.hashCode() + negated.hashCode()) + 3;
+        return hash;
+    }
+}
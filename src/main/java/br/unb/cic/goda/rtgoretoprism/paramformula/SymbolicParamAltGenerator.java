@@ -8,19 +8,52 @@ import java.util.Map;
 public class SymbolicParamAltGenerator {
 
 	public String getAlternativeFormula (String[] nodes) {
+		return getAlternativeExpr(nodes).toString();
+	}
+
+	public Expr getAlternativeExpr (String[] nodes) {
 		String xor[] = new String[nodes.length];
 
 		Map<String,String> list = generateList(nodes, xor);
 
-		String param = generateCombinations(list, xor);
+		return generateFactored(list, xor);
+	}
 
-		return param;
+	/**
+	 * The probability of success of the chosen alternative, where XOR_i tells
+	 * whether alternative i is the chosen one:
+	 * <pre>
+	 * sum over i of XOR_i * n_i * product over j != i of (1 - XOR_j)
+	 * </pre>
+	 * It is {@link #generateCombinations} with the inclusion-exclusion terms
+	 * of each n_i gathered, so it has n terms of n factors instead of
+	 * n * 2^(n-1).
+	 */
+	public static Expr generateFactored (Map<String, String> list, String[] xors) {
+
+		Sum.Builder formula = Sum.builder();
+		for (String elem : xors) {
+			List<Expr> factors = new ArrayList<>();
+			factors.add(new Variable(elem));
+			factors.add(new Variable(list.get(elem)));
+			for (String xor : xors) {
+				if (!xor.equals(elem)) {
+					factors.add(Group.spaced(Sum.builder().plus(Constant.ONE).minus(new Variable(xor)).build()));
+				}
+			}
+			formula.plus(new Product(factors));
+		}
+		return Group.spaced(formula.build());
 	}
 
-	public static String generateCombinations (Map<String, String> list, String[] xors) {
+	/**
+	 * The same probability as {@link #generateFactored}, written out as the
+	 * inclusion-exclusion sum over every non-empty subset of the
+	 * alternatives. Only practical for a handful of alternatives.
+	 */
+	public static Expr generateCombinations (Map<String, String> list, String[] xors) {
 
-		String formula = new String();
-		formula = "(";
+		Sum.Builder formula = Sum.builder();
 
 		int n = xors.length; 
 		for(int num = 0;num < (1 << n);num++) { 
@@ -34,53 +67,30 @@ public class SymbolicParamAltGenerator {
 			} 
 
 			if (combination.size() > 0) {
-				formula = formula + printFormula(list, combination);
+				addTerms(formula, list, combination);
 			}
 		}
-		formula = formula.replaceFirst("\\( \\+ ", "( ");
-		return formula + " )";
+		return Group.spaced(formula.build());
 	}
 
-	private static String printFormula(Map<String, String> list, List<String> combination) {
+	private static void addTerms(Sum.Builder formula, Map<String, String> list, List<String> combination) {
 
-		String[] nodes = new String[combination.size()];
-		String all_xors = new String();
-
-		int index = 0;
-		for(String elem : combination) {
-			if (all_xors.length() == 0) {
-				all_xors = elem;
+		int total = combination.size();
+		for (String elem : combination) {
+			List<Expr> factors = new ArrayList<>();
+			for (String xor : combination) {
+				factors.add(new Variable(xor));
 			}
-			else {
-				all_xors = all_xors.concat(" * " + elem);
-			}
-			nodes[index] = list.get(elem);
-			index++;
-		}
-
-		int total = nodes.length;
-		String formula = null;
-		for (int i = 0; i < total; i++) {
+			factors.add(new Variable(list.get(elem)));
 			if (total%2 != 0) {
 				//Odd: +
-				if (formula == null) {
-					formula = " + " + all_xors + " * " + nodes[i];
-				}
-				else {
-					formula = formula + " + " + all_xors + " * " + nodes[i];
-				}
+				formula.plus(new Product(factors));
 			}
 			else {
 				//Even: -
-				if (formula == null) {
-					formula = " - " + all_xors + " * " + nodes[i];
-				}
-				else {
-					formula = formula + " - " + all_xors + " * " + nodes[i];
-				}
+				formula.minus(new Product(factors));
 			}
 		}
-		return formula;
 	}
 
 	private static Map<String, String> generateList(String[] nodes, String[] xor_list) {
@@ -93,4 +103,4 @@ public class SymbolicParamAltGenerator {
 		}
 		return list;
 	}
-}
\ No newline at end of file
+}
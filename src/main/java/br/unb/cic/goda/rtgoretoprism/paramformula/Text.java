@@ -0,0 +1,41 @@
+package br.unb.cic.goda.rtgoretoprism.paramformula;
+
+import java.util.List;
+
+/**
+ * Formula text that is not looked into, such as the result of the model
+ * checker for a leaf task.
+ */
+public final class Text extends Expr {
+
+    public static final Text EMPTY = new Text("");
+
+    private final String text;
+
+    public Text(String text) {
+        this.text = text;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    @Override
+    public void appendTo(StringBuilder sb) {
+        sb.append(text);
+    }
+
+    @Override
+    public void collectVariables(List<String> variables) {
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Text && text.equals(((Text) o).text);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * text.hashCode() + 1;
+    }
+}
@@ -0,0 +1,40 @@
+package br.unb.cic.goda.rtgoretoprism.paramformula;
+
+import java.util.List;
+
+/**
+ * A parameter of the formula: the id of a sub node, whose formula is
+ * substituted later, or an {@code OPT_}/{@code XOR_} choice.
+ */
+public final class Variable extends Expr {
+
+    private final String name;
+
+    public Variable(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public void appendTo(StringBuilder sb) {
+        sb.append(name);
+    }
+
+    @Override
+    public void collectVariables(List<String> variables) {
+        variables.add(name);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Variable && name.equals(((Variable) o).name);
+    }
+
+    @Override
+    public int hashCode() {
+        return name.hashCode();
+    }
+}
@@ -0,0 +1,177 @@
+package br.unb.cic.goda.rtgoretoprism.paramwrapper;
+
+import br.unb.cic.goda.rtgoretoprism.generator.CodeGenerationException;
+import br.unb.cic.goda.rtgoretoprism.util.LruCache;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Cache of the formulas computed by the model checker for leaf task models.
+ * <p>
+ * The models of two leaf tasks only differ by the plan id, so the id is
+ * replaced by a placeholder in the model and in the property, and the hash of
+ * the result is the cache key. On a hit the placeholder in the cached formula
+ * is replaced by the id of the requesting plan.
+ * <p>
+ * Formulas are kept in an in-memory LRU tier ({@code goda.param.cache.size}
+ * entries) and, when {@code goda.param.cache.dir} is set, also in that
+ * directory, so they survive restarts. Concurrent requests for the same key
+ * share one evaluation.
+ */
+public class FormulaCache {
+
+    private static final Logger LOGGER = Logger.getLogger(FormulaCache.class.getName());
+    private static final String PLACEHOLDER = "$PLAN_ID$";
+
+    private static final FormulaCache SHARED = new FormulaCache(
+            Integer.getInteger("goda.param.cache.size", 1024),
+            System.getProperty("goda.param.cache.dir") != null ? Paths.get(System.getProperty("goda.param.cache.dir")) : null);
+
+    /**
+     * Computes the formula of a model for a property on a cache miss.
+     */
+    public interface Evaluator {
+        String evaluate(String model, String property) throws CodeGenerationException;
+    }
+
+    private final LruCache<String, String> memory;
+    private final Path directory;
+    private final ConcurrentMap<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public FormulaCache(int capacity, Path directory) {
+        this.memory = new LruCache<>(capacity);
+        this.directory = directory;
+    }
+
+    public static FormulaCache shared() {
+        return SHARED;
+    }
+
+    public String getFormula(String planId, String model, String property, Evaluator evaluator) throws CodeGenerationException {
+        if (planId.isEmpty() || model.contains(PLACEHOLDER) || property.contains(PLACEHOLDER))
+            return evaluator.evaluate(model, property);
+        String key = key(model.replace(planId, PLACEHOLDER) + "\n" + property.replace(planId, PLACEHOLDER));
+
+        String formula = memory.get(key);
+        if (formula == null) {
+            formula = readFromDisk(key);
+            if (formula != null) {
+                diskHits.incrementAndGet();
+                memory.put(key, formula);
+            }
+        }
+        if (formula != null) {
+            hits.incrementAndGet();
+            return formula.replace(PLACEHOLDER, planId);
+        }
+
+        CompletableFuture<String> pending = new CompletableFuture<>();
+        CompletableFuture<String> running = inFlight.putIfAbsent(key, pending);
+        if (running != null) {
+            hits.incrementAndGet();
+            return await(running).replace(PLACEHOLDER, planId);
+        }
+        misses.incrementAndGet();
+        try {
+            String result = evaluator.evaluate(model, property);
+            // An empty formula means the checker could not be run, do not keep it
+            if (!result.isEmpty()) {
+                formula = result.replace(planId, PLACEHOLDER);
+                memory.put(key, formula);
+                writeToDisk(key, formula);
+            }
+            pending.complete(result.replace(planId, PLACEHOLDER));
+            return result;
+        } catch (CodeGenerationException | RuntimeException e) {
+            pending.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, pending);
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getDiskHits() {
+        return diskHits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public int size() {
+        return memory.size();
+    }
+
+    private String await(CompletableFuture<String> running) throws CodeGenerationException {
+        try {
+            return running.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CodeGenerationException("PARAM invocation interrupted.", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof CodeGenerationException)
+                throw (CodeGenerationException) e.getCause();
+            throw new CodeGenerationException(e.getCause());
+        }
+    }
+
+    private String readFromDisk(String key) {
+        if (directory == null)
+            return null;
+        Path file = directory.resolve(key);
+        if (!Files.isRegularFile(file))
+            return null;
+        try {
+            return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, e.toString(), e);
+            return null;
+        }
+    }
+
+    private void writeToDisk(String key, String formula) {
+        if (directory == null)
+            return;
+        try {
+            Files.createDirectories(directory);
+            Path temp = Files.createTempFile(directory, key, ".tmp");
+            Files.write(temp, formula.getBytes(StandardCharsets.UTF_8));
+            Files.move(temp, directory.resolve(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, e.toString(), e);
+        }
+    }
+
+    private static String key(String normalized) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(normalized.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest)
+                hex.append(String.format("%02x", b));
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
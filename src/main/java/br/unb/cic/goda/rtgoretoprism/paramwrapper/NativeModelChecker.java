@@ -0,0 +1,63 @@
+package br.unb.cic.goda.rtgoretoprism.paramwrapper;
+
+import br.unb.cic.goda.rtgoretoprism.generator.CodeGenerationException;
+import br.unb.cic.goda.rtgoretoprism.paramwrapper.symbolic.ParametricDtmc;
+import br.unb.cic.goda.rtgoretoprism.paramwrapper.symbolic.UnsupportedModelException;
+
+import java.util.Collections;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Computes the reachability formula of a leaf task model inside the JVM, by
+ * state elimination (see {@link ParametricDtmc}), instead of running PARAM.
+ * <p>
+ * Models the engine does not handle are passed to the fallback checker, if
+ * one is given.
+ */
+public class NativeModelChecker implements ParametricModelChecker {
+
+    private static final Logger LOGGER = Logger.getLogger(NativeModelChecker.class.getName());
+    private static final Pattern REACHABILITY = Pattern.compile(
+            "P\\s*=\\s*\\?\\s*\\[\\s*(?:true\\s+U|F)\\s*\\(?\\s*(\\w+)\\s*=\\s*(-?\\d+)\\s*\\)?\\s*\\]");
+
+    private String fileName;
+    private ParametricModelChecker fallback;
+
+    public NativeModelChecker(String fileName) {
+        this(fileName, null);
+    }
+
+    public NativeModelChecker(String fileName, ParametricModelChecker fallback) {
+        this.fileName = fileName;
+        this.fallback = fallback;
+    }
+
+    @Override
+    public String getFormula(String model) throws CodeGenerationException {
+        try {
+            return evaluate(model, ParamWrapper.reliabilityProperty(fileName));
+        } catch (UnsupportedModelException e) {
+            if (fallback == null)
+                throw new CodeGenerationException("Model of " + fileName + " not supported: " + e.getMessage(), e);
+            LOGGER.fine("Falling back for " + fileName + ": " + e.getMessage());
+            return fallback.getFormula(model);
+        }
+    }
+
+    /**
+     * Evaluates a reachability property of the form
+     * {@code P=? [ true U (var = value) ]} on the model.
+     */
+    public static String evaluate(String model, String property) throws UnsupportedModelException {
+        Matcher reachability = REACHABILITY.matcher(property.trim());
+        if (!reachability.matches())
+            throw new UnsupportedModelException("unsupported property: " + property);
+        ParametricDtmc dtmc = ParametricDtmc.parse(model);
+        if (!dtmc.getVariable().equals(reachability.group(1)))
+            throw new UnsupportedModelException("property on an undeclared variable: " + property);
+        int target = Integer.parseInt(reachability.group(2));
+        return dtmc.reachability(Collections.singleton(target)).toString();
+    }
+}
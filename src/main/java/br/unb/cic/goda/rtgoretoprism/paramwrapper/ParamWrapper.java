@@ -1,14 +1,21 @@
 package br.unb.cic.goda.rtgoretoprism.paramwrapper;
 
 import br.unb.cic.goda.rtgoretoprism.generator.CodeGenerationException;
+import br.unb.cic.goda.rtgoretoprism.util.FileUtility;
+import br.unb.cic.goda.rtgoretoprism.util.ProcessResult;
+import br.unb.cic.goda.rtgoretoprism.util.ProcessRunner;
+import br.unb.cic.goda.rtgoretoprism.util.Span;
 
-import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.nio.charset.Charset;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -27,6 +34,9 @@ public class ParamWrapper implements ParametricModelChecker {
     private String prismPath;
     private String fileName;
     private boolean usePrism = false;
+    private FormulaCache cache = FormulaCache.shared();
+    private long timeoutSeconds = Long.getLong("goda.process.timeoutSeconds", 300L);
+    private Span span = Span.NONE;
 
     public ParamWrapper(String prismParamPath, String fileName) {
         this.paramPath = prismParamPath + "/param";
@@ -34,78 +44,126 @@ public class ParamWrapper implements ParametricModelChecker {
         this.fileName = fileName;
     }
 
+    /**
+     * Sets the cache of computed formulas, or {@code null} to always run the
+     * model checker.
+     */
+    public void setCache(FormulaCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Sets how long a single PARAM or PRISM run may take. Defaults to the
+     * {@code goda.process.timeoutSeconds} system property, or 5 minutes.
+     */
+    public void setTimeout(long seconds) {
+        this.timeoutSeconds = seconds;
+    }
+
+    /**
+     * Sets the span the cache hits and misses are counted on.
+     */
+    public void setSpan(Span span) {
+        this.span = span;
+    }
+
     @Override
     public String getFormula(String model) throws CodeGenerationException {
-        String reliabilityProperty = "P=? [ true U (s" + fileName + " = 2) ]";
-        return evaluate(model, reliabilityProperty);
+        String reliabilityProperty = reliabilityProperty(fileName);
+        if (cache == null)
+            return evaluate(model, reliabilityProperty);
+        boolean[] evaluated = new boolean[1];
+        String formula = cache.getFormula(fileName, model, reliabilityProperty, (m, property) -> {
+            evaluated[0] = true;
+            return evaluate(m, property);
+        });
+        span.count(evaluated[0] ? "formulaCache.misses" : "formulaCache.hits");
+        return formula;
+    }
+
+    /**
+     * The probability of the leaf task model reaching its success state.
+     */
+    static String reliabilityProperty(String fileName) {
+        return "P=? [ true U (s" + fileName + " = 2) ]";
     }
 
-    private String evaluate(String model, String property) {
+    private String evaluate(String model, String property) throws CodeGenerationException {
+        Path directory = null;
         try {
-            File modelFile = File.createTempFile("model", "param");
-            FileWriter modelWriter = new FileWriter(modelFile);
-            modelWriter.write(model);
-            modelWriter.flush();
-            modelWriter.close();
+            directory = Files.createTempDirectory("param");
+            Path modelFile = directory.resolve("model.param");
+            Files.write(modelFile, model.getBytes(StandardCharsets.UTF_8));
 
-            File propertyFile = File.createTempFile("property", "prop");
-            FileWriter propertyWriter = new FileWriter(propertyFile);
-            propertyWriter.write(property);
-            propertyWriter.flush();
-            propertyWriter.close();
+            Path propertyFile = directory.resolve("property.prop");
+            Files.write(propertyFile, property.getBytes(StandardCharsets.UTF_8));
 
-            File resultsFile = File.createTempFile("result", null);
+            Path resultsFile = directory.resolve("result");
 
             String formula;
             if (usePrism && !model.contains("param")) {
-                formula = invokeModelChecker(modelFile.getAbsolutePath(),
-                        propertyFile.getAbsolutePath(),
-                        resultsFile.getAbsolutePath());
+                formula = invokeModelChecker(modelFile, propertyFile, resultsFile);
             } else {
-                formula = invokeParametricModelChecker(modelFile.getAbsolutePath(),
-                        propertyFile.getAbsolutePath(),
-                        resultsFile.getAbsolutePath());
+                formula = invokeParametricModelChecker(modelFile, propertyFile, resultsFile);
             }
             return formula.trim().replaceAll("\\s+", "");
+        } catch (InterruptedIOException e) {
+            throw new CodeGenerationException("PARAM invocation interrupted.", e);
+        } catch (TimeoutException e) {
+            throw new CodeGenerationException(e.getMessage(), e);
         } catch (IOException e) {
             LOGGER.log(Level.SEVERE, e.toString(), e);
+        } finally {
+            deleteQuietly(directory);
         }
         return "";
     }
 
-    private String invokeParametricModelChecker(String modelPath,
-                                                String propertyPath,
-                                                String resultsPath) throws IOException {
-        String commandLine = paramPath + " "
-                + modelPath + " "
-                + propertyPath + " "
-                + "--result-file " + resultsPath;
-        return invokeAndGetResult(commandLine, resultsPath + ".out");
+    private String invokeParametricModelChecker(Path modelPath,
+                                                Path propertyPath,
+                                                Path resultsPath) throws IOException, TimeoutException {
+        List<String> command = Arrays.asList(paramPath,
+                modelPath.toString(),
+                propertyPath.toString(),
+                "--result-file", resultsPath.toString());
+        return invokeAndGetResult(command, Paths.get(resultsPath + ".out"));
     }
 
-    private String invokeModelChecker(String modelPath,
-                                      String propertyPath,
-                                      String resultsPath) throws IOException {
-        String commandLine = prismPath + " "
-                + modelPath + " "
-                + propertyPath + " "
-                + "-exportresults " + resultsPath;
-        return invokeAndGetResult(commandLine, resultsPath);
+    private String invokeModelChecker(Path modelPath,
+                                      Path propertyPath,
+                                      Path resultsPath) throws IOException, TimeoutException {
+        List<String> command = Arrays.asList(prismPath,
+                modelPath.toString(),
+                propertyPath.toString(),
+                "-exportresults", resultsPath.toString());
+        return invokeAndGetResult(command, resultsPath);
     }
 
-    private String invokeAndGetResult(String commandLine, String resultsPath) throws IOException {
-        LOGGER.fine(commandLine);
-        Process program = Runtime.getRuntime().exec(commandLine);
-        int exitCode = 0;
+    private String invokeAndGetResult(List<String> command, Path resultsPath) throws IOException, TimeoutException {
         try {
-            exitCode = program.waitFor();
+            ProcessResult result = ProcessRunner.shared().run(command, null, timeoutSeconds, TimeUnit.SECONDS);
+            if (result.getExitCode() != 0)
+                LOGGER.warning(command.get(0) + " exited with code " + result.getExitCode() + ": " + result.getError());
         } catch (InterruptedException e) {
-            LOGGER.severe("Exit code: " + exitCode);
-            LOGGER.log(Level.SEVERE, e.toString(), e);
+            // Cancelled: the runner already killed the external tool
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(String.join(" ", command));
         }
-        List<String> lines = Files.readAllLines(Paths.get(resultsPath), Charset.forName("UTF-8"));
+        List<String> lines = Files.readAllLines(resultsPath, StandardCharsets.UTF_8);
+        if (lines.isEmpty())
+            throw new IOException(command.get(0) + " wrote no result to " + resultsPath);
         // Formula
         return lines.get(lines.size() - 1);
     }
 
+    private static void deleteQuietly(Path directory) {
+        if (directory == null)
+            return;
+        try {
+            FileUtility.deleteDirectory(directory);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, e.toString(), e);
+        }
+    }
+
 }
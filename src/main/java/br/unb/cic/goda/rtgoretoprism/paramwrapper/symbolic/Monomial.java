@@ -0,0 +1,107 @@
+package br.unb.cic.goda.rtgoretoprism.paramwrapper.symbolic;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A product of parameters raised to positive powers, e.g. {@code x^2*y}.
+ * Monomials are ordered first by total degree and then lexicographically.
+ */
+public final class Monomial implements Comparable<Monomial> {
+
+    public static final Monomial ONE = new Monomial(new TreeMap<>());
+
+    private final TreeMap<String, Integer> powers;
+    private final int degree;
+
+    private Monomial(TreeMap<String, Integer> powers) {
+        this.powers = powers;
+        int total = 0;
+        for (int power : powers.values())
+            total += power;
+        this.degree = total;
+    }
+
+    public static Monomial of(String variable) {
+        TreeMap<String, Integer> powers = new TreeMap<>();
+        powers.put(variable, 1);
+        return new Monomial(powers);
+    }
+
+    public Map<String, Integer> getPowers() {
+        return Collections.unmodifiableMap(powers);
+    }
+
+    public int getDegree() {
+        return degree;
+    }
+
+    public Monomial multiply(Monomial other) {
+        TreeMap<String, Integer> product = new TreeMap<>(powers);
+        for (Map.Entry<String, Integer> entry : other.powers.entrySet())
+            product.merge(entry.getKey(), entry.getValue(), Integer::sum);
+        return new Monomial(product);
+    }
+
+    /**
+     * Returns this monomial divided by the other one, or {@code null} if the
+     * other one is not a divisor.
+     */
+    public Monomial divide(Monomial other) {
+        TreeMap<String, Integer> quotient = new TreeMap<>(powers);
+        for (Map.Entry<String, Integer> entry : other.powers.entrySet()) {
+            Integer power = quotient.get(entry.getKey());
+            if (power == null || power < entry.getValue())
+                return null;
+            if (power.equals(entry.getValue()))
+                quotient.remove(entry.getKey());
+            else
+                quotient.put(entry.getKey(), power - entry.getValue());
+        }
+        return new Monomial(quotient);
+    }
+
+    @Override
+    public int compareTo(Monomial other) {
+        if (degree != other.degree)
+            return Integer.compare(degree, other.degree);
+        Iterator<Map.Entry<String, Integer>> mine = powers.entrySet().iterator();
+        Iterator<Map.Entry<String, Integer>> theirs = other.powers.entrySet().iterator();
+        while (mine.hasNext() && theirs.hasNext()) {
+            Map.Entry<String, Integer> a = mine.next();
+            Map.Entry<String, Integer> b = theirs.next();
+            int byName = a.getKey().compareTo(b.getKey());
+            if (byName != 0)
+                return -byName;
+            int byPower = a.getValue().compareTo(b.getValue());
+            if (byPower != 0)
+                return byPower;
+        }
+        return Boolean.compare(mine.hasNext(), theirs.hasNext());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Monomial && powers.equals(((Monomial) o).powers);
+    }
+
+    @Override
+    public int hashCode() {
+        return powers.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Integer> entry : powers.entrySet()) {
+            if (sb.length() > 0)
+                sb.append('*');
+            sb.append(entry.getKey());
+            if (entry.getValue() > 1)
+                sb.append('^').append(entry.getValue());
+        }
+        return sb.toString();
+    }
+}
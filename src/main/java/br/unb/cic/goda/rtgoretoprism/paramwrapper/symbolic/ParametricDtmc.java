@@ -0,0 +1,316 @@
+package br.unb.cic.goda.rtgoretoprism.paramwrapper.symbolic;
+
+import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A parametric DTMC with a single module over a single integer variable,
+ * which is the shape of the leaf task models (see
+ * {@code TemplateInput/PARAM/modelbody.param}). The states are the values of
+ * the variable.
+ * <p>
+ * Reachability probabilities are computed by state elimination: every state
+ * other than the initial and the target ones is removed, redirecting its
+ * incoming transitions to its successors, until only the direct transitions
+ * from the initial state to the targets are left.
+ */
+public class ParametricDtmc {
+
+    private static final Pattern PARAM = Pattern.compile("param\\s+(?:double\\s+)?(\\w+)");
+    private static final Pattern MODULE = Pattern.compile("module\\s+(\\w+)(.*?)endmodule", Pattern.DOTALL);
+    private static final Pattern VARIABLE = Pattern.compile("(\\w+)\\s*:\\s*\\[\\s*(-?\\d+)\\s*\\.\\.\\s*(-?\\d+)\\s*\\]\\s*(?:init\\s+(-?\\d+))?");
+    private static final Pattern COMMAND = Pattern.compile("\\[\\w*\\]\\s*\\(?\\s*(\\w+)\\s*=\\s*(-?\\d+)\\s*\\)?\\s*->(.*)", Pattern.DOTALL);
+    private static final Pattern UPDATE = Pattern.compile("\\s*\\+?\\s*(?:([^:]*?)\\s*:)?\\s*\\(\\s*(\\w+)'\\s*=\\s*(-?\\d+)\\s*\\)\\s*");
+
+    private final String variable;
+    private final int initial;
+    private final Map<Integer, Map<Integer, RationalFunction>> transitions;
+
+    private ParametricDtmc(String variable, int initial, Map<Integer, Map<Integer, RationalFunction>> transitions) {
+        this.variable = variable;
+        this.initial = initial;
+        this.transitions = transitions;
+    }
+
+    public String getVariable() {
+        return variable;
+    }
+
+    /**
+     * Reads a model written in the PRISM language.
+     */
+    public static ParametricDtmc parse(String model) throws UnsupportedModelException {
+        String text = model.replaceAll("//[^\\n]*", "").trim();
+        if (!text.startsWith("dtmc"))
+            throw new UnsupportedModelException("only dtmc models are supported");
+        text = text.substring("dtmc".length());
+
+        Set<String> parameters = new HashSet<>();
+        Matcher module = MODULE.matcher(text);
+        if (!module.find())
+            throw new UnsupportedModelException("no module found");
+        String declarations = text.substring(0, module.start()) + text.substring(module.end());
+        if (MODULE.matcher(declarations).find())
+            throw new UnsupportedModelException("only a single module is supported");
+        for (String declaration : declarations.split(";")) {
+            declaration = declaration.trim();
+            if (declaration.isEmpty())
+                continue;
+            Matcher param = PARAM.matcher(declaration);
+            if (!param.matches())
+                throw new UnsupportedModelException("unsupported declaration: " + declaration);
+            parameters.add(param.group(1));
+        }
+
+        String variable = null;
+        int initial = 0;
+        Map<Integer, Map<Integer, RationalFunction>> transitions = new TreeMap<>();
+        for (String statement : module.group(2).split(";")) {
+            statement = statement.trim();
+            if (statement.isEmpty())
+                continue;
+            Matcher declaration = VARIABLE.matcher(statement);
+            if (declaration.matches()) {
+                if (variable != null)
+                    throw new UnsupportedModelException("only a single variable is supported");
+                variable = declaration.group(1);
+                initial = Integer.parseInt(declaration.group(declaration.group(4) != null ? 4 : 2));
+                continue;
+            }
+            Matcher command = COMMAND.matcher(statement);
+            if (!command.matches())
+                throw new UnsupportedModelException("unsupported statement: " + statement);
+            if (variable == null || !variable.equals(command.group(1)))
+                throw new UnsupportedModelException("guard on an undeclared variable: " + statement);
+            int source = Integer.parseInt(command.group(2));
+            if (transitions.containsKey(source))
+                throw new UnsupportedModelException("more than one command for " + variable + "=" + source);
+            transitions.put(source, parseUpdates(command.group(3), variable, parameters));
+        }
+        if (variable == null)
+            throw new UnsupportedModelException("no variable declared");
+        return new ParametricDtmc(variable, initial, transitions);
+    }
+
+    private static Map<Integer, RationalFunction> parseUpdates(String updates, String variable, Set<String> parameters) throws UnsupportedModelException {
+        Map<Integer, RationalFunction> successors = new TreeMap<>();
+        Matcher update = UPDATE.matcher(updates);
+        int position = 0;
+        while (position < updates.length()) {
+            update.region(position, updates.length());
+            if (!update.lookingAt())
+                throw new UnsupportedModelException("unsupported update: " + updates.substring(position));
+            if (!variable.equals(update.group(2)))
+                throw new UnsupportedModelException("update of an undeclared variable: " + update.group(2));
+            RationalFunction probability = update.group(1) == null
+                    ? RationalFunction.ONE
+                    : new ExpressionParser(update.group(1), parameters).parse();
+            successors.merge(Integer.parseInt(update.group(3)), probability, RationalFunction::add);
+            position = update.end();
+        }
+        return successors;
+    }
+
+    /**
+     * The probability of eventually reaching one of the target states from
+     * the initial state.
+     */
+    public RationalFunction reachability(Set<Integer> targets) throws UnsupportedModelException {
+        if (targets.contains(initial))
+            return RationalFunction.ONE;
+
+        // Targets are absorbing, and states that cannot reach them do not matter
+        Map<Integer, Map<Integer, RationalFunction>> matrix = new TreeMap<>();
+        Set<Integer> reaching = reaching(targets);
+        if (!reaching.contains(initial))
+            return RationalFunction.ZERO;
+        Map<Integer, Set<Integer>> predecessors = new TreeMap<>();
+        for (Map.Entry<Integer, Map<Integer, RationalFunction>> row : transitions.entrySet()) {
+            int source = row.getKey();
+            if (targets.contains(source) || !reaching.contains(source))
+                continue;
+            Map<Integer, RationalFunction> successors = new TreeMap<>();
+            for (Map.Entry<Integer, RationalFunction> edge : row.getValue().entrySet()) {
+                if (edge.getValue().isZero() || !reaching.contains(edge.getKey()))
+                    continue;
+                successors.put(edge.getKey(), edge.getValue());
+                predecessors.computeIfAbsent(edge.getKey(), k -> new TreeSet<>()).add(source);
+            }
+            matrix.put(source, successors);
+        }
+
+        for (Integer state : new ArrayList<>(matrix.keySet())) {
+            if (state != initial)
+                eliminate(state, matrix, predecessors);
+        }
+
+        Map<Integer, RationalFunction> fromInitial = matrix.get(initial);
+        RationalFunction result = RationalFunction.ZERO;
+        for (int target : targets) {
+            RationalFunction probability = fromInitial.get(target);
+            if (probability != null)
+                result = result.add(probability);
+        }
+        RationalFunction loop = fromInitial.get(initial);
+        if (loop != null)
+            result = result.divide(escape(loop));
+        return result;
+    }
+
+    private static void eliminate(int state, Map<Integer, Map<Integer, RationalFunction>> matrix,
+                                  Map<Integer, Set<Integer>> predecessors) throws UnsupportedModelException {
+        Map<Integer, RationalFunction> successors = matrix.remove(state);
+        RationalFunction loop = successors.remove(state);
+        RationalFunction factor = loop == null ? RationalFunction.ONE : RationalFunction.ONE.divide(escape(loop));
+        Set<Integer> incoming = predecessors.getOrDefault(state, new TreeSet<>());
+        for (int predecessor : incoming) {
+            if (predecessor == state)
+                continue;
+            Map<Integer, RationalFunction> row = matrix.get(predecessor);
+            RationalFunction toState = row.remove(state).multiply(factor);
+            for (Map.Entry<Integer, RationalFunction> edge : successors.entrySet()) {
+                row.merge(edge.getKey(), toState.multiply(edge.getValue()), RationalFunction::add);
+                predecessors.computeIfAbsent(edge.getKey(), k -> new TreeSet<>()).add(predecessor);
+            }
+        }
+        for (int successor : successors.keySet())
+            predecessors.get(successor).remove(state);
+        predecessors.remove(state);
+    }
+
+    private static RationalFunction escape(RationalFunction loop) throws UnsupportedModelException {
+        RationalFunction escape = RationalFunction.ONE.subtract(loop);
+        if (escape.isZero())
+            throw new UnsupportedModelException("a state can reach the target but never leaves itself");
+        return escape;
+    }
+
+    private Set<Integer> reaching(Set<Integer> targets) {
+        Set<Integer> reaching = new HashSet<>(targets);
+        Deque<Integer> pending = new ArrayDeque<>(targets);
+        while (!pending.isEmpty()) {
+            int state = pending.pop();
+            for (Map.Entry<Integer, Map<Integer, RationalFunction>> row : transitions.entrySet()) {
+                RationalFunction probability = row.getValue().get(state);
+                if (probability != null && !probability.isZero() && reaching.add(row.getKey()))
+                    pending.push(row.getKey());
+            }
+        }
+        return reaching;
+    }
+
+    /**
+     * Parses the transition probabilities: numbers, parameters, parentheses
+     * and the {@code + - * /} operators, plus {@code ^} with an integer
+     * exponent.
+     */
+    private static class ExpressionParser {
+
+        private final String text;
+        private final Set<String> parameters;
+        private int position;
+
+        ExpressionParser(String text, Set<String> parameters) {
+            this.text = text;
+            this.parameters = parameters;
+        }
+
+        RationalFunction parse() throws UnsupportedModelException {
+            RationalFunction value = sum();
+            skipSpaces();
+            if (position != text.length())
+                throw new UnsupportedModelException("unsupported expression: " + text);
+            return value;
+        }
+
+        private RationalFunction sum() throws UnsupportedModelException {
+            RationalFunction value = product();
+            while (true) {
+                if (accept('+'))
+                    value = value.add(product());
+                else if (accept('-'))
+                    value = value.subtract(product());
+                else
+                    return value;
+            }
+        }
+
+        private RationalFunction product() throws UnsupportedModelException {
+            RationalFunction value = power();
+            while (true) {
+                if (accept('*'))
+                    value = value.multiply(power());
+                else if (accept('/')) {
+                    RationalFunction divisor = power();
+                    if (divisor.isZero())
+                        throw new UnsupportedModelException("division by zero: " + text);
+                    value = value.divide(divisor);
+                } else
+                    return value;
+            }
+        }
+
+        private RationalFunction power() throws UnsupportedModelException {
+            RationalFunction base = unary();
+            if (!accept('^'))
+                return base;
+            skipSpaces();
+            int start = position;
+            while (position < text.length() && Character.isDigit(text.charAt(position)))
+                position++;
+            if (start == position)
+                throw new UnsupportedModelException("unsupported exponent: " + text);
+            RationalFunction value = RationalFunction.ONE;
+            for (int i = Integer.parseInt(text.substring(start, position)); i > 0; i--)
+                value = value.multiply(base);
+            return value;
+        }
+
+        private RationalFunction unary() throws UnsupportedModelException {
+            if (accept('-'))
+                return unary().negate();
+            if (accept('(')) {
+                RationalFunction value = sum();
+                if (!accept(')'))
+                    throw new UnsupportedModelException("unbalanced parentheses: " + text);
+                return value;
+            }
+            skipSpaces();
+            int start = position;
+            if (position < text.length() && (Character.isDigit(text.charAt(position)) || text.charAt(position) == '.')) {
+                while (position < text.length() && (Character.isDigit(text.charAt(position)) || text.charAt(position) == '.'))
+                    position++;
+                return RationalFunction.of(Polynomial.constant(Rational.parse(text.substring(start, position))));
+            }
+            while (position < text.length() && (Character.isLetterOrDigit(text.charAt(position)) || text.charAt(position) == '_'))
+                position++;
+            String name = text.substring(start, position);
+            if (!parameters.contains(name))
+                throw new UnsupportedModelException("unknown identifier '" + name + "' in: " + text);
+            return RationalFunction.of(Polynomial.variable(name));
+        }
+
+        private boolean accept(char c) {
+            skipSpaces();
+            if (position < text.length() && text.charAt(position) == c) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        private void skipSpaces() {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position)))
+                position++;
+        }
+    }
+}
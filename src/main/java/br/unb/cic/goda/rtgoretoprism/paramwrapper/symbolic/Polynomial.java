@@ -0,0 +1,158 @@
+package br.unb.cic.goda.rtgoretoprism.paramwrapper.symbolic;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An immutable polynomial over the model parameters with exact rational
+ * coefficients.
+ */
+public final class Polynomial {
+
+    public static final Polynomial ZERO = new Polynomial(new TreeMap<>());
+    public static final Polynomial ONE = constant(Rational.ONE);
+
+    private final TreeMap<Monomial, Rational> terms;
+
+    private Polynomial(TreeMap<Monomial, Rational> terms) {
+        this.terms = terms;
+    }
+
+    public static Polynomial constant(Rational value) {
+        TreeMap<Monomial, Rational> terms = new TreeMap<>();
+        if (!value.isZero())
+            terms.put(Monomial.ONE, value);
+        return new Polynomial(terms);
+    }
+
+    public static Polynomial variable(String name) {
+        TreeMap<Monomial, Rational> terms = new TreeMap<>();
+        terms.put(Monomial.of(name), Rational.ONE);
+        return new Polynomial(terms);
+    }
+
+    public boolean isZero() {
+        return terms.isEmpty();
+    }
+
+    public boolean isConstant() {
+        return terms.isEmpty() || (terms.size() == 1 && terms.containsKey(Monomial.ONE));
+    }
+
+    /**
+     * The value of a constant polynomial.
+     */
+    public Rational constantValue() {
+        Rational value = terms.get(Monomial.ONE);
+        return value == null ? Rational.ZERO : value;
+    }
+
+    public int termCount() {
+        return terms.size();
+    }
+
+    public Polynomial add(Polynomial other) {
+        TreeMap<Monomial, Rational> sum = new TreeMap<>(terms);
+        for (Map.Entry<Monomial, Rational> term : other.terms.entrySet())
+            addTerm(sum, term.getKey(), term.getValue());
+        return new Polynomial(sum);
+    }
+
+    public Polynomial subtract(Polynomial other) {
+        return add(other.negate());
+    }
+
+    public Polynomial negate() {
+        TreeMap<Monomial, Rational> negated = new TreeMap<>();
+        for (Map.Entry<Monomial, Rational> term : terms.entrySet())
+            negated.put(term.getKey(), term.getValue().negate());
+        return new Polynomial(negated);
+    }
+
+    public Polynomial multiply(Polynomial other) {
+        TreeMap<Monomial, Rational> product = new TreeMap<>();
+        for (Map.Entry<Monomial, Rational> a : terms.entrySet())
+            for (Map.Entry<Monomial, Rational> b : other.terms.entrySet())
+                addTerm(product, a.getKey().multiply(b.getKey()), a.getValue().multiply(b.getValue()));
+        return new Polynomial(product);
+    }
+
+    public Polynomial scale(Rational factor) {
+        if (factor.isZero())
+            return ZERO;
+        TreeMap<Monomial, Rational> scaled = new TreeMap<>();
+        for (Map.Entry<Monomial, Rational> term : terms.entrySet())
+            scaled.put(term.getKey(), term.getValue().multiply(factor));
+        return new Polynomial(scaled);
+    }
+
+    /**
+     * Returns the exact quotient of this polynomial by the divisor, or
+     * {@code null} if the divisor leaves a remainder.
+     */
+    public Polynomial divideExact(Polynomial divisor) {
+        if (divisor.isZero())
+            throw new ArithmeticException("Division by zero");
+        Map.Entry<Monomial, Rational> lead = divisor.terms.lastEntry();
+        Polynomial remainder = this;
+        TreeMap<Monomial, Rational> quotient = new TreeMap<>();
+        while (!remainder.isZero()) {
+            Map.Entry<Monomial, Rational> top = remainder.terms.lastEntry();
+            Monomial monomial = top.getKey().divide(lead.getKey());
+            if (monomial == null)
+                return null;
+            Rational coefficient = top.getValue().divide(lead.getValue());
+            addTerm(quotient, monomial, coefficient);
+            TreeMap<Monomial, Rational> step = new TreeMap<>();
+            step.put(monomial, coefficient);
+            remainder = remainder.subtract(divisor.multiply(new Polynomial(step)));
+        }
+        return new Polynomial(quotient);
+    }
+
+    private static void addTerm(TreeMap<Monomial, Rational> terms, Monomial monomial, Rational coefficient) {
+        Rational sum = terms.containsKey(monomial) ? terms.get(monomial).add(coefficient) : coefficient;
+        if (sum.isZero())
+            terms.remove(monomial);
+        else
+            terms.put(monomial, sum);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Polynomial && terms.equals(((Polynomial) o).terms);
+    }
+
+    @Override
+    public int hashCode() {
+        return terms.hashCode();
+    }
+
+    /**
+     * Writes the terms from the lowest to the highest degree, e.g.
+     * {@code 1-rTaskT1}.
+     */
+    @Override
+    public String toString() {
+        if (terms.isEmpty())
+            return "0";
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<Monomial, Rational> term : terms.entrySet()) {
+            Monomial monomial = term.getKey();
+            Rational coefficient = term.getValue();
+            String text;
+            if (monomial.equals(Monomial.ONE))
+                text = coefficient.toString();
+            else if (coefficient.isOne())
+                text = monomial.toString();
+            else if (coefficient.negate().isOne())
+                text = "-" + monomial;
+            else
+                text = coefficient + "*" + monomial;
+            if (sb.length() > 0 && !text.startsWith("-"))
+                sb.append('+');
+            sb.append(text);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,102 @@
+package br.unb.cic.goda.rtgoretoprism.paramwrapper.symbolic;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * An exact fraction, always kept in lowest terms with a positive denominator.
+ */
+public final class Rational implements Comparable<Rational> {
+
+    public static final Rational ZERO = new Rational(BigInteger.ZERO, BigInteger.ONE);
+    public static final Rational ONE = new Rational(BigInteger.ONE, BigInteger.ONE);
+
+    private final BigInteger numerator;
+    private final BigInteger denominator;
+
+    private Rational(BigInteger numerator, BigInteger denominator) {
+        this.numerator = numerator;
+        this.denominator = denominator;
+    }
+
+    public static Rational of(BigInteger numerator, BigInteger denominator) {
+        if (denominator.signum() == 0)
+            throw new ArithmeticException("Division by zero");
+        if (denominator.signum() < 0) {
+            numerator = numerator.negate();
+            denominator = denominator.negate();
+        }
+        BigInteger gcd = numerator.gcd(denominator);
+        if (!gcd.equals(BigInteger.ONE) && gcd.signum() != 0) {
+            numerator = numerator.divide(gcd);
+            denominator = denominator.divide(gcd);
+        }
+        return new Rational(numerator, denominator);
+    }
+
+    public static Rational of(long value) {
+        return of(BigInteger.valueOf(value), BigInteger.ONE);
+    }
+
+    /**
+     * Parses an integer or decimal literal such as {@code 3} or {@code 0.25}.
+     */
+    public static Rational parse(String literal) {
+        BigDecimal decimal = new BigDecimal(literal);
+        if (decimal.scale() <= 0)
+            return of(decimal.toBigIntegerExact(), BigInteger.ONE);
+        return of(decimal.unscaledValue(), BigInteger.TEN.pow(decimal.scale()));
+    }
+
+    public boolean isZero() {
+        return numerator.signum() == 0;
+    }
+
+    public boolean isOne() {
+        return numerator.equals(denominator);
+    }
+
+    public int signum() {
+        return numerator.signum();
+    }
+
+    public Rational add(Rational other) {
+        return of(numerator.multiply(other.denominator).add(other.numerator.multiply(denominator)),
+                denominator.multiply(other.denominator));
+    }
+
+    public Rational multiply(Rational other) {
+        return of(numerator.multiply(other.numerator), denominator.multiply(other.denominator));
+    }
+
+    public Rational divide(Rational other) {
+        return of(numerator.multiply(other.denominator), denominator.multiply(other.numerator));
+    }
+
+    public Rational negate() {
+        return new Rational(numerator.negate(), denominator);
+    }
+
+    @Override
+    public int compareTo(Rational other) {
+        return numerator.multiply(other.denominator).compareTo(other.numerator.multiply(denominator));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof Rational))
+            return false;
+        Rational other = (Rational) o;
+        return numerator.equals(other.numerator) && denominator.equals(other.denominator);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * numerator.hashCode() + denominator.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return denominator.equals(BigInteger.ONE) ? numerator.toString() : numerator + "/" + denominator;
+    }
+}
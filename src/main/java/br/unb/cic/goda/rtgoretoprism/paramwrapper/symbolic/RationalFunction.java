@@ -0,0 +1,89 @@
+package br.unb.cic.goda.rtgoretoprism.paramwrapper.symbolic;
+
+/**
+ * A quotient of two polynomials. Results are cancelled whenever the
+ * denominator is a constant or divides the numerator exactly.
+ */
+public final class RationalFunction {
+
+    public static final RationalFunction ZERO = new RationalFunction(Polynomial.ZERO, Polynomial.ONE);
+    public static final RationalFunction ONE = new RationalFunction(Polynomial.ONE, Polynomial.ONE);
+
+    private final Polynomial numerator;
+    private final Polynomial denominator;
+
+    private RationalFunction(Polynomial numerator, Polynomial denominator) {
+        this.numerator = numerator;
+        this.denominator = denominator;
+    }
+
+    public static RationalFunction of(Polynomial polynomial) {
+        return new RationalFunction(polynomial, Polynomial.ONE);
+    }
+
+    public static RationalFunction of(Polynomial numerator, Polynomial denominator) {
+        if (denominator.isZero())
+            throw new ArithmeticException("Division by zero");
+        if (numerator.isZero())
+            return ZERO;
+        if (denominator.isConstant())
+            return new RationalFunction(numerator.scale(Rational.ONE.divide(denominator.constantValue())), Polynomial.ONE);
+        Polynomial quotient = numerator.divideExact(denominator);
+        if (quotient != null)
+            return new RationalFunction(quotient, Polynomial.ONE);
+        return new RationalFunction(numerator, denominator);
+    }
+
+    public Polynomial getNumerator() {
+        return numerator;
+    }
+
+    public Polynomial getDenominator() {
+        return denominator;
+    }
+
+    public boolean isZero() {
+        return numerator.isZero();
+    }
+
+    public RationalFunction add(RationalFunction other) {
+        if (denominator.equals(other.denominator))
+            return of(numerator.add(other.numerator), denominator);
+        return of(numerator.multiply(other.denominator).add(other.numerator.multiply(denominator)),
+                denominator.multiply(other.denominator));
+    }
+
+    public RationalFunction subtract(RationalFunction other) {
+        return add(other.negate());
+    }
+
+    public RationalFunction negate() {
+        return new RationalFunction(numerator.negate(), denominator);
+    }
+
+    public RationalFunction multiply(RationalFunction other) {
+        return of(numerator.multiply(other.numerator), denominator.multiply(other.denominator));
+    }
+
+    public RationalFunction divide(RationalFunction other) {
+        return of(numerator.multiply(other.denominator), denominator.multiply(other.numerator));
+    }
+
+    /**
+     * Writes the function so it can be pasted into a larger expression:
+     * anything but a plain product of parameters is put between parentheses.
+     */
+    @Override
+    public String toString() {
+        if (denominator.equals(Polynomial.ONE))
+            return group(numerator);
+        return "(" + group(numerator) + "/" + group(denominator) + ")";
+    }
+
+    private static String group(Polynomial polynomial) {
+        String text = polynomial.toString();
+        if (polynomial.termCount() > 1 || text.startsWith("-") || text.contains("/"))
+            return "(" + text + ")";
+        return text;
+    }
+}
@@ -0,0 +1,13 @@
+package br.unb.cic.goda.rtgoretoprism.paramwrapper.symbolic;
+
+/**
+ * Thrown when a model uses a construct {@link ParametricDtmc} does not handle.
+ */
+public class UnsupportedModelException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    public UnsupportedModelException(String message) {
+        super(message);
+    }
+}
@@ -10,6 +10,10 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
 
 /**
  * A set of utility in order to work with files
@@ -113,6 +117,22 @@ public class FileUtility {
 	}
 	
 	
+	/**
+	 * Delete the specified directory and everything inside it
+	 * 
+	 * @param directory the target directory
+	 * 
+	 * @throws IOException 
+	 */
+	public static void deleteDirectory(Path directory) throws IOException {
+		if (!Files.exists(directory))
+			return;
+		try (Stream<Path> paths = Files.walk(directory)) {
+			for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator)
+				Files.deleteIfExists(path);
+		}
+	}
+	
 	/**
 	 * Read the specified file into a String
 	 * 
@@ -123,25 +143,14 @@ public class FileUtility {
 	 * @throws IOException 
 	 */
 	public static String readFileAsString(String filePath) throws IOException {
-		StringBuffer fileData = new StringBuffer(1000);
-		BufferedReader reader = null;
+		StringBuilder fileData = new StringBuilder((int) Math.min(fileSize(filePath), Integer.MAX_VALUE - 8));
 		
-		try {
-			reader = new BufferedReader(new FileReader(filePath));
+		try (BufferedReader reader = new BufferedReader(new FileReader(filePath))) {
+			char[] buf = new char[4096];
+			int numRead;
 			
-			char[] buf = new char[1024];
-			int numRead = 0;
-			
-			while ((numRead = reader.read(buf)) != -1) {
-				String readData = String.valueOf(buf, 0, numRead);
-				fileData.append(readData);
-				buf = new char[1024];
-			}
-		} catch( IOException ioe ) {
-			throw ioe;
-		}
-		finally {
-			reader.close();
+			while ((numRead = reader.read(buf)) != -1)
+				fileData.append(buf, 0, numRead);
 		}
 		
 		return fileData.toString();
@@ -0,0 +1,38 @@
+package br.unb.cic.goda.rtgoretoprism.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A small thread safe cache that evicts the least recently used entry once
+ * it holds more than {@code capacity} entries.
+ */
+public class LruCache<K, V> {
+
+    private final Map<K, V> entries;
+
+    public LruCache(int capacity) {
+        this.entries = new LinkedHashMap<K, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    public synchronized V get(K key) {
+        return entries.get(key);
+    }
+
+    public synchronized void put(K key, V value) {
+        entries.put(key, value);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+}
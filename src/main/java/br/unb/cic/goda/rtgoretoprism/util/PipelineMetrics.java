@@ -0,0 +1,87 @@
+package br.unb.cic.goda.rtgoretoprism.util;
+
+/**
+ * Durations, sizes and counts of the generation stages: model parsing and
+ * conversion, RT parsing, PRISM and PARAM generation, external processes
+ * and packaging.
+ * <p>
+ * Measurements go to a {@link Recorder}, which discards them until one is
+ * installed with {@link #setRecorder(Recorder)}; the web application
+ * installs one that feeds the Spring Boot metrics. Names are dotted, e.g.
+ * {@code prism} or {@code param.leaf}.
+ */
+public final class PipelineMetrics {
+
+    public interface Recorder {
+
+        Recorder NONE = new Recorder() {
+            @Override
+            public void recordDuration(String stage, long nanos) {
+            }
+
+            @Override
+            public void recordValue(String name, long value) {
+            }
+
+            @Override
+            public void increment(String name) {
+            }
+        };
+
+        /**
+         * One run of the stage took the given time.
+         */
+        void recordDuration(String stage, long nanos);
+
+        /**
+         * A size or count (bytes written, leaves evaluated) of one run.
+         */
+        void recordValue(String name, long value);
+
+        void increment(String name);
+    }
+
+    private static volatile Recorder recorder = Recorder.NONE;
+
+    private PipelineMetrics() {
+    }
+
+    public static void setRecorder(Recorder recorder) {
+        PipelineMetrics.recorder = recorder != null ? recorder : Recorder.NONE;
+    }
+
+    public static Recorder getRecorder() {
+        return recorder;
+    }
+
+    /**
+     * Starts timing a run of the stage; the duration is recorded when the
+     * returned timer is closed.
+     */
+    public static Timer start(String stage) {
+        return new Timer(stage);
+    }
+
+    public static void record(String name, long value) {
+        recorder.recordValue(name, value);
+    }
+
+    public static void increment(String name) {
+        recorder.increment(name);
+    }
+
+    public static final class Timer implements AutoCloseable {
+
+        private final String stage;
+        private final long start = System.nanoTime();
+
+        private Timer(String stage) {
+            this.stage = stage;
+        }
+
+        @Override
+        public void close() {
+            recorder.recordDuration(stage, System.nanoTime() - start);
+        }
+    }
+}
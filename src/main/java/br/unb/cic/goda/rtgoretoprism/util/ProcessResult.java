@@ -0,0 +1,41 @@
+package br.unb.cic.goda.rtgoretoprism.util;
+
+/**
+ * The outcome of a process started by {@link ProcessRunner}.
+ */
+public class ProcessResult {
+
+    private final int exitCode;
+    private final String output;
+    private final String error;
+    private final long elapsedMillis;
+
+    public ProcessResult(int exitCode, String output, String error, long elapsedMillis) {
+        this.exitCode = exitCode;
+        this.output = output;
+        this.error = error;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public int getExitCode() {
+        return exitCode;
+    }
+
+    /**
+     * What the process wrote to its standard output.
+     */
+    public String getOutput() {
+        return output;
+    }
+
+    /**
+     * What the process wrote to its standard error.
+     */
+    public String getError() {
+        return error;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+}
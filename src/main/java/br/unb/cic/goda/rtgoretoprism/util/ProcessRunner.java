@@ -0,0 +1,172 @@
+package br.unb.cic.goda.rtgoretoprism.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Runs external tools such as PARAM and PRISM.
+ * <p>
+ * At most {@code goda.process.maxConcurrent} processes run at the same time
+ * (default: the number of processors); further calls wait for a slot. Both
+ * output streams are drained while the process runs, so a chatty tool never
+ * blocks on a full pipe, and a process that takes longer than its timeout or
+ * whose caller is interrupted is killed.
+ */
+public class ProcessRunner {
+
+    private static final Logger LOGGER = Logger.getLogger(ProcessRunner.class.getName());
+
+    /** Output kept per stream; anything beyond it is dropped. */
+    private static final int MAX_CAPTURE = 1 << 20;
+
+    private static final ProcessRunner SHARED = new ProcessRunner(
+            Integer.getInteger("goda.process.maxConcurrent", Runtime.getRuntime().availableProcessors()));
+
+    private static final ExecutorService DRAINERS = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "process-drainer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Semaphore slots;
+    private final AtomicLong invocations = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong totalMillis = new AtomicLong();
+    private final AtomicLong maxMillis = new AtomicLong();
+
+    public ProcessRunner(int maxConcurrent) {
+        this.slots = new Semaphore(maxConcurrent, true);
+    }
+
+    public static ProcessRunner shared() {
+        return SHARED;
+    }
+
+    /**
+     * Runs the command and waits for it to finish.
+     *
+     * @param command    the executable followed by its arguments
+     * @param workingDir the working directory, or {@code null} for the current one
+     * @param timeout    how long the process may run
+     * @throws TimeoutException     if the process did not finish in time; it has been killed
+     * @throws InterruptedException if the caller was interrupted; the process has been killed
+     */
+    public ProcessResult run(List<String> command, Path workingDir, long timeout, TimeUnit unit)
+            throws IOException, InterruptedException, TimeoutException {
+        slots.acquire();
+        try {
+            return execute(command, workingDir, timeout, unit);
+        } finally {
+            slots.release();
+        }
+    }
+
+    private ProcessResult execute(List<String> command, Path workingDir, long timeout, TimeUnit unit)
+            throws IOException, InterruptedException, TimeoutException {
+        LOGGER.fine(String.join(" ", command));
+        ProcessBuilder builder = new ProcessBuilder(command);
+        if (workingDir != null)
+            builder.directory(workingDir.toFile());
+        long start = System.nanoTime();
+        invocations.incrementAndGet();
+        Process process;
+        try {
+            process = builder.start();
+        } catch (IOException e) {
+            failures.incrementAndGet();
+            PipelineMetrics.increment("process.failures");
+            throw e;
+        }
+        process.getOutputStream().close();
+        Future<byte[]> output = DRAINERS.submit(() -> drain(process.getInputStream()));
+        Future<byte[]> error = DRAINERS.submit(() -> drain(process.getErrorStream()));
+        try {
+            if (!process.waitFor(timeout, unit)) {
+                timeouts.incrementAndGet();
+                PipelineMetrics.increment("process.timeouts");
+                throw new TimeoutException(command.get(0) + " did not finish in " + timeout + " " + unit.toString().toLowerCase());
+            }
+            long elapsed = record(start);
+            ProcessResult result = new ProcessResult(process.exitValue(), text(output), text(error), elapsed);
+            if (result.getExitCode() != 0) {
+                failures.incrementAndGet();
+                PipelineMetrics.increment("process.failures");
+            }
+            LOGGER.fine(command.get(0) + " finished in " + elapsed + "ms with exit code " + result.getExitCode());
+            return result;
+        } finally {
+            if (process.isAlive()) {
+                process.destroyForcibly();
+                record(start);
+            }
+        }
+    }
+
+    private long record(long start) {
+        long nanos = System.nanoTime() - start;
+        PipelineMetrics.getRecorder().recordDuration("process", nanos);
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(nanos);
+        totalMillis.addAndGet(elapsed);
+        maxMillis.accumulateAndGet(elapsed, Math::max);
+        return elapsed;
+    }
+
+    private static byte[] drain(InputStream in) throws IOException {
+        ByteArrayOutputStream captured = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        try (InputStream stream = in) {
+            int read;
+            while ((read = stream.read(buffer)) != -1) {
+                int keep = Math.min(read, MAX_CAPTURE - captured.size());
+                if (keep > 0)
+                    captured.write(buffer, 0, keep);
+            }
+        }
+        return captured.toByteArray();
+    }
+
+    private static String text(Future<byte[]> stream) throws InterruptedException, IOException {
+        try {
+            return new String(stream.get(), StandardCharsets.UTF_8);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+    }
+
+    public long getInvocations() {
+        return invocations.get();
+    }
+
+    /**
+     * Processes that could not be started or exited with a non zero code.
+     */
+    public long getFailures() {
+        return failures.get();
+    }
+
+    public long getTimeouts() {
+        return timeouts.get();
+    }
+
+    public long getTotalMillis() {
+        return totalMillis.get();
+    }
+
+    public long getMaxMillis() {
+        return maxMillis.get();
+    }
+}
@@ -0,0 +1,133 @@
+package br.unb.cic.goda.rtgoretoprism.util;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A timed step of one generation, with the steps it is made of, for the
+ * profiling report of a single request (unlike {@link PipelineMetrics},
+ * which aggregates over all requests).
+ * <p>
+ * A trace starts with {@link #root(String)}; each step opens a child with
+ * {@link #start(String)} and closes it when done. Steps carry attributes,
+ * such as an element id or a size, and counters, such as cache hits.
+ * {@link #NONE} records nothing and is the default of every producer, so
+ * tracing costs nothing unless asked for. Children may be started from
+ * several threads.
+ */
+public class Span implements AutoCloseable {
+
+    public static final Span NONE = new Span(null, false);
+
+    private final String name;
+    private final boolean recording;
+    private final long start = System.nanoTime();
+    private volatile long duration = -1;
+    private final Map<String, Object> attributes = new LinkedHashMap<>();
+    private final Map<String, Long> counters = new TreeMap<>();
+    private final List<Span> children = new ArrayList<>();
+
+    private Span(String name, boolean recording) {
+        this.name = name;
+        this.recording = recording;
+    }
+
+    public static Span root(String name) {
+        return new Span(name, true);
+    }
+
+    public boolean isRecording() {
+        return recording;
+    }
+
+    /**
+     * Starts a step of this one; returns this span when not recording.
+     */
+    public Span start(String name) {
+        if (!recording)
+            return this;
+        Span child = new Span(name, true);
+        synchronized (children) {
+            children.add(child);
+        }
+        return child;
+    }
+
+    public Span put(String key, Object value) {
+        if (recording) {
+            synchronized (attributes) {
+                attributes.put(key, value);
+            }
+        }
+        return this;
+    }
+
+    public void count(String counter) {
+        count(counter, 1);
+    }
+
+    public void count(String counter, long delta) {
+        if (recording) {
+            synchronized (counters) {
+                counters.merge(counter, delta, Long::sum);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        if (recording && duration < 0)
+            duration = System.nanoTime() - start;
+    }
+
+    /**
+     * The counters of this span and all its steps, added up.
+     */
+    public Map<String, Long> totals() {
+        Map<String, Long> totals = new TreeMap<>();
+        addTotals(totals);
+        return totals;
+    }
+
+    private void addTotals(Map<String, Long> totals) {
+        synchronized (counters) {
+            counters.forEach((counter, value) -> totals.merge(counter, value, Long::sum));
+        }
+        for (Span child : children())
+            child.addTotals(totals);
+    }
+
+    /**
+     * The span as nested maps and lists, ready to be written as JSON: its
+     * name, duration in milliseconds (up to now if still open), attributes,
+     * counters and steps.
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("name", name);
+        long nanos = duration >= 0 ? duration : System.nanoTime() - start;
+        map.put("ms", Math.round(nanos / 1000.0) / 1000.0);
+        synchronized (attributes) {
+            map.putAll(attributes);
+        }
+        synchronized (counters) {
+            if (!counters.isEmpty())
+                map.put("counters", new TreeMap<>(counters));
+        }
+        List<Map<String, Object>> steps = new ArrayList<>();
+        for (Span child : children())
+            steps.add(child.toMap());
+        if (!steps.isEmpty())
+            map.put("steps", steps);
+        return map;
+    }
+
+    private List<Span> children() {
+        synchronized (children) {
+            return new ArrayList<>(children);
+        }
+    }
+}
@@ -3,187 +3,288 @@ package br.unb.cic.integration;
 import br.unb.cic.goda.model.*;
 import br.unb.cic.goda.rtgoretoprism.action.PRISMCodeGenerationAction;
 import br.unb.cic.goda.rtgoretoprism.action.RunParamAction;
-import br.unb.cic.pistar.model.PistarActor;
-import br.unb.cic.pistar.model.PistarLink;
+import br.unb.cic.goda.rtgoretoprism.generator.CodeGenerationException;
+import br.unb.cic.goda.rtgoretoprism.generator.goda.writer.GenerationWorkspace;
+import br.unb.cic.goda.rtgoretoprism.util.PipelineMetrics;
+import br.unb.cic.goda.rtgoretoprism.util.Span;
 import br.unb.cic.pistar.model.PistarModel;
-import br.unb.cic.pistar.model.PistarNode;
+import br.unb.cic.pistar.model.PistarModelReader;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PreDestroy;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.nio.file.*;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
-import java.util.stream.Collectors;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
 public class Controller {
 
+    private final ParamJobService paramJobs = new ParamJobService();
+
     @RequestMapping(value = "/prism-dtmc", method = RequestMethod.POST)
-    public void prism(@RequestParam(value = "content") String content) {
-        Gson gson = new GsonBuilder().create();
-        PistarModel model = gson.fromJson(content, PistarModel.class);
-        Set<Actor> selectedActors = new HashSet<>();
-        Set<Goal> selectedGoals = new HashSet<>();
-        transformToTao4meEntities(model, selectedActors, selectedGoals);
-        try {
-            cleanDTMCFolder();
-            new PRISMCodeGenerationAction(selectedActors, selectedGoals).run();
-            FileOutputStream fos = new FileOutputStream("src/main/webapp/prism.zip");
-            ZipOutputStream zos = new ZipOutputStream(fos);
-            DirectoryStream<Path> directoryStream = Files.newDirectoryStream(Paths.get("dtmc"));
-            for (Path path : directoryStream) {
-                byte[] bytes = Files.readAllBytes(path);
-                zos.putNextEntry(new ZipEntry(path.getFileName().toString()));
-                zos.write(bytes, 0, bytes.length);
-                zos.closeEntry();
-            }
-            zos.close();
-            cleanDTMCFolder();
+    public void prism(@RequestParam(value = "content") String content,
+                      @RequestParam(value = "profile", defaultValue = "false") boolean profile) throws CodeGenerationException {
+        Span trace = trace("prism-dtmc", profile);
+        try (GenerationWorkspace workspace = new GenerationWorkspace()) {
+            generatePrism(parse(content, trace), workspace, trace);
+            publishArchive(workspace, Paths.get("src/main/webapp/prism.zip"));
         } catch (IOException ex) {
             ex.printStackTrace();
         }
     }
 
     @RequestMapping(value = "/param-dtmc", method = RequestMethod.POST)
-    public void param(@RequestParam(value = "content") String content) {
-        Gson gson = new GsonBuilder().create();
-        PistarModel model = gson.fromJson(content, PistarModel.class);
-        Set<Actor> selectedActors = new HashSet<>();
-        Set<Goal> selectedGoals = new HashSet<>();
-        transformToTao4meEntities(model, selectedActors, selectedGoals);
-        try {
-            cleanDTMCFolder();
-            new RunParamAction(selectedActors, selectedGoals).run();
-            FileOutputStream fos = new FileOutputStream("src/main/webapp/param.zip");
-            ZipOutputStream zos = new ZipOutputStream(fos);
-            DirectoryStream<Path> directoryStream = Files.newDirectoryStream(Paths.get("dtmc"));
-            for (Path path : directoryStream) {
-                byte[] bytes = Files.readAllBytes(path);
-                zos.putNextEntry(new ZipEntry(path.getFileName().toString()));
-                zos.write(bytes, 0, bytes.length);
-                zos.closeEntry();
-            }
-            zos.close();
-            cleanDTMCFolder();
+    public void param(@RequestParam(value = "content") String content,
+                      @RequestParam(value = "profile", defaultValue = "false") boolean profile) throws CodeGenerationException {
+        Span trace = trace("param-dtmc", profile);
+        try (GenerationWorkspace workspace = new GenerationWorkspace()) {
+            generateParam(parse(content, trace), workspace, trace);
+            publishArchive(workspace, Paths.get("src/main/webapp/param.zip"));
         } catch (IOException ex) {
             ex.printStackTrace();
         }
     }
 
-    private void cleanDTMCFolder() throws IOException {
-        Files.walk(Paths.get("dtmc"), FileVisitOption.FOLLOW_LINKS)
-                .sorted(Comparator.reverseOrder())
-                .map(Path::toFile)
-                .forEach(f -> {
-                    if (f.isFile()) {
-                        f.delete();
-                    }
-                });
-    }
-
-    private void transformToTao4meEntities(PistarModel model, Set<Actor> selectedActors, Set<Goal> selectedGoals) {
-        List<PistarActor> pistarActors = model.getActors();
-        pistarActors.forEach(pistarActor -> {
-            Actor actor = new ActorImpl(pistarActor);
-            List<PistarNode> notDerivedPlans = new ArrayList<>();
-            notDerivedPlans.addAll(pistarActor.getAllPlans());
-            model.getLinks().forEach(pistarDependency -> {
-                pistarActor.getAllPlans().forEach(pistarPlan -> {
-                    if (pistarDependency.getSource().equals(pistarPlan.getId())) {
-                        boolean planTargetIsGoal = pistarActor.getAllGoals().stream()
-                                .filter(a -> a.getId().equals(pistarDependency.getTarget()))
-                                .collect(Collectors.toList()).isEmpty();
-                        if (planTargetIsGoal) {
-                            notDerivedPlans.remove(pistarPlan);
-                        }
-                    }
-                });
-            });
-            notDerivedPlans.forEach(notDerivedPlan -> {
-                Plan plan = new PlanImpl(notDerivedPlan);
-                actor.addToPlanList(plan);
-            });
-            pistarActor.getAllGoals().forEach(pistarGoal -> {
-                Goal goal = fillDecompositionList(model, pistarActor, pistarGoal, new GoalImpl(pistarGoal));
-                boolean isRootGoal = model.getLinks().stream().noneMatch(l -> l.getSource().equals(pistarGoal.getId()));
-                goal.setRootGoal(isRootGoal);
-                actor.addHardGoal(goal);
-                if (goal.isSelected()) {
-                    selectedGoals.add(goal);
-                    if (!selectedActors.contains(actor)) {
-                        selectedActors.add(actor);
-                    }
-                }
-            });
-        });
-    }
-
-    private Goal fillDecompositionList(PistarModel model, PistarActor pistarActor, PistarNode pistarGoal, Goal goal) {
-        List<PistarLink> linksToGoal = model.getLinks().stream()
-                .filter(d -> d.getTarget().equals(pistarGoal.getId()) && d.getType().contains("Link"))
-                .collect(Collectors.toList());
-        linksToGoal.forEach(l -> {
-            List<PistarNode> sourceGoals = pistarActor.getAllGoals().stream()
-                    .filter(g -> l.getSource().equals(g.getId()))
-                    .collect(Collectors.toList());
-            if (!sourceGoals.isEmpty()) {
-                if (l.getType().contains("And")) {
-                    goal.setAndDecomposition(true);
-                } else if (l.getType().contains("Or")) {
-                    goal.setOrDecomposition(true);
-                }
-            }
-            fillMeansToAndEndPlansList(model, pistarActor, pistarGoal, goal);
-            sourceGoals.forEach(g -> {
-                Goal dependencyGoal = fillDecompositionList(model, pistarActor, g, new GoalImpl(g));
-                goal.addToDecompositionList(dependencyGoal);
-            });
-        });
-        return goal;
-    }
-
-    private void fillMeansToAndEndPlansList(PistarModel model, PistarActor pistarActor, PistarNode pistarGoal, Goal goal) {
-        List<PistarLink> linksToGoal = model.getLinks().stream()
-                .filter(l -> l.getTarget().equals(pistarGoal.getId()) && l.getType().contains("Link"))
-                .collect(Collectors.toList());
-        linksToGoal.forEach(link -> {
-            List<PistarNode> sourcePlans = pistarActor.getAllPlans().stream()
-                    .filter(p -> link.getSource().equals(p.getId()))
-                    .collect(Collectors.toList());
-            sourcePlans.forEach(sp -> {
-                Plan meansToAnEndPlan = fillEndPlans(model, pistarActor, sp, new PlanImpl(sp));
-                goal.addToMeansToAnEndPlans(meansToAnEndPlan);
-            });
-        });
-    }
-
-    private Plan fillEndPlans(PistarModel model, PistarActor pistarActor, PistarNode pistarPlan, Plan meansToAnEndPlan) {
-        List<PistarLink> linksToPlan = model.getLinks().stream()
-                .filter(l -> l.getTarget().equals(pistarPlan.getId()) && l.getType().contains("Link"))
-                .collect(Collectors.toList());
-        linksToPlan.forEach(link -> {
-            List<PistarNode> sourcePlans = pistarActor.getAllPlans().stream()
-                    .filter(p -> link.getSource().equals(p.getId()))
-                    .collect(Collectors.toList());
-            if (!sourcePlans.isEmpty()) {
-                if (link.getType().contains("And")) {
-                    meansToAnEndPlan.setAndDecomposition(true);
-                } else if (link.getType().contains("Or")) {
-                    meansToAnEndPlan.setOrDecomposition(true);
-                }
+    @RequestMapping(value = "/prism-dtmc/archive", method = RequestMethod.POST)
+    public void prismArchive(@RequestParam(value = "content") String content,
+                             @RequestParam(value = "profile", defaultValue = "false") boolean profile,
+                             HttpServletResponse response) throws CodeGenerationException, IOException {
+        Span trace = trace("prism-dtmc", profile);
+        try (GenerationWorkspace workspace = new GenerationWorkspace()) {
+            generatePrism(parse(content, trace), workspace, trace);
+            sendArchive(workspace, "prism.zip", response);
+        }
+    }
+
+    @RequestMapping(value = "/param-dtmc/archive", method = RequestMethod.POST)
+    public void paramArchive(@RequestParam(value = "content") String content,
+                             @RequestParam(value = "profile", defaultValue = "false") boolean profile,
+                             HttpServletResponse response) throws CodeGenerationException, IOException {
+        Span trace = trace("param-dtmc", profile);
+        try (GenerationWorkspace workspace = new GenerationWorkspace()) {
+            generateParam(parse(content, trace), workspace, trace);
+            sendArchive(workspace, "param.zip", response);
+        }
+    }
+
+    @RequestMapping(value = "/prism-dtmc/archive", method = RequestMethod.POST, consumes = MediaType.APPLICATION_JSON_VALUE)
+    public void prismArchiveJson(@RequestParam(value = "profile", defaultValue = "false") boolean profile,
+                                 HttpServletRequest request, HttpServletResponse response) throws CodeGenerationException, IOException {
+        Span trace = trace("prism-dtmc", profile);
+        PistarModel model = read(request, response, trace);
+        if (model == null)
+            return;
+        try (GenerationWorkspace workspace = new GenerationWorkspace()) {
+            generatePrism(model, workspace, trace);
+            sendArchive(workspace, "prism.zip", response);
+        }
+    }
+
+    @RequestMapping(value = "/param-dtmc/archive", method = RequestMethod.POST, consumes = MediaType.APPLICATION_JSON_VALUE)
+    public void paramArchiveJson(@RequestParam(value = "profile", defaultValue = "false") boolean profile,
+                                 HttpServletRequest request, HttpServletResponse response) throws CodeGenerationException, IOException {
+        Span trace = trace("param-dtmc", profile);
+        PistarModel model = read(request, response, trace);
+        if (model == null)
+            return;
+        try (GenerationWorkspace workspace = new GenerationWorkspace()) {
+            generateParam(model, workspace, trace);
+            sendArchive(workspace, "param.zip", response);
+        }
+    }
+
+    @RequestMapping(value = "/param-dtmc/jobs", method = RequestMethod.POST)
+    public ResponseEntity<Map<String, Object>> submitParamJob(@RequestParam(value = "content") String content) {
+        return submitParamJob(parse(content, Span.NONE));
+    }
+
+    @RequestMapping(value = "/param-dtmc/jobs", method = RequestMethod.POST, consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Map<String, Object>> submitParamJobJson(HttpServletRequest request) throws IOException {
+        PistarModel model;
+        try (Reader reader = new InputStreamReader(request.getInputStream(), StandardCharsets.UTF_8);
+             PipelineMetrics.Timer timer = PipelineMetrics.start("parse")) {
+            model = PistarModelReader.read(reader);
+        } catch (JsonParseException ex) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Collections.singletonMap("error", ex.getMessage()));
+        }
+        return submitParamJob(model);
+    }
+
+    private ResponseEntity<Map<String, Object>> submitParamJob(PistarModel model) {
+        Set<Actor> selectedActors = new LinkedHashSet<>();
+        Set<Goal> selectedGoals = new LinkedHashSet<>();
+        transformToTao4meEntities(model, selectedActors, selectedGoals, Span.NONE);
+        try {
+            ParamJob job = paramJobs.submit(selectedActors, selectedGoals);
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(job.getStatus());
+        } catch (RejectedExecutionException ex) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+    }
+
+    @RequestMapping(value = "/param-dtmc/jobs/{id}", method = RequestMethod.GET)
+    public ResponseEntity<Map<String, Object>> paramJobStatus(@PathVariable("id") String id) {
+        ParamJob job = paramJobs.get(id);
+        if (job == null)
+            return ResponseEntity.notFound().build();
+        return ResponseEntity.ok(job.getStatus());
+    }
+
+    @RequestMapping(value = "/param-dtmc/jobs/{id}/events", method = RequestMethod.GET)
+    public SseEmitter paramJobEvents(@PathVariable("id") String id, HttpServletResponse response) throws IOException {
+        ParamJob job = paramJobs.get(id);
+        if (job == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return null;
+        }
+        SseEmitter emitter = new SseEmitter(0L);
+        job.addEmitter(emitter);
+        return emitter;
+    }
+
+    @RequestMapping(value = "/param-dtmc/jobs/{id}/result", method = RequestMethod.GET)
+    public void paramJobResult(@PathVariable("id") String id, HttpServletResponse response) throws IOException {
+        ParamJob job = paramJobs.get(id);
+        if (job == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+        } else if (job.getState() != ParamJob.State.DONE) {
+            response.sendError(HttpServletResponse.SC_CONFLICT, "Job is " + job.getState());
+        } else {
+            response.setContentType("application/zip");
+            response.setHeader("Content-Disposition", "attachment; filename=\"param.zip\"");
+            response.getOutputStream().write(job.getArchive());
+            response.flushBuffer();
+        }
+    }
+
+    @RequestMapping(value = "/param-dtmc/jobs/{id}", method = RequestMethod.DELETE)
+    public ResponseEntity<Void> cancelParamJob(@PathVariable("id") String id) {
+        if (paramJobs.get(id) == null)
+            return ResponseEntity.notFound().build();
+        paramJobs.cancel(id);
+        return ResponseEntity.noContent().build();
+    }
+
+    /**
+     * A model that cannot be converted, such as one with a decomposition
+     * cycle, is a bad request on every endpoint.
+     */
+    @ExceptionHandler(InvalidModelException.class)
+    public ResponseEntity<Map<String, Object>> invalidModel(InvalidModelException ex) {
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Collections.singletonMap("error", ex.getMessage()));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        paramJobs.shutdown();
+    }
+
+    private void generatePrism(PistarModel model, GenerationWorkspace workspace, Span trace) throws CodeGenerationException, IOException {
+        Set<Actor> selectedActors = new LinkedHashSet<>();
+        Set<Goal> selectedGoals = new LinkedHashSet<>();
+        transformToTao4meEntities(model, selectedActors, selectedGoals, trace);
+        PRISMCodeGenerationAction action = new PRISMCodeGenerationAction(selectedActors, selectedGoals, workspace);
+        action.setSpan(trace);
+        action.execute();
+        if (trace.isRecording())
+            ProfilingReport.write(trace, model, workspace);
+    }
+
+    private void generateParam(PistarModel model, GenerationWorkspace workspace, Span trace) throws CodeGenerationException, IOException {
+        Set<Actor> selectedActors = new LinkedHashSet<>();
+        Set<Goal> selectedGoals = new LinkedHashSet<>();
+        transformToTao4meEntities(model, selectedActors, selectedGoals, trace);
+        RunParamAction action = new RunParamAction(selectedActors, selectedGoals, workspace);
+        action.setSpan(trace);
+        action.execute();
+        if (trace.isRecording())
+            ProfilingReport.write(trace, model, workspace);
+    }
+
+    /**
+     * The trace of a request asking for the profiling report, see
+     * {@link ProfilingReport}; otherwise nothing is traced.
+     */
+    private static Span trace(String name, boolean profile) {
+        return profile ? Span.root(name) : Span.NONE;
+    }
+
+    private PistarModel parse(String content, Span trace) {
+        try (PipelineMetrics.Timer timer = PipelineMetrics.start("parse");
+             Span span = trace.start("parse")) {
+            Gson gson = new GsonBuilder().create();
+            return gson.fromJson(content, PistarModel.class);
+        }
+    }
+
+    /**
+     * Reads the JSON request body as a model, or answers 400 and returns
+     * {@code null} when it is not a valid one.
+     */
+    private PistarModel read(HttpServletRequest request, HttpServletResponse response, Span trace) throws IOException {
+        try (Reader reader = new InputStreamReader(request.getInputStream(), StandardCharsets.UTF_8);
+             PipelineMetrics.Timer timer = PipelineMetrics.start("parse");
+             Span span = trace.start("parse")) {
+            return PistarModelReader.read(reader);
+        } catch (JsonParseException ex) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, ex.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Streams the workspace as a ZIP attachment straight onto the response.
+     */
+    private void sendArchive(GenerationWorkspace workspace, String fileName, HttpServletResponse response) throws IOException {
+        response.setContentType("application/zip");
+        response.setHeader("Content-Disposition", "attachment; filename=\"" + fileName + "\"");
+        workspace.writeZip(response.getOutputStream());
+        response.flushBuffer();
+    }
+
+    /**
+     * Zips the workspace next to the target and atomically moves it in place,
+     * so a download never sees a half written archive.
+     */
+    private void publishArchive(GenerationWorkspace workspace, Path target) throws IOException {
+        Path archive = Files.createTempFile(target.toAbsolutePath().getParent(), "archive", ".zip");
+        try {
+            try (OutputStream out = Files.newOutputStream(archive)) {
+                workspace.writeZip(out);
             }
-            sourcePlans.forEach(p -> {
-                Plan endPlan = fillEndPlans(model, pistarActor, p, new PlanImpl(p));
-                meansToAnEndPlan.addToEndPlans(endPlan);
-            });
-        });
-        return meansToAnEndPlan;
+            Files.move(archive, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(archive);
+        }
+    }
+
+    private void transformToTao4meEntities(PistarModel model, Set<Actor> selectedActors, Set<Goal> selectedGoals, Span trace) {
+        try (PipelineMetrics.Timer timer = PipelineMetrics.start("transform");
+             Span span = trace.start("transform")) {
+            new PistarModelConverter(model).convert(selectedActors, selectedGoals);
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,14 @@
+package br.unb.cic.integration;
+
+/**
+ * Thrown when a piStar model cannot be converted, such as when its
+ * decompositions form a cycle.
+ */
+public class InvalidModelException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public InvalidModelException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,179 @@
+package br.unb.cic.integration;
+
+import br.unb.cic.goda.rtgoretoprism.generator.goda.producer.ParamProgressListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A PARAM formula generation submitted to {@link ParamJobService}. Tracks the
+ * state of the run, the per leaf task progress and, once done, the archive.
+ */
+public class ParamJob implements ParamProgressListener {
+
+    public enum State {
+        QUEUED, RUNNING, DONE, FAILED, CANCELLED;
+
+        public boolean isFinished() {
+            return this == DONE || this == FAILED || this == CANCELLED;
+        }
+    }
+
+    private final String id = UUID.randomUUID().toString();
+    private final long submittedAt = System.currentTimeMillis();
+    private final AtomicInteger leavesStarted = new AtomicInteger();
+    private final AtomicInteger leavesFinished = new AtomicInteger();
+    private final List<SseEmitter> emitters = new CopyOnWriteArrayList<>();
+    private volatile State state = State.QUEUED;
+    private volatile long finishedAt;
+    private volatile String error;
+    private volatile byte[] archive;
+    private volatile Future<?> future;
+
+    public String getId() {
+        return id;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public byte[] getArchive() {
+        return archive;
+    }
+
+    public long getFinishedAt() {
+        return finishedAt;
+    }
+
+    void setFuture(Future<?> future) {
+        this.future = future;
+        if (state == State.CANCELLED)
+            future.cancel(true);
+    }
+
+    /**
+     * Cancels the job, unless it has already finished. A running job is
+     * interrupted only once it is marked cancelled, so its thread cannot turn
+     * the interruption into a failure. The interruption also destroys the
+     * PARAM process the job is waiting for.
+     */
+    boolean cancel() {
+        if (!finish(State.CANCELLED, null, null))
+            return false;
+        Future<?> running = future;
+        if (running != null)
+            running.cancel(true);
+        return true;
+    }
+
+    boolean start() {
+        synchronized (this) {
+            if (state != State.QUEUED)
+                return false;
+            state = State.RUNNING;
+        }
+        publish("state");
+        return true;
+    }
+
+    void complete(byte[] archive) {
+        finish(State.DONE, null, archive);
+    }
+
+    void fail(String error) {
+        finish(State.FAILED, error, null);
+    }
+
+    /**
+     * Moves the job to its final state, unless another one got there first.
+     *
+     * @return whether this call finished the job
+     */
+    private boolean finish(State finalState, String error, byte[] archive) {
+        synchronized (this) {
+            if (state.isFinished())
+                return false;
+            this.error = error;
+            this.archive = archive;
+            this.finishedAt = System.currentTimeMillis();
+            this.state = finalState;
+        }
+        publish("state");
+        for (SseEmitter emitter : emitters)
+            emitter.complete();
+        emitters.clear();
+        return true;
+    }
+
+    @Override
+    public void leafStarted(String leafId) {
+        leavesStarted.incrementAndGet();
+        publish("leafStarted", leafId);
+    }
+
+    @Override
+    public void leafFinished(String leafId) {
+        leavesFinished.incrementAndGet();
+        publish("leafFinished", leafId);
+    }
+
+    /**
+     * Registers an emitter that receives the current status right away and
+     * then one event per state change or leaf task.
+     */
+    void addEmitter(SseEmitter emitter) {
+        emitter.onCompletion(() -> emitters.remove(emitter));
+        emitter.onTimeout(() -> emitters.remove(emitter));
+        emitters.add(emitter);
+        send(emitter, "state", getStatus());
+        if (state.isFinished()) {
+            emitters.remove(emitter);
+            emitter.complete();
+        }
+    }
+
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("id", id);
+        status.put("state", state);
+        status.put("leavesStarted", leavesStarted.get());
+        status.put("leavesFinished", leavesFinished.get());
+        status.put("submittedAt", submittedAt);
+        if (finishedAt > 0)
+            status.put("finishedAt", finishedAt);
+        if (error != null)
+            status.put("error", error);
+        return status;
+    }
+
+    private void publish(String event) {
+        publish(event, null);
+    }
+
+    private void publish(String event, String leafId) {
+        if (emitters.isEmpty())
+            return;
+        Map<String, Object> status = getStatus();
+        if (leafId != null)
+            status.put("leaf", leafId);
+        for (SseEmitter emitter : emitters)
+            send(emitter, event, status);
+    }
+
+    private void send(SseEmitter emitter, String event, Map<String, Object> data) {
+        try {
+            emitter.send(SseEmitter.event().name(event).data(data));
+        } catch (IOException | IllegalStateException e) {
+            // The client went away
+            emitters.remove(emitter);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package br.unb.cic.integration;
+
+import br.unb.cic.goda.model.Actor;
+import br.unb.cic.goda.model.Goal;
+import br.unb.cic.goda.rtgoretoprism.action.RunParamAction;
+import br.unb.cic.goda.rtgoretoprism.generator.goda.writer.GenerationWorkspace;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs PARAM formula generations in the background on a bounded pool, so
+ * long generations do not hold on to web request threads.
+ * <p>
+ * The pool size, the queue capacity and how long finished jobs are kept can
+ * be set with the {@code goda.jobs.threads}, {@code goda.jobs.queue} and
+ * {@code goda.jobs.retentionMinutes} system properties.
+ */
+public class ParamJobService {
+
+    private final Map<String, ParamJob> jobs = new ConcurrentHashMap<>();
+    private final ThreadPoolExecutor executor;
+    private final long retentionMillis;
+
+    public ParamJobService() {
+        this(Integer.getInteger("goda.jobs.threads", Runtime.getRuntime().availableProcessors()),
+                Integer.getInteger("goda.jobs.queue", 32),
+                Long.getLong("goda.jobs.retentionMinutes", 30L));
+    }
+
+    public ParamJobService(int threads, int queueCapacity, long retentionMinutes) {
+        AtomicInteger count = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), r -> {
+            Thread thread = new Thread(r, "param-job-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.retentionMillis = TimeUnit.MINUTES.toMillis(retentionMinutes);
+    }
+
+    /**
+     * Queues a generation for the given selection.
+     *
+     * @throws RejectedExecutionException if the queue is full
+     */
+    public ParamJob submit(Set<Actor> selectedActors, Set<Goal> selectedGoals) {
+        purgeExpired();
+        ParamJob job = new ParamJob();
+        jobs.put(job.getId(), job);
+        try {
+            job.setFuture(executor.submit(() -> run(job, selectedActors, selectedGoals)));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.getId());
+            throw e;
+        }
+        return job;
+    }
+
+    public ParamJob get(String id) {
+        return jobs.get(id);
+    }
+
+    public boolean cancel(String id) {
+        ParamJob job = jobs.get(id);
+        if (job == null || !job.cancel())
+            return false;
+        // A cancelled job still queued would hold its place until a thread took it
+        executor.purge();
+        return true;
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void run(ParamJob job, Set<Actor> selectedActors, Set<Goal> selectedGoals) {
+        if (!job.start())
+            return;
+        try (GenerationWorkspace workspace = new GenerationWorkspace()) {
+            job.complete(generate(job, selectedActors, selectedGoals, workspace));
+        } catch (Exception e) {
+            job.fail(e.getMessage() != null ? e.getMessage() : e.toString());
+        }
+    }
+
+    /**
+     * Runs the generation of a job in the workspace and returns its archive.
+     */
+    byte[] generate(ParamJob job, Set<Actor> selectedActors, Set<Goal> selectedGoals, GenerationWorkspace workspace) throws Exception {
+        RunParamAction action = new RunParamAction(selectedActors, selectedGoals, workspace);
+        action.setProgressListener(job);
+        action.execute();
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        workspace.writeZip(archive);
+        return archive.toByteArray();
+    }
+
+    private void purgeExpired() {
+        long limit = System.currentTimeMillis() - retentionMillis;
+        for (Iterator<ParamJob> it = jobs.values().iterator(); it.hasNext(); ) {
+            ParamJob job = it.next();
+            if (job.getState().isFinished() && job.getFinishedAt() < limit)
+                it.remove();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package br.unb.cic.integration;
+
+import br.unb.cic.goda.rtgoretoprism.paramwrapper.FormulaCache;
+import br.unb.cic.goda.rtgoretoprism.util.PipelineMetrics;
+import br.unb.cic.goda.rtgoretoprism.util.ProcessRunner;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.CounterService;
+import org.springframework.boot.actuate.metrics.GaugeService;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Publishes the {@link PipelineMetrics} of the generation stages on the
+ * actuator {@code /metrics} endpoint.
+ * <p>
+ * Durations are Dropwizard timers named {@code timer.goda.<stage>}, in
+ * milliseconds. Sizes are histograms named {@code histogram.goda.<name>}.
+ * Both report a count, a mean and percentiles. Events are counted as
+ * {@code counter.goda.<name>}. The totals of the external process runner and
+ * of the PARAM formula cache are added as {@code goda.process.*} and
+ * {@code goda.formulaCache.*}.
+ */
+@Component
+public class PipelineMetricsRecorder implements PipelineMetrics.Recorder, PublicMetrics {
+
+    private final GaugeService gauges;
+    private final CounterService counters;
+
+    public PipelineMetricsRecorder(GaugeService gauges, CounterService counters) {
+        this.gauges = gauges;
+        this.counters = counters;
+    }
+
+    @PostConstruct
+    public void install() {
+        PipelineMetrics.setRecorder(this);
+    }
+
+    @PreDestroy
+    public void uninstall() {
+        if (PipelineMetrics.getRecorder() == this)
+            PipelineMetrics.setRecorder(null);
+    }
+
+    @Override
+    public void recordDuration(String stage, long nanos) {
+        gauges.submit("timer.goda." + stage, nanos / 1e6);
+    }
+
+    @Override
+    public void recordValue(String name, long value) {
+        gauges.submit("histogram.goda." + name, value);
+    }
+
+    @Override
+    public void increment(String name) {
+        counters.increment("counter.goda." + name);
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<>();
+        ProcessRunner processes = ProcessRunner.shared();
+        metrics.add(new Metric<>("goda.process.invocations", processes.getInvocations()));
+        metrics.add(new Metric<>("goda.process.failures", processes.getFailures()));
+        metrics.add(new Metric<>("goda.process.timeouts", processes.getTimeouts()));
+        metrics.add(new Metric<>("goda.process.totalMillis", processes.getTotalMillis()));
+        metrics.add(new Metric<>("goda.process.maxMillis", processes.getMaxMillis()));
+        FormulaCache cache = FormulaCache.shared();
+        metrics.add(new Metric<>("goda.formulaCache.hits", cache.getHits()));
+        metrics.add(new Metric<>("goda.formulaCache.diskHits", cache.getDiskHits()));
+        metrics.add(new Metric<>("goda.formulaCache.misses", cache.getMisses()));
+        metrics.add(new Metric<>("goda.formulaCache.size", cache.size()));
+        return metrics;
+    }
+}
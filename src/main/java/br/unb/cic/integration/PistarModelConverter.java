@@ -0,0 +1,147 @@
+package br.unb.cic.integration;
+
+import br.unb.cic.goda.model.*;
+import br.unb.cic.pistar.model.PistarActor;
+import br.unb.cic.pistar.model.PistarLink;
+import br.unb.cic.pistar.model.PistarModel;
+import br.unb.cic.pistar.model.PistarModelIndex;
+import br.unb.cic.pistar.model.PistarNode;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Converts a piStar model into the actors, goals and plans the generators
+ * work on.
+ * <p>
+ * Each goal and plan is converted once and shared by every element that
+ * decomposes into it, so a diamond shaped model is not expanded once per
+ * path. A decomposition cycle is reported with an
+ * {@link InvalidModelException}.
+ */
+public class PistarModelConverter {
+
+    private final PistarModelIndex index;
+    private final Map<String, Goal> goals = new HashMap<>();
+    private final Map<String, Plan> plans = new HashMap<>();
+    private final LinkedHashSet<String> path = new LinkedHashSet<>();
+
+    public PistarModelConverter(PistarModel model) {
+        this.index = new PistarModelIndex(model);
+    }
+
+    public void convert(Set<Actor> selectedActors, Set<Goal> selectedGoals) {
+        List<PistarActor> pistarActors = index.getModel().getActors();
+        pistarActors.forEach(pistarActor -> {
+            Actor actor = new ActorImpl(pistarActor);
+            List<PistarNode> notDerivedPlans = index.getPlans(pistarActor).stream()
+                    .filter(pistarPlan -> index.getOutgoingLinks(pistarPlan.getId()).stream()
+                            .allMatch(l -> !index.getGoals(pistarActor, l.getTarget()).isEmpty()))
+                    .collect(Collectors.toList());
+            notDerivedPlans.forEach(notDerivedPlan -> {
+                Plan plan = new PlanImpl(notDerivedPlan);
+                actor.addToPlanList(plan);
+            });
+            index.getGoals(pistarActor).forEach(pistarGoal -> {
+                Goal goal = convertGoal(pistarActor, pistarGoal);
+                boolean isRootGoal = index.getOutgoingLinks(pistarGoal.getId()).isEmpty();
+                goal.setRootGoal(isRootGoal);
+                actor.addHardGoal(goal);
+                if (goal.isSelected()) {
+                    selectedGoals.add(goal);
+                    if (!selectedActors.contains(actor)) {
+                        selectedActors.add(actor);
+                    }
+                }
+            });
+        });
+    }
+
+    private Goal convertGoal(PistarActor pistarActor, PistarNode pistarGoal) {
+        Goal goal = goals.get(pistarGoal.getId());
+        if (goal == null) {
+            enter(pistarGoal);
+            goal = fillDecompositionList(pistarActor, pistarGoal, new GoalImpl(pistarGoal));
+            path.remove(pistarGoal.getId());
+            goals.put(pistarGoal.getId(), goal);
+        }
+        return goal;
+    }
+
+    private Plan convertPlan(PistarActor pistarActor, PistarNode pistarPlan) {
+        Plan plan = plans.get(pistarPlan.getId());
+        if (plan == null) {
+            enter(pistarPlan);
+            plan = fillEndPlans(pistarActor, pistarPlan, new PlanImpl(pistarPlan));
+            path.remove(pistarPlan.getId());
+            plans.put(pistarPlan.getId(), plan);
+        }
+        return plan;
+    }
+
+    private void enter(PistarNode node) {
+        if (!path.add(node.getId())) {
+            List<String> cycle = new ArrayList<>(path);
+            cycle = cycle.subList(cycle.indexOf(node.getId()), cycle.size());
+            StringBuilder sb = new StringBuilder();
+            for (String id : cycle)
+                sb.append(nameOf(id)).append(" -> ");
+            sb.append(node.getText());
+            path.clear();
+            throw new InvalidModelException("Decomposition cycle: " + sb);
+        }
+    }
+
+    private String nameOf(String id) {
+        PistarNode node = index.getNode(id);
+        return node != null ? node.getText() : id;
+    }
+
+    private Goal fillDecompositionList(PistarActor pistarActor, PistarNode pistarGoal, Goal goal) {
+        List<PistarLink> linksToGoal = index.getIncomingLinks(pistarGoal.getId()).stream()
+                .filter(d -> d.getType().contains("Link"))
+                .collect(Collectors.toList());
+        linksToGoal.forEach(l -> {
+            List<PistarNode> sourceGoals = index.getGoals(pistarActor, l.getSource());
+            if (!sourceGoals.isEmpty()) {
+                if (l.getType().contains("And")) {
+                    goal.setAndDecomposition(true);
+                } else if (l.getType().contains("Or")) {
+                    goal.setOrDecomposition(true);
+                }
+            }
+            sourceGoals.forEach(g -> goal.addToDecompositionList(convertGoal(pistarActor, g)));
+        });
+        // Once per goal: it already goes through all the links to the goal
+        fillMeansToAndEndPlansList(pistarActor, pistarGoal, goal);
+        return goal;
+    }
+
+    private void fillMeansToAndEndPlansList(PistarActor pistarActor, PistarNode pistarGoal, Goal goal) {
+        List<PistarLink> linksToGoal = index.getIncomingLinks(pistarGoal.getId()).stream()
+                .filter(l -> l.getType().contains("Link"))
+                .collect(Collectors.toList());
+        linksToGoal.forEach(link -> {
+            List<PistarNode> sourcePlans = index.getPlans(pistarActor, link.getSource());
+            sourcePlans.forEach(sp -> goal.addToMeansToAnEndPlans(convertPlan(pistarActor, sp)));
+        });
+    }
+
+    private Plan fillEndPlans(PistarActor pistarActor, PistarNode pistarPlan, Plan meansToAnEndPlan) {
+        List<PistarLink> linksToPlan = index.getIncomingLinks(pistarPlan.getId()).stream()
+                .filter(l -> l.getType().contains("Link"))
+                .collect(Collectors.toList());
+        linksToPlan.forEach(link -> {
+            List<PistarNode> sourcePlans = index.getPlans(pistarActor, link.getSource());
+            if (!sourcePlans.isEmpty()) {
+                if (link.getType().contains("And")) {
+                    meansToAnEndPlan.setAndDecomposition(true);
+                } else if (link.getType().contains("Or")) {
+                    meansToAnEndPlan.setOrDecomposition(true);
+                }
+            }
+            sourcePlans.forEach(p -> meansToAnEndPlan.addToEndPlans(convertPlan(pistarActor, p)));
+        });
+        return meansToAnEndPlan;
+    }
+}
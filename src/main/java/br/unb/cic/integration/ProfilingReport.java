@@ -0,0 +1,100 @@
+package br.unb.cic.integration;
+
+import br.unb.cic.goda.rtgoretoprism.generator.goda.writer.GenerationWorkspace;
+import br.unb.cic.goda.rtgoretoprism.util.Span;
+import br.unb.cic.pistar.model.PistarActor;
+import br.unb.cic.pistar.model.PistarLink;
+import br.unb.cic.pistar.model.PistarModel;
+import br.unb.cic.pistar.model.PistarModelIndex;
+import br.unb.cic.pistar.model.PistarNode;
+import com.google.gson.GsonBuilder;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The timings.json added to the archive of a request made with
+ * {@code profile=true}, to see where the time of one model goes:
+ * <ul>
+ * <li>{@code model}: node, link and dependency counts of the piStar model
+ * and, per actor, the sizes of what was generated for it (goals, tasks,
+ * elements in alternatives, cardinalities, PRISM model and formula bytes);</li>
+ * <li>{@code caches}: the parser and formula cache hits and misses of the
+ * request;</li>
+ * <li>{@code spans}: the trace of the request, see {@link Span#toMap()}.</li>
+ * </ul>
+ */
+final class ProfilingReport {
+
+    static final String FILE_NAME = "timings.json";
+
+    private ProfilingReport() {
+    }
+
+    /**
+     * Closes the trace and writes the report of the model to the workspace.
+     */
+    static void write(Span trace, PistarModel model, GenerationWorkspace workspace) {
+        trace.close();
+        Map<String, Object> spans = trace.toMap();
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("model", statistics(model, spans));
+        report.put("caches", trace.totals());
+        report.put("spans", spans);
+        workspace.writeFile(new GsonBuilder().setPrettyPrinting().create().toJson(report), FILE_NAME);
+    }
+
+    private static Map<String, Object> statistics(PistarModel model, Map<String, Object> spans) {
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        int nodes = 0;
+        int goals = 0;
+        int tasks = 0;
+        if (model.getActors() != null) {
+            for (PistarActor actor : model.getActors()) {
+                if (actor.getNodes() == null)
+                    continue;
+                for (PistarNode node : actor.getNodes()) {
+                    nodes++;
+                    if (PistarModelIndex.GOAL.equals(node.getType()))
+                        goals++;
+                    else if (PistarModelIndex.TASK.equals(node.getType()))
+                        tasks++;
+                }
+            }
+            statistics.put("actors", model.getActors().size());
+        }
+        statistics.put("nodes", nodes);
+        statistics.put("goals", goals);
+        statistics.put("tasks", tasks);
+        Map<String, Integer> links = new TreeMap<>();
+        if (model.getLinks() != null)
+            for (PistarLink link : model.getLinks())
+                links.merge(link.getType(), 1, Integer::sum);
+        statistics.put("links", links);
+        statistics.put("dependencies", model.getDependencies() != null ? model.getDependencies().size() : 0);
+        Map<String, Map<String, Object>> generated = new TreeMap<>();
+        collectGenerated(spans, generated);
+        statistics.put("generated", generated);
+        return statistics;
+    }
+
+    /**
+     * Copies the sizes put on the actor and formula spans, by actor.
+     */
+    @SuppressWarnings("unchecked")
+    private static void collectGenerated(Map<String, Object> span, Map<String, Map<String, Object>> generated) {
+        Object id = span.get("id");
+        if (id != null && ("actor".equals(span.get("name")) || "formula".equals(span.get("name")))) {
+            Map<String, Object> sizes = generated.computeIfAbsent(id.toString(), actor -> new LinkedHashMap<>());
+            for (String key : new String[]{"goals", "tasks", "alternatives", "cardinalities", "modelBytes", "leaves", "formulaBytes"})
+                if (span.containsKey(key))
+                    sizes.put(key, span.get(key));
+        }
+        Object steps = span.get("steps");
+        if (steps != null)
+            for (Map<String, Object> step : (List<Map<String, Object>>) steps)
+                collectGenerated(step, generated);
+    }
+}
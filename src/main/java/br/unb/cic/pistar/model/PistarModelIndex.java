@@ -0,0 +1,114 @@
+package br.unb.cic.pistar.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lookup tables over a {@link PistarModel}, built in a single pass so that
+ * walking the goal graph does not rescan the links and nodes at every step.
+ * Every list keeps the order of the model.
+ */
+public class PistarModelIndex {
+
+    public static final String GOAL = "istar.Goal";
+    public static final String TASK = "istar.Task";
+
+    private final PistarModel model;
+    private final Map<String, PistarNode> nodes = new HashMap<>();
+    private final Map<String, List<PistarLink>> incomingLinks = new HashMap<>();
+    private final Map<String, List<PistarLink>> outgoingLinks = new HashMap<>();
+    private final Map<PistarActor, Map<String, List<PistarNode>>> nodesByType = new IdentityHashMap<>();
+    private final Map<PistarActor, Map<String, Map<String, List<PistarNode>>>> nodesByTypeAndId = new IdentityHashMap<>();
+
+    public PistarModelIndex(PistarModel model) {
+        this.model = model;
+        if (model.getActors() != null) {
+            for (PistarActor actor : model.getActors()) {
+                Map<String, List<PistarNode>> byType = new HashMap<>();
+                Map<String, Map<String, List<PistarNode>>> byTypeAndId = new HashMap<>();
+                if (actor.getNodes() != null) {
+                    for (PistarNode node : actor.getNodes()) {
+                        nodes.putIfAbsent(node.getId(), node);
+                        byType.computeIfAbsent(node.getType(), t -> new ArrayList<>()).add(node);
+                        byTypeAndId.computeIfAbsent(node.getType(), t -> new HashMap<>())
+                                .computeIfAbsent(node.getId(), id -> new ArrayList<>()).add(node);
+                    }
+                }
+                nodesByType.put(actor, byType);
+                nodesByTypeAndId.put(actor, byTypeAndId);
+            }
+        }
+        if (model.getLinks() != null) {
+            for (PistarLink link : model.getLinks()) {
+                incomingLinks.computeIfAbsent(link.getTarget(), t -> new ArrayList<>()).add(link);
+                outgoingLinks.computeIfAbsent(link.getSource(), s -> new ArrayList<>()).add(link);
+            }
+        }
+    }
+
+    public PistarModel getModel() {
+        return model;
+    }
+
+    /**
+     * The node with the given id, of any actor, or {@code null}.
+     */
+    public PistarNode getNode(String id) {
+        return nodes.get(id);
+    }
+
+    /**
+     * The links whose target is the given node.
+     */
+    public List<PistarLink> getIncomingLinks(String id) {
+        return incomingLinks.getOrDefault(id, Collections.emptyList());
+    }
+
+    /**
+     * The links whose source is the given node.
+     */
+    public List<PistarLink> getOutgoingLinks(String id) {
+        return outgoingLinks.getOrDefault(id, Collections.emptyList());
+    }
+
+    /**
+     * The nodes of the actor with the given type, e.g. {@link #GOAL}.
+     */
+    public List<PistarNode> getNodes(PistarActor actor, String type) {
+        Map<String, List<PistarNode>> byType = nodesByType.get(actor);
+        if (byType == null)
+            return Collections.emptyList();
+        return byType.getOrDefault(type, Collections.emptyList());
+    }
+
+    /**
+     * The nodes of the actor with the given type and id. Ids are meant to be
+     * unique, but a hand edited model may repeat one.
+     */
+    public List<PistarNode> getNodes(PistarActor actor, String type, String id) {
+        Map<String, Map<String, List<PistarNode>>> byTypeAndId = nodesByTypeAndId.get(actor);
+        if (byTypeAndId == null || !byTypeAndId.containsKey(type))
+            return Collections.emptyList();
+        return byTypeAndId.get(type).getOrDefault(id, Collections.emptyList());
+    }
+
+    public List<PistarNode> getGoals(PistarActor actor) {
+        return getNodes(actor, GOAL);
+    }
+
+    public List<PistarNode> getPlans(PistarActor actor) {
+        return getNodes(actor, TASK);
+    }
+
+    public List<PistarNode> getGoals(PistarActor actor, String id) {
+        return getNodes(actor, GOAL, id);
+    }
+
+    public List<PistarNode> getPlans(PistarActor actor, String id) {
+        return getNodes(actor, TASK, id);
+    }
+}
@@ -0,0 +1,227 @@
+package br.unb.cic.pistar.model;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Reads a piStar model with a streaming parser, keeping only what the
+ * generators use. The diagram, the node positions and any unknown field
+ * are skipped without being built.
+ * <p>
+ * Nodes must have an id and a type, links a type, a source and a target;
+ * otherwise a {@link JsonParseException} naming the offending element is
+ * thrown as soon as it has been read. Malformed JSON is reported the same
+ * way.
+ */
+public class PistarModelReader {
+
+    private final JsonReader in;
+
+    private PistarModelReader(Reader reader) {
+        this.in = new JsonReader(reader);
+    }
+
+    public static PistarModel read(Reader reader) throws IOException {
+        try {
+            return new PistarModelReader(reader).readModel();
+        } catch (IllegalStateException | MalformedJsonException | EOFException e) {
+            throw new JsonParseException(e.getMessage(), e);
+        }
+    }
+
+    private PistarModel readModel() throws IOException {
+        PistarModel model = new PistarModel();
+        model.setActors(new ArrayList<>());
+        model.setDependencies(new ArrayList<>());
+        model.setLinks(new ArrayList<>());
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "actors":
+                    in.beginArray();
+                    while (in.hasNext())
+                        model.getActors().add(readActor());
+                    in.endArray();
+                    break;
+                case "dependencies":
+                    in.beginArray();
+                    while (in.hasNext())
+                        model.getDependencies().add(readDependency());
+                    in.endArray();
+                    break;
+                case "links":
+                    in.beginArray();
+                    while (in.hasNext())
+                        model.getLinks().add(readLink());
+                    in.endArray();
+                    break;
+                case "tool":
+                    model.setTool(nextString());
+                    break;
+                case "istar":
+                    model.setIstar(nextString());
+                    break;
+                case "saveDate":
+                    model.setSaveDate(nextString());
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        return model;
+    }
+
+    private PistarActor readActor() throws IOException {
+        String path = in.getPath();
+        PistarActor actor = new PistarActor();
+        actor.setNodes(new ArrayList<>());
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if ("nodes".equals(name)) {
+                in.beginArray();
+                while (in.hasNext())
+                    actor.getNodes().add(readNode());
+                in.endArray();
+            } else if (!readBaseField(actor, name)) {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        require(actor.getId(), "id", path);
+        return actor;
+    }
+
+    private PistarNode readNode() throws IOException {
+        String path = in.getPath();
+        PistarNode node = new PistarNode();
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if ("customProperties".equals(name))
+                node.setCustomProperties(readProperties());
+            else if (!readBaseField(node, name))
+                in.skipValue();
+        }
+        in.endObject();
+        require(node.getId(), "id", path);
+        require(node.getType(), "type", path);
+        return node;
+    }
+
+    private PistarLink readLink() throws IOException {
+        String path = in.getPath();
+        PistarLink link = new PistarLink();
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "id":
+                    link.setId(nextString());
+                    break;
+                case "type":
+                    link.setType(nextString());
+                    break;
+                case "source":
+                    link.setSource(nextString());
+                    break;
+                case "target":
+                    link.setTarget(nextString());
+                    break;
+                case "label":
+                    link.setLabel(nextString());
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        require(link.getType(), "type", path);
+        require(link.getSource(), "source", path);
+        require(link.getTarget(), "target", path);
+        return link;
+    }
+
+    private PistarDependency readDependency() throws IOException {
+        PistarDependency dependency = new PistarDependency();
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if ("source".equals(name))
+                dependency.setSource(nextString());
+            else if ("target".equals(name))
+                dependency.setTarget(nextString());
+            else if (!readBaseField(dependency, name))
+                in.skipValue();
+        }
+        in.endObject();
+        return dependency;
+    }
+
+    /**
+     * Reads the id, type or text of an entity; its position is skipped.
+     */
+    private boolean readBaseField(BasicEntity entity, String name) throws IOException {
+        switch (name) {
+            case "id":
+                entity.setId(nextString());
+                return true;
+            case "type":
+                entity.setType(nextString());
+                return true;
+            case "text":
+                entity.setText(nextString());
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private Map<String, String> readProperties() throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        Map<String, String> properties = new LinkedHashMap<>();
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            properties.put(name, nextString());
+        }
+        in.endObject();
+        return properties;
+    }
+
+    /**
+     * A string, number or boolean as text, like Gson reads it into a String.
+     */
+    private String nextString() throws IOException {
+        JsonToken token = in.peek();
+        switch (token) {
+            case NULL:
+                in.nextNull();
+                return null;
+            case BOOLEAN:
+                return Boolean.toString(in.nextBoolean());
+            case STRING:
+            case NUMBER:
+                return in.nextString();
+            default:
+                throw new JsonParseException("Expected a string but was " + token + " at " + in.getPath());
+        }
+    }
+
+    private static void require(String value, String field, String path) {
+        if (value == null)
+            throw new JsonParseException("Missing " + field + " at " + path);
+    }
+}
@@ -0,0 +1,344 @@
+package br.unb.cic.pistar.model;
+
+import com.google.gson.Gson;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Generates piStar models of any size, for scale and stress tests.
+ * <p>
+ * Each actor gets one selected root goal, refined into sub goals down to
+ * {@code depth} goal levels; goals on the last level (and, with
+ * {@code meansEndRatio}, some above it) are refined by tasks, which are
+ * decomposed into sub tasks for another {@code taskDepth} levels. Nodes
+ * are given RT annotations over their children and context conditions at
+ * random, using only the forms the generators accept, so every model
+ * produces a PRISM model and a PARAM formula. The same seed and settings
+ * always give the same model.
+ * <p>
+ * Can be run from the command line, e.g.
+ * {@code SyntheticModelGenerator --seed 7 --depth 6 --fan-out 2:5 --out model.json};
+ * see {@link #main(String[])}.
+ */
+public class SyntheticModelGenerator {
+
+    private static final String AND = "istar.AndRefinementLink";
+    private static final String OR = "istar.OrRefinementLink";
+    private static final String[] CONTEXT_VARIABLES = {"BATTERY", "MEMORY", "NETWORK", "LOCATION"};
+
+    private final long seed;
+    private int actors = 1;
+    private int depth = 3;
+    private int taskDepth = 1;
+    private int minFanOut = 2;
+    private int maxFanOut = 3;
+    private int maxNodes = Integer.MAX_VALUE;
+    private double orRatio;
+    private double meansEndRatio = 0.1;
+    private double annotationRatio = 0.5;
+    private double contextRatio = 0.1;
+
+    private Random random;
+    private int goals;
+    private int tasks;
+    private int actorNodes;
+
+    public SyntheticModelGenerator(long seed) {
+        this.seed = seed;
+    }
+
+    public void setActors(int actors) {
+        this.actors = actors;
+    }
+
+    /**
+     * Sets the number of goal levels, the root goal included.
+     */
+    public void setDepth(int depth) {
+        this.depth = depth;
+    }
+
+    /**
+     * Sets how many levels of sub tasks the tasks of a goal are decomposed
+     * into; 0 leaves them undecomposed.
+     */
+    public void setTaskDepth(int taskDepth) {
+        this.taskDepth = taskDepth;
+    }
+
+    /**
+     * Sets the range the number of children of a refined node is drawn from.
+     */
+    public void setFanOut(int minFanOut, int maxFanOut) {
+        this.minFanOut = minFanOut;
+        this.maxFanOut = maxFanOut;
+    }
+
+    /**
+     * Sets the number of nodes per actor after which no node is refined.
+     */
+    public void setMaxNodes(int maxNodes) {
+        this.maxNodes = maxNodes;
+    }
+
+    /**
+     * Sets the share of decompositions into sub goals or sub tasks that are
+     * OR refinements; their RT annotations are alternatives. Nested
+     * alternatives multiply the size of the goal formulas in the PRISM
+     * model (several hundred megabytes for a thousand nodes is easily
+     * reached), so this defaults to 0.
+     */
+    public void setOrRatio(double orRatio) {
+        this.orRatio = orRatio;
+    }
+
+    /**
+     * Sets the share of goals between the root and the last level refined by
+     * tasks instead of sub goals.
+     */
+    public void setMeansEndRatio(double meansEndRatio) {
+        this.meansEndRatio = meansEndRatio;
+    }
+
+    public void setAnnotationRatio(double annotationRatio) {
+        this.annotationRatio = annotationRatio;
+    }
+
+    public void setContextRatio(double contextRatio) {
+        this.contextRatio = contextRatio;
+    }
+
+    public PistarModel generate() {
+        random = new Random(seed);
+        goals = 0;
+        tasks = 0;
+        PistarModel model = new PistarModel();
+        model.setActors(new ArrayList<>());
+        model.setDependencies(new ArrayList<>());
+        model.setLinks(new ArrayList<>());
+        model.setTool("pistar.2.0.0");
+        model.setIstar("2.0");
+        for (int i = 1; i <= actors; i++) {
+            PistarActor actor = new PistarActor();
+            actor.setId("actor-" + i);
+            actor.setType("istar.Actor");
+            actor.setText("Actor " + i);
+            actor.setX(0);
+            actor.setY(0);
+            actor.setNodes(new ArrayList<>());
+            model.getActors().add(actor);
+            actorNodes = 0;
+            PistarNode root = addGoal(actor, 0);
+            root.setCustomProperties(new HashMap<>(Collections.singletonMap("selected", "true")));
+            refineGoal(model, actor, root, 1);
+        }
+        return model;
+    }
+
+    public String generateJson() {
+        return new Gson().toJson(generate());
+    }
+
+    private void refineGoal(PistarModel model, PistarActor actor, PistarNode goal, int level) {
+        if (actorNodes >= maxNodes)
+            return;
+        boolean meansEnd = level >= depth || level > 1 && random.nextDouble() < meansEndRatio;
+        int count = fanOut();
+        List<PistarNode> children = new ArrayList<>();
+        if (meansEnd) {
+            for (int i = 0; i < count; i++) {
+                PistarNode task = addTask(actor, level);
+                link(model, task, goal, OR);
+                children.add(task);
+                refineTask(model, actor, task, 1, level + 1);
+            }
+            annotate(goal, children, false, true);
+        } else {
+            String type = random.nextDouble() < orRatio ? OR : AND;
+            for (int i = 0; i < count; i++) {
+                PistarNode sub = addGoal(actor, level);
+                link(model, sub, goal, type);
+                children.add(sub);
+                refineGoal(model, actor, sub, level + 1);
+            }
+            annotate(goal, children, type.equals(OR), false);
+        }
+    }
+
+    private void refineTask(PistarModel model, PistarActor actor, PistarNode task, int taskLevel, int level) {
+        if (taskLevel > taskDepth || actorNodes >= maxNodes)
+            return;
+        String type = random.nextDouble() < orRatio ? OR : AND;
+        List<PistarNode> children = new ArrayList<>();
+        int count = fanOut();
+        for (int i = 0; i < count; i++) {
+            PistarNode sub = addTask(actor, level);
+            link(model, sub, task, type);
+            children.add(sub);
+            refineTask(model, actor, sub, taskLevel + 1, level + 1);
+        }
+        annotate(task, children, type.equals(OR), true);
+    }
+
+    private int fanOut() {
+        return minFanOut + random.nextInt(Math.max(1, maxFanOut - minFanOut + 1));
+    }
+
+    /**
+     * Appends an RT annotation over the children to the node text: an
+     * alternative for OR refinements; otherwise a sequence, an interleaving,
+     * an optional child, a try (over tasks only) or, for a single child, a
+     * cardinality or retry.
+     */
+    private void annotate(PistarNode node, List<PistarNode> children, boolean or, boolean tasks) {
+        if (random.nextDouble() >= annotationRatio)
+            return;
+        List<String> ids = new ArrayList<>();
+        for (PistarNode child : children)
+            ids.add(elementId(child));
+        String annotation;
+        if (or) {
+            annotation = String.join("|", ids);
+        } else if (ids.size() == 1) {
+            String[] operators = {"+", "#", "@"};
+            annotation = ids.get(0) + operators[random.nextInt(operators.length)] + (2 + random.nextInt(3));
+        } else {
+            switch (random.nextInt(!tasks ? 3 : ids.size() == 3 ? 5 : 4)) {
+                case 0:
+                    annotation = String.join(";", ids);
+                    break;
+                case 1:
+                    annotation = String.join("#", ids);
+                    break;
+                case 2:
+                    int optional = random.nextInt(ids.size());
+                    ids.set(optional, "opt(" + ids.get(optional) + ")");
+                    annotation = String.join(random.nextBoolean() ? ";" : "#", ids);
+                    break;
+                case 3:
+                    annotation = ids.size() == 2
+                            ? "try(" + ids.get(0) + ")?" + ids.get(1) + ":skip"
+                            : String.join(";", ids);
+                    break;
+                default:
+                    annotation = "try(" + ids.get(0) + ")?" + ids.get(1) + ":" + ids.get(2);
+            }
+        }
+        node.setText(node.getText() + " [" + annotation + "]");
+    }
+
+    private PistarNode addGoal(PistarActor actor, int level) {
+        PistarNode goal = addNode(actor, "G" + ++goals, PistarModelIndex.GOAL, level);
+        maybeAddContext(goal);
+        return goal;
+    }
+
+    private PistarNode addTask(PistarActor actor, int level) {
+        PistarNode task = addNode(actor, "T" + ++tasks, PistarModelIndex.TASK, level);
+        maybeAddContext(task);
+        return task;
+    }
+
+    private PistarNode addNode(PistarActor actor, String elementId, String type, int level) {
+        PistarNode node = new PistarNode();
+        node.setId(actor.getId() + "-" + elementId);
+        node.setType(type);
+        node.setText(elementId + ": " + (type.equals(PistarModelIndex.GOAL) ? "goal" : "task") + " " + elementId);
+        node.setX(actor.getNodes().size() * 120);
+        node.setY(level * 100);
+        actor.getNodes().add(node);
+        actorNodes++;
+        return node;
+    }
+
+    private void maybeAddContext(PistarNode node) {
+        if (random.nextDouble() >= contextRatio)
+            return;
+        String variable = CONTEXT_VARIABLES[random.nextInt(CONTEXT_VARIABLES.length)];
+        String condition;
+        switch (random.nextInt(3)) {
+            case 0:
+                condition = variable + " = true";
+                break;
+            case 1:
+                condition = variable + " > " + random.nextInt(100);
+                break;
+            default:
+                condition = variable + " <= " + random.nextInt(100) + " & " + variable + " >= 0";
+        }
+        Map<String, String> properties = new HashMap<>();
+        properties.put("creationProperty", "assertion condition " + condition + "%");
+        node.setCustomProperties(properties);
+    }
+
+    private static String elementId(PistarNode node) {
+        return node.getText().substring(0, node.getText().indexOf(':'));
+    }
+
+    private void link(PistarModel model, PistarNode source, PistarNode target, String type) {
+        PistarLink link = new PistarLink();
+        link.setId(source.getId() + "-" + target.getId());
+        link.setType(type);
+        link.setSource(source.getId());
+        link.setTarget(target.getId());
+        model.getLinks().add(link);
+    }
+
+    /**
+     * Writes a generated model as JSON to the {@code --out} file, or to the
+     * standard output. Options: {@code --seed}, {@code --actors},
+     * {@code --depth}, {@code --task-depth}, {@code --fan-out MIN:MAX},
+     * {@code --max-nodes}, {@code --or}, {@code --means-end},
+     * {@code --annotations} and {@code --contexts}, the last four being
+     * ratios between 0 and 1.
+     */
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("--"))
+                throw new IllegalArgumentException("Unexpected argument " + args[i]);
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+        SyntheticModelGenerator generator = new SyntheticModelGenerator(Long.parseLong(options.getOrDefault("seed", "1")));
+        if (options.containsKey("actors"))
+            generator.setActors(Integer.parseInt(options.get("actors")));
+        if (options.containsKey("depth"))
+            generator.setDepth(Integer.parseInt(options.get("depth")));
+        if (options.containsKey("task-depth"))
+            generator.setTaskDepth(Integer.parseInt(options.get("task-depth")));
+        if (options.containsKey("fan-out")) {
+            String[] range = options.get("fan-out").split(":");
+            generator.setFanOut(Integer.parseInt(range[0]), Integer.parseInt(range[range.length - 1]));
+        }
+        if (options.containsKey("max-nodes"))
+            generator.setMaxNodes(Integer.parseInt(options.get("max-nodes")));
+        if (options.containsKey("or"))
+            generator.setOrRatio(Double.parseDouble(options.get("or")));
+        if (options.containsKey("means-end"))
+            generator.setMeansEndRatio(Double.parseDouble(options.get("means-end")));
+        if (options.containsKey("annotations"))
+            generator.setAnnotationRatio(Double.parseDouble(options.get("annotations")));
+        if (options.containsKey("contexts"))
+            generator.setContextRatio(Double.parseDouble(options.get("contexts")));
+
+        String json = generator.generateJson();
+        if (options.containsKey("out")) {
+            Files.write(Paths.get(options.get("out")), json.getBytes(StandardCharsets.UTF_8));
+        } else {
+            Writer out = new OutputStreamWriter(System.out, StandardCharsets.UTF_8);
+            out.write(json);
+            out.flush();
+        }
+    }
+}
@@ -376,35 +376,33 @@ $('#saveModelButton').click(function() {
 });
 
 $('#runPRISMButton').click(function() {
-    var model = saveModel();
-    $.ajax({
-        type: "POST",
-        url: '/prism-dtmc',
-        data: {
-            "content": model
-        },
-        success: function() {
-            window.location.href = 'prism.zip';
-        },
-        error: function(){alert("Error!");}
-    });
+    downloadArchive('/prism-dtmc/archive', 'prism.zip', saveModel());
 });
 
 $('#runPARAMButton').click(function() {
-    var model = saveModel();
-    $.ajax({
-        type: "POST",
-        url: '/param-dtmc',
-        data: {
-            "content": model
-        },
-        success: function() {
-            window.location.href = 'param.zip';
-        },
-        error: function(){alert("Error!");}
-    });
+    downloadArchive('/param-dtmc/archive', 'param.zip', saveModel());
 });
 
+function downloadArchive(url, fileName, model) {
+    var request = new XMLHttpRequest();
+    request.open('POST', url);
+    request.responseType = 'blob';
+    request.setRequestHeader('Content-Type', 'application/x-www-form-urlencoded; charset=UTF-8');
+    request.onload = function() {
+        if (request.status !== 200) {
+            alert("Error!");
+            return;
+        }
+        var a = createDownloadLink(fileName, fileName, URL.createObjectURL(request.response), 'download ' + fileName);
+        document.body.appendChild(a);
+        a.click();
+        document.body.removeChild(a);
+        setTimeout(function() {URL.revokeObjectURL(a.href);}, 1000);
+    };
+    request.onerror = function(){alert("Error!");};
+    request.send('content=' + encodeURIComponent(model));
+}
+
 $('#saveImage, a').click(function() {
     $('#saveImage').hide(200);
 });
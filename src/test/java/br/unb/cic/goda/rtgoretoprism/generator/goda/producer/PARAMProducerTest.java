@@ -0,0 +1,140 @@
+package br.unb.cic.goda.rtgoretoprism.generator.goda.producer;
+
+import br.unb.cic.goda.model.Actor;
+import br.unb.cic.goda.rtgoretoprism.generator.goda.writer.GenerationWorkspace;
+import br.unb.cic.goda.rtgoretoprism.generator.kl.AgentDefinition;
+import br.unb.cic.goda.rtgoretoprism.util.Span;
+import br.unb.cic.pistar.model.SyntheticGeneration;
+import br.unb.cic.pistar.model.SyntheticModelGenerator;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class PARAMProducerTest {
+
+    private static final int ACTORS = 4;
+
+    @Test
+    public void generatesEachActorOnce() throws Exception {
+        SyntheticGeneration generation = generation();
+        try (GenerationWorkspace workspace = new GenerationWorkspace()) {
+            List<String> names = new ArrayList<>();
+            for (AgentDefinition ad : new RTGoreProducer(generation.getActors(), generation.getGoals(), workspace).run())
+                names.add(ad.getAgentName());
+            Assert.assertEquals(ACTORS, names.size());
+            for (int i = 0; i < ACTORS; i++) {
+                Assert.assertEquals("Actor_" + (i + 1), names.get(i));
+                Assert.assertTrue(workspace.exists(names.get(i) + ".pm"));
+            }
+        }
+
+        Span trace = Span.root("param");
+        List<String> results = param(generation, generation.getActors(), trace);
+        int generated = 0;
+        for (Map<String, Object> step : steps(trace.toMap()))
+            if ("actor".equals(step.get("name")))
+                generated++;
+        Assert.assertEquals(ACTORS, generated);
+        for (String result : results)
+            Assert.assertEquals(result, 1, result.split("MAX").length - 1);
+    }
+
+    @Test
+    public void eachActorGetsItsOwnResultFile() throws Exception {
+        SyntheticModelGenerator generator = SyntheticGeneration.annotated(11);
+        generator.setActors(2);
+        SyntheticGeneration generation = new SyntheticGeneration(generator);
+        List<String> alone = new ArrayList<>();
+        for (Actor actor : generation.getActors())
+            alone.addAll(param(generation, Collections.singleton(actor), Span.NONE));
+
+        try (GenerationWorkspace workspace = new GenerationWorkspace()) {
+            generation.producer(workspace).run();
+            Assert.assertFalse(workspace.exists("result.out"));
+            for (int i = 0; i < 2; i++) {
+                String result = new String(workspace.readFile("result_Actor_" + (i + 1) + ".out"), StandardCharsets.UTF_8);
+                Assert.assertTrue(result, result.startsWith("MAX\n"));
+                Assert.assertEquals(alone.get(i), result);
+            }
+        }
+    }
+
+    @Test
+    public void resultsDoNotDependOnScheduling() throws Exception {
+        SyntheticGeneration generation = generation();
+        List<String> expected = param(generation, generation.getActors(), Span.NONE);
+        for (int i = 0; i < 3; i++)
+            Assert.assertEquals(expected, param(generation, generation.getActors(), Span.NONE));
+    }
+
+    @Test
+    public void requestsShareTheLeafPool() throws Exception {
+        SyntheticGeneration generation = generation();
+        Set<String> threads = Collections.synchronizedSet(new HashSet<>());
+        for (int i = 0; i < 3; i++) {
+            try (GenerationWorkspace workspace = new GenerationWorkspace()) {
+                PARAMProducer producer = generation.producer(workspace);
+                producer.setModelCheckerFactory(id -> {
+                    threads.add(Thread.currentThread().getName());
+                    return model -> "rTask" + id;
+                });
+                producer.run();
+            }
+        }
+        for (String thread : threads)
+            Assert.assertTrue(thread, thread.startsWith("param-leaf-"));
+        Assert.assertTrue(threads.toString(), threads.size() <= Runtime.getRuntime().availableProcessors());
+    }
+
+    @Test
+    public void sharedLeafIsDeclaredOnce() throws Exception {
+        // In Test17 a task runs the same leaf task twice, [T1.11;T1.11]
+        SyntheticGeneration generation = SyntheticGeneration.testFile("Test17.txt");
+        try (GenerationWorkspace workspace = new GenerationWorkspace()) {
+            generation.producer(workspace).run();
+            String[] lines = new String(workspace.readFile("result.out"), StandardCharsets.UTF_8).split("\\R");
+            Assert.assertEquals("[rTaskG1_T1_11]", lines[1]);
+            Assert.assertEquals("[[0, 1]]", lines[2]);
+            Assert.assertEquals("  rTaskG1_T1_11^2", lines[3]);
+        }
+    }
+
+    private static SyntheticGeneration generation() {
+        SyntheticModelGenerator generator = SyntheticGeneration.annotated(11);
+        generator.setActors(ACTORS);
+        return new SyntheticGeneration(generator);
+    }
+
+    /**
+     * The result files of a generation, in the order of the actors; all or
+     * one of the actors of the model.
+     */
+    private static List<String> param(SyntheticGeneration generation, Set<Actor> actors, Span trace) throws Exception {
+        try (GenerationWorkspace workspace = new GenerationWorkspace()) {
+            PARAMProducer producer = generation.producer(actors, workspace);
+            producer.setSpan(trace);
+            producer.run();
+            List<String> results = new ArrayList<>();
+            if (actors.size() == 1) {
+                results.add(new String(workspace.readFile("result.out"), StandardCharsets.UTF_8));
+            } else {
+                for (int i = 1; i <= actors.size(); i++)
+                    results.add(new String(workspace.readFile("result_Actor_" + i + ".out"), StandardCharsets.UTF_8));
+            }
+            return results;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> steps(Map<String, Object> span) {
+        Object steps = span.get("steps");
+        return steps != null ? (List<Map<String, Object>>) steps : new ArrayList<>();
+    }
+}
@@ -0,0 +1,37 @@
+package br.unb.cic.goda.rtgoretoprism.generator.goda.writer;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Random;
+
+public class BlankLineWriterTest {
+
+    @Test
+    public void matchesRegexOverWholeText() throws IOException {
+        Random random = new Random(7);
+        char[] alphabet = {'a', ';', ' ', '\t', '\r', '\n', '\n', '\n'};
+        for (int sample = 0; sample < 2000; sample++) {
+            StringBuilder text = new StringBuilder();
+            int length = random.nextInt(60);
+            for (int i = 0; i < length; i++)
+                text.append(alphabet[random.nextInt(alphabet.length)]);
+
+            StringWriter out = new StringWriter();
+            BlankLineWriter writer = new BlankLineWriter(out);
+            // Written in arbitrary pieces, as modules are
+            int start = 0;
+            while (start < text.length()) {
+                int end = Math.min(text.length(), start + 1 + random.nextInt(8));
+                writer.append(text, start, end);
+                start = end;
+            }
+            writer.finish();
+
+            String expected = text.toString().replaceAll("[\t\r\n][\t\r\n]+[\n]+", "\n\n");
+            Assert.assertEquals(expected, out.toString());
+        }
+    }
+}
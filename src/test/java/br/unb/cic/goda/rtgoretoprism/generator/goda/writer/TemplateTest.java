@@ -0,0 +1,47 @@
+package br.unb.cic.goda.rtgoretoprism.generator.goda.writer;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+public class TemplateTest {
+
+    @Test
+    public void rendersLikeReplace() {
+        String pattern = "double rTask$GID$$DEFAULT_VAL$;\n\ts$GID$ :[0..4] init 0;";
+        Map<String, Object> bindings = new HashMap<>();
+        bindings.put("GID", "G1_T1");
+        bindings.put("DEFAULT_VAL", "=0.99");
+
+        String expected = pattern.replace("$GID$", "G1_T1").replace("$DEFAULT_VAL$", "=0.99");
+        Assert.assertEquals(expected, Template.compile(pattern).render(bindings::get));
+    }
+
+    @Test
+    public void keepsUnboundPlaceholdersAndLiteralDollars() {
+        String pattern = "$0 $1 $lower$ $ $$ $UNBOUND$ $A$";
+        Map<String, Object> bindings = new HashMap<>();
+        bindings.put("A", "a");
+
+        Assert.assertEquals("$0 $1 $lower$ $ $$ $UNBOUND$ a", Template.compile(pattern).render(bindings::get));
+    }
+
+    @Test
+    public void nestedTemplatesUseTheEnclosingBindings() {
+        Template module = Template.compile("module $GID$\n$DEC_TYPE$endmodule");
+        Template xor = Template.compile("[] s$GID$ = 0 & $NOT_SKIPPED$ -> (s$GID$'=1);\n");
+        Map<String, Object> bindings = new HashMap<>();
+        bindings.put("GID", "G1_T1");
+        bindings.put("NOT_SKIPPED", "outer");
+        bindings.put("DEC_TYPE", Arrays.asList(xor.with("NOT_SKIPPED", "XOR_G1_T2"), xor));
+
+        Assert.assertEquals("module G1_T1\n"
+                        + "[] sG1_T1 = 0 & XOR_G1_T2 -> (sG1_T1'=1);\n"
+                        + "[] sG1_T1 = 0 & outer -> (sG1_T1'=1);\n"
+                        + "endmodule",
+                module.render(bindings::get));
+    }
+}
@@ -0,0 +1,200 @@
+package br.unb.cic.goda.rtgoretoprism.paramformula;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+public class FormulaStyleTest {
+
+    private static final String[] VARIABLES = {"rTaskG1_T1", "rTaskG1_T2", "OPT_G2_T3", "XOR_G3_T4"};
+
+    @Test
+    public void stylesAgreeOnTheSameAssignment() {
+        Random random = new Random(7);
+        for (int sample = 0; sample < 200; sample++) {
+            Expr formula = randomExpr(random, 4, new ArrayList<>());
+            Map<String, Double> values = new HashMap<>();
+            for (String variable : VARIABLES)
+                values.put(variable, random.nextDouble());
+            double plain = evaluate(FormulaStyle.PLAIN.write(formula), values);
+            Assert.assertEquals(formula.toString(), plain, evaluate(FormulaStyle.SIMPLIFIED.write(formula), values), 1e-9);
+            Assert.assertEquals(formula.toString(), plain, evaluate(FormulaStyle.SHARED.write(formula), values), 1e-9);
+        }
+    }
+
+    @Test
+    public void allNegativeSumIsReadByBcAsWritten() {
+        Variable x = new Variable("x");
+        Variable y = new Variable("y");
+        Map<String, Double> values = new HashMap<>();
+        values.put("x", 0.5);
+        values.put("y", 0.25);
+        Expr sum = Sum.builder().minus(new Power(x, "2")).minus(y).build();
+        Assert.assertEquals(-0.5, evaluate(FormulaStyle.SIMPLIFIED.write(sum), values), 1e-12);
+        Assert.assertEquals(-0.5, evaluate(FormulaStyle.SHARED.write(sum), values), 1e-12);
+        Expr square = Sum.builder().minus(new Product(new Constant("3"), new Power(x, "2"))).build();
+        Assert.assertEquals(-0.75, evaluate(FormulaStyle.SIMPLIFIED.write(square), values), 1e-12);
+        Assert.assertEquals("-3", FormulaStyle.SIMPLIFIED.write(Sum.builder().minus(new Constant("3")).build()));
+    }
+
+    @Test
+    public void leadingMinusBeforeAPowerIsGrouped() {
+        Variable x = new Variable("x");
+        Map<String, Double> values = new HashMap<>();
+        values.put("x", 0.5);
+        // 1 - (1 + x^2) leaves only -x^2
+        Expr formula = Sum.builder().plus(Constant.ONE)
+                .minus(Group.tight(Sum.builder().plus(Constant.ONE).plus(new Power(x, "2")).build())).build();
+        Assert.assertEquals("-(x^2)", FormulaStyle.SIMPLIFIED.write(formula));
+        Assert.assertEquals(-0.25, evaluate(FormulaStyle.SIMPLIFIED.write(formula), values), 1e-12);
+    }
+
+    /**
+     * A random formula that reuses some of its sub-formulas, so the shared
+     * style has something to name.
+     */
+    private static Expr randomExpr(Random random, int depth, List<Expr> made) {
+        Expr expr;
+        int kind = depth == 0 ? random.nextInt(2) : random.nextInt(6);
+        switch (kind) {
+            case 0:
+                expr = new Variable(VARIABLES[random.nextInt(VARIABLES.length)]);
+                break;
+            case 1:
+                expr = new Constant(random.nextBoolean() ? "2" : "0.5");
+                break;
+            case 2:
+            case 3: {
+                Sum.Builder sum = Sum.builder().plus(randomExpr(random, depth - 1, made));
+                for (int i = random.nextInt(3); i >= 0; i--) {
+                    Expr term = Group.tight(randomExpr(random, depth - 1, made));
+                    if (random.nextBoolean())
+                        sum.minus(term);
+                    else
+                        sum.plus(term);
+                }
+                expr = Group.tight(sum.build());
+                break;
+            }
+            case 4:
+                expr = new Product(randomExpr(random, depth - 1, made), randomExpr(random, depth - 1, made));
+                break;
+            default:
+                expr = new Power(Group.tight(randomExpr(random, depth - 1, made)), String.valueOf(2 + random.nextInt(2)));
+                break;
+        }
+        if (!made.isEmpty() && random.nextInt(4) == 0)
+            return made.get(random.nextInt(made.size()));
+        made.add(expr);
+        return expr;
+    }
+
+    /**
+     * Evaluates the lines of a written formula the way {@code bc} reads
+     * them: the assignments first, then the formula on the last line.
+     */
+    private static double evaluate(String text, Map<String, Double> values) {
+        Map<String, Double> scope = new HashMap<>(values);
+        String[] lines = text.split("\n");
+        for (int i = 0; i < lines.length - 1; i++) {
+            int equals = lines[i].indexOf('=');
+            scope.put(lines[i].substring(0, equals), new BcParser(lines[i].substring(equals + 1), scope).parse());
+        }
+        return new BcParser(lines[lines.length - 1], scope).parse();
+    }
+
+    /**
+     * The grammar of {@code bc} expressions, where a unary minus binds
+     * tighter than {@code ^}: {@code -x^2} is {@code (-x)^2}.
+     */
+    private static final class BcParser {
+
+        private final String text;
+        private final Map<String, Double> values;
+        private int pos;
+
+        BcParser(String text, Map<String, Double> values) {
+            this.text = text;
+            this.values = values;
+        }
+
+        double parse() {
+            double value = sum();
+            skipSpaces();
+            Assert.assertEquals("Unparsed input in " + text, text.length(), pos);
+            return value;
+        }
+
+        private double sum() {
+            double value = product();
+            while (true) {
+                if (accept('+'))
+                    value += product();
+                else if (accept('-'))
+                    value -= product();
+                else
+                    return value;
+            }
+        }
+
+        private double product() {
+            double value = power();
+            while (true) {
+                if (accept('*'))
+                    value *= power();
+                else if (accept('/'))
+                    value /= power();
+                else
+                    return value;
+            }
+        }
+
+        private double power() {
+            double base = unary();
+            return accept('^') ? Math.pow(base, power()) : base;
+        }
+
+        private double unary() {
+            return accept('-') ? -unary() : primary();
+        }
+
+        private double primary() {
+            skipSpaces();
+            if (accept('(')) {
+                double value = sum();
+                Assert.assertTrue("Missing ) in " + text, accept(')'));
+                return value;
+            }
+            int start = pos;
+            if (Character.isDigit(text.charAt(pos))) {
+                while (pos < text.length() && (Character.isDigit(text.charAt(pos)) || text.charAt(pos) == '.'))
+                    pos++;
+                return Double.parseDouble(text.substring(start, pos));
+            }
+            while (pos < text.length() && (Character.isLetterOrDigit(text.charAt(pos)) || text.charAt(pos) == '_'))
+                pos++;
+            Double value = values.get(text.substring(start, pos));
+            Assert.assertNotNull("Unknown name at " + start + " in " + text, value);
+            return value;
+        }
+
+        private boolean accept(char c) {
+            skipSpaces();
+            if (pos < text.length() && text.charAt(pos) == c) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+
+        private void skipSpaces() {
+            while (pos < text.length() && text.charAt(pos) == ' ')
+                pos++;
+        }
+    }
+}
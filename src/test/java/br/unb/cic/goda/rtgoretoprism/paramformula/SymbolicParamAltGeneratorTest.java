@@ -0,0 +1,82 @@
+package br.unb.cic.goda.rtgoretoprism.paramformula;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+public class SymbolicParamAltGeneratorTest {
+
+    @Test
+    public void factoredFormulaEqualsCombinations() {
+        Random random = new Random(42);
+        for (int n = 1; n <= 8; n++) {
+            String[] nodes = new String[n];
+            for (int i = 0; i < n; i++)
+                nodes[i] = "G1_T" + (i + 1);
+            Map<String, String> list = new HashMap<>();
+            String[] xors = new String[n];
+            for (int i = 0; i < n; i++) {
+                xors[i] = "XOR_" + nodes[i];
+                list.put(xors[i], nodes[i]);
+            }
+            Expr factored = SymbolicParamAltGenerator.generateFactored(list, xors);
+            Expr combinations = SymbolicParamAltGenerator.generateCombinations(list, xors);
+
+            for (int sample = 0; sample < 20; sample++) {
+                Map<String, Double> values = new HashMap<>();
+                for (int i = 0; i < n; i++) {
+                    values.put(nodes[i], random.nextDouble());
+                    // Both the 0/1 choices and arbitrary values
+                    values.put(xors[i], sample < 10 ? (double) random.nextInt(2) : random.nextDouble());
+                }
+                Assert.assertEquals("n = " + n, evaluate(combinations, values), evaluate(factored, values), 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void singleAlternative() {
+        Assert.assertEquals("( XOR_G1_T1 * G1_T1 )",
+                new SymbolicParamAltGenerator().getAlternativeFormula(new String[]{"G1_T1"}));
+    }
+
+    @Test
+    public void formulaSizeIsQuadratic() {
+        String[] nodes = new String[40];
+        for (int i = 0; i < nodes.length; i++)
+            nodes[i] = "G1_T" + (i + 1);
+        List<String> variables = new ArrayList<>();
+        new SymbolicParamAltGenerator().getAlternativeExpr(nodes).collectVariables(variables);
+        Assert.assertEquals(nodes.length * (nodes.length + 1), variables.size());
+    }
+
+    private static double evaluate(Expr expr, Map<String, Double> values) {
+        if (expr instanceof Variable)
+            return values.get(((Variable) expr).getName());
+        if (expr instanceof Constant)
+            return Double.parseDouble(((Constant) expr).getText());
+        if (expr instanceof Group)
+            return evaluate(((Group) expr).getInner(), values);
+        if (expr instanceof Product) {
+            double product = 1;
+            for (Expr factor : ((Product) expr).getFactors())
+                product *= evaluate(factor, values);
+            return product;
+        }
+        if (expr instanceof Sum) {
+            Sum sum = (Sum) expr;
+            double total = 0;
+            for (int i = 0; i < sum.getTerms().size(); i++)
+                total += (sum.isNegated(i) ? -1 : 1) * evaluate(sum.getTerms().get(i), values);
+            return total;
+        }
+        if (expr instanceof Power)
+            return Math.pow(evaluate(((Power) expr).getBase(), values), Double.parseDouble(((Power) expr).getExponent()));
+        throw new IllegalArgumentException(expr.toString());
+    }
+}
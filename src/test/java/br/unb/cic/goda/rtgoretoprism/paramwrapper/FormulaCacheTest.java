@@ -0,0 +1,122 @@
+package br.unb.cic.goda.rtgoretoprism.paramwrapper;
+
+import br.unb.cic.goda.rtgoretoprism.generator.goda.writer.ParamWriter;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class FormulaCacheTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final AtomicInteger evaluations = new AtomicInteger();
+
+    /** Gives the reliability formula of the leaf the model is for. */
+    private final FormulaCache.Evaluator checker = (model, property) -> {
+        evaluations.incrementAndGet();
+        String id = property.substring(property.indexOf("(s") + 2, property.indexOf(" = 2"));
+        return "rTask" + id + " * (1 - rTask" + id + ")";
+    };
+
+    private final FormulaCache.Evaluator unreachable = (model, property) -> {
+        throw new AssertionError("evaluated " + property);
+    };
+
+    @Test
+    public void hitGetsTheIdOfTheRequestingLeaf() throws Exception {
+        FormulaCache cache = new FormulaCache(16, null);
+
+        Assert.assertEquals("rTaskG1_T1 * (1 - rTaskG1_T1)", formula(cache, "G1_T1", checker));
+        Assert.assertEquals("rTaskG2_T4 * (1 - rTaskG2_T4)", formula(cache, "G2_T4", unreachable));
+        Assert.assertEquals("rTaskG1_T1 * (1 - rTaskG1_T1)", formula(cache, "G1_T1", unreachable));
+        Assert.assertEquals(1, evaluations.get());
+        Assert.assertEquals(1, cache.getMisses());
+        Assert.assertEquals(2, cache.getHits());
+        Assert.assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void diskTierSurvivesANewInstance() throws Exception {
+        Path directory = folder.getRoot().toPath().resolve("formulas");
+        Assert.assertEquals("rTaskG1_T1 * (1 - rTaskG1_T1)", formula(new FormulaCache(16, directory), "G1_T1", checker));
+
+        FormulaCache restarted = new FormulaCache(16, directory);
+        Assert.assertEquals("rTaskG3_T2 * (1 - rTaskG3_T2)", formula(restarted, "G3_T2", unreachable));
+        Assert.assertEquals(1, restarted.getDiskHits());
+        Assert.assertEquals(0, restarted.getMisses());
+        // Read from disk once, then from memory
+        Assert.assertEquals("rTaskG3_T2 * (1 - rTaskG3_T2)", formula(restarted, "G3_T2", unreachable));
+        Assert.assertEquals(1, restarted.getDiskHits());
+        Assert.assertEquals(1, evaluations.get());
+    }
+
+    @Test
+    public void concurrentRequestsShareOneEvaluation() throws Exception {
+        FormulaCache cache = new FormulaCache(16, null);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        FormulaCache.Evaluator slow = (model, property) -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            }
+            return checker.evaluate(model, property);
+        };
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> first = pool.submit(() -> formula(cache, "G1_T1", slow));
+            Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+            Future<String> second = pool.submit(() -> formula(cache, "G1_T2", slow));
+            // The second request counts as a hit before it waits for the first one
+            long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+            while (cache.getHits() == 0 && System.currentTimeMillis() < deadline)
+                Thread.sleep(10);
+            release.countDown();
+
+            Assert.assertEquals("rTaskG1_T1 * (1 - rTaskG1_T1)", first.get(10, TimeUnit.SECONDS));
+            Assert.assertEquals("rTaskG1_T2 * (1 - rTaskG1_T2)", second.get(10, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+            pool.shutdownNow();
+        }
+        Assert.assertEquals(1, evaluations.get());
+        Assert.assertEquals(1, cache.getMisses());
+        Assert.assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    public void emptyFormulaIsNotCached() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        FormulaCache cache = new FormulaCache(16, directory);
+        FormulaCache.Evaluator notRun = (model, property) -> {
+            evaluations.incrementAndGet();
+            return "";
+        };
+
+        Assert.assertEquals("", formula(cache, "G1_T1", notRun));
+        Assert.assertEquals("", formula(cache, "G1_T1", notRun));
+        Assert.assertEquals(2, evaluations.get());
+        Assert.assertEquals(0, cache.size());
+        File[] files = directory.toFile().listFiles();
+        Assert.assertEquals(0, files == null ? 0 : files.length);
+        Assert.assertEquals("rTaskG1_T1 * (1 - rTaskG1_T1)", formula(cache, "G1_T1", checker));
+    }
+
+    private static String formula(FormulaCache cache, String leafId, FormulaCache.Evaluator evaluator) throws Exception {
+        String model = new ParamWriter(leafId).writeModel();
+        return cache.getFormula(leafId, model, ParamWrapper.reliabilityProperty(leafId), evaluator);
+    }
+}
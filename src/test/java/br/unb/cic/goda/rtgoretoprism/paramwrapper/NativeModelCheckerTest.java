@@ -0,0 +1,49 @@
+package br.unb.cic.goda.rtgoretoprism.paramwrapper;
+
+import br.unb.cic.goda.rtgoretoprism.generator.CodeGenerationException;
+import br.unb.cic.goda.rtgoretoprism.generator.goda.writer.ParamWriter;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class NativeModelCheckerTest {
+
+    /**
+     * A model with two modules, which the native engine does not handle.
+     */
+    private static final String TWO_MODULES = "dtmc\n\n"
+            + "param double rTaskT1;\n\n"
+            + "module T1_Task\n\tsT1 :[0..4] init 0;\n\t[] sT1 = 0 -> rTaskT1 : (sT1'=2) + (1 - rTaskT1) : (sT1'=4);\nendmodule\n"
+            + "module Other\n\to :[0..1] init 0;\n\t[] o = 0 -> (o'=1);\nendmodule\n";
+
+    @Test
+    public void leafTaskModelGivesItsParameter() throws Exception {
+        String model = new ParamWriter("G1_T1").writeModel();
+        Assert.assertEquals("rTaskG1_T1", new NativeModelChecker("G1_T1").getFormula(model));
+    }
+
+    @Test
+    public void unsupportedModelFallsBackToParamWrapper() throws Exception {
+        // The PARAM result is already in the wrapper's cache, so no executable is run
+        FormulaCache cache = new FormulaCache(16, null);
+        cache.getFormula("T1", TWO_MODULES, ParamWrapper.reliabilityProperty("T1"), (model, property) -> "rTaskT1*42");
+        ParamWrapper paramWrapper = new ParamWrapper("missing-tools", "T1");
+        paramWrapper.setCache(cache);
+
+        Assert.assertEquals("rTaskT1*42", new NativeModelChecker("T1", paramWrapper).getFormula(TWO_MODULES));
+        Assert.assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    public void supportedModelDoesNotFallBack() throws Exception {
+        String model = new ParamWriter("T1").writeModel();
+        ParametricModelChecker fallback = m -> {
+            throw new AssertionError("fell back on " + m);
+        };
+        Assert.assertEquals("rTaskT1", new NativeModelChecker("T1", fallback).getFormula(model));
+    }
+
+    @Test(expected = CodeGenerationException.class)
+    public void unsupportedModelWithoutFallbackFails() throws Exception {
+        new NativeModelChecker("T1").getFormula(TWO_MODULES);
+    }
+}
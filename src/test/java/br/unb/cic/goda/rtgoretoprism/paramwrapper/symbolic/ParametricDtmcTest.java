@@ -0,0 +1,81 @@
+package br.unb.cic.goda.rtgoretoprism.paramwrapper.symbolic;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+
+public class ParametricDtmcTest {
+
+    private static final Polynomial P = Polynomial.variable("p");
+    private static final Polynomial Q = Polynomial.variable("q");
+    private static final Polynomial R = Polynomial.variable("r");
+
+    @Test
+    public void branchWithASelfLoopOnTheInitialState() throws Exception {
+        ParametricDtmc dtmc = ParametricDtmc.parse("dtmc\n\n"
+                + "param double p;\n"
+                + "param double q;\n\n"
+                + "module M\n"
+                + "\ts :[0..2] init 0;\n"
+                + "\t[] s = 0 -> p : (s'=1) + q : (s'=2) + (1 - p - q) : (s'=0);\n"
+                + "\t[] s = 1 -> (s'=1);\n"
+                + "\t[] s = 2 -> (s'=2);\n"
+                + "endmodule\n");
+
+        // Leaving the loop, the target is taken with probability p / (p + q)
+        assertSameFunction(RationalFunction.of(P, P.add(Q)), dtmc.reachability(Collections.singleton(1)));
+        assertSameFunction(RationalFunction.of(Q, P.add(Q)), dtmc.reachability(Collections.singleton(2)));
+    }
+
+    @Test
+    public void selfLoopOnAnEliminatedState() throws Exception {
+        ParametricDtmc dtmc = ParametricDtmc.parse("dtmc\n\n"
+                + "param double p;\n"
+                + "param double q;\n"
+                + "param double r;\n\n"
+                + "module M\n"
+                + "\ts :[0..4] init 0;\n"
+                + "\t[] s = 0 -> r : (s'=1) + (1 - r) : (s'=4);\n"
+                + "\t[] s = 1 -> p : (s'=2) + q : (s'=3) + (1 - p - q) : (s'=1);\n"
+                + "\t[] s = 2 -> (s'=2);\n"
+                + "\t[] s = 3 -> (s'=3);\n"
+                + "\t[] s = 4 -> (s'=4);\n"
+                + "endmodule\n");
+
+        // r * p / (p + q)
+        assertSameFunction(RationalFunction.of(R.multiply(P), P.add(Q)), dtmc.reachability(Collections.singleton(2)));
+        assertSameFunction(RationalFunction.ONE, dtmc.reachability(Collections.singleton(0)));
+    }
+
+    @Test
+    public void unreachableTargetHasProbabilityZero() throws Exception {
+        ParametricDtmc dtmc = ParametricDtmc.parse("dtmc\n\n"
+                + "module M\n"
+                + "\ts :[0..2] init 0;\n"
+                + "\t[] s = 0 -> 0.5 : (s'=1) + 0.5 : (s'=0);\n"
+                + "\t[] s = 1 -> (s'=1);\n"
+                + "\t[] s = 2 -> (s'=2);\n"
+                + "endmodule\n");
+
+        Assert.assertTrue(dtmc.reachability(Collections.singleton(2)).isZero());
+        assertSameFunction(RationalFunction.ONE, dtmc.reachability(Collections.singleton(1)));
+    }
+
+    @Test(expected = UnsupportedModelException.class)
+    public void secondModuleIsUnsupported() throws Exception {
+        ParametricDtmc.parse("dtmc\n\n"
+                + "module A\n\ta :[0..1] init 0;\n\t[] a = 0 -> (a'=1);\nendmodule\n"
+                + "module B\n\tb :[0..1] init 0;\n\t[] b = 0 -> (b'=1);\nendmodule\n");
+    }
+
+    /**
+     * Compares two rational functions by cross multiplication, which does not
+     * depend on how each one was cancelled.
+     */
+    private static void assertSameFunction(RationalFunction expected, RationalFunction actual) {
+        Assert.assertEquals(expected + " = " + actual,
+                expected.getNumerator().multiply(actual.getDenominator()),
+                actual.getNumerator().multiply(expected.getDenominator()));
+    }
+}
@@ -0,0 +1,59 @@
+package br.unb.cic.goda.rtgoretoprism.paramwrapper.symbolic;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigInteger;
+
+public class RationalTest {
+
+    @Test
+    public void zeroHasASingleForm() {
+        Assert.assertEquals(Rational.ZERO, of(0, 5));
+        Assert.assertEquals(Rational.ZERO, of(0, -3));
+        Assert.assertEquals(Rational.ZERO, of(1, 2).add(of(-1, 2)));
+        Assert.assertEquals(Rational.ZERO, Rational.parse("0.00"));
+        Assert.assertTrue(of(0, 7).isZero());
+        Assert.assertEquals(0, of(0, 7).signum());
+        Assert.assertEquals("0", of(0, 7).toString());
+    }
+
+    @Test
+    public void signIsKeptInTheNumerator() {
+        Assert.assertEquals("-1/2", of(3, -6).toString());
+        Assert.assertEquals("1/2", of(-4, -8).toString());
+        Assert.assertEquals(of(-1, 2), of(1, 2).negate());
+        Assert.assertEquals(-1, of(1, -3).signum());
+        Assert.assertTrue(of(-1, 3).compareTo(Rational.ZERO) < 0);
+        Assert.assertTrue(of(-1, 2).compareTo(of(-1, 3)) < 0);
+        Assert.assertEquals("-3/2", Rational.parse("-1.50").toString());
+        Assert.assertEquals(Rational.ONE, of(-1, 2).divide(of(1, -2)));
+    }
+
+    @Test
+    public void fractionsAreInLowestTerms() {
+        Assert.assertEquals(of(3, 4), of(6, 8));
+        Assert.assertEquals(of(3, 4).hashCode(), of(6, 8).hashCode());
+        Assert.assertEquals("3/4", of(6, 8).toString());
+        Assert.assertEquals("2", of(10, 5).toString());
+        Assert.assertEquals(of(1, 4), Rational.parse("0.25"));
+        Assert.assertEquals(Rational.of(3), Rational.parse("3"));
+        Assert.assertEquals(of(1, 3), of(1, 6).add(of(1, 6)));
+        Assert.assertEquals(of(1, 2), of(2, 3).multiply(of(3, 4)));
+        Assert.assertTrue(of(7, 7).isOne());
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void zeroDenominatorIsRejected() {
+        of(1, 0);
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void divisionByZeroIsRejected() {
+        of(1, 2).divide(Rational.ZERO);
+    }
+
+    private static Rational of(long numerator, long denominator) {
+        return Rational.of(BigInteger.valueOf(numerator), BigInteger.valueOf(denominator));
+    }
+}
@@ -0,0 +1,54 @@
+package br.unb.cic.goda.rtgoretoprism.util;
+
+import br.unb.cic.goda.rtgoretoprism.generator.goda.writer.GenerationWorkspace;
+import br.unb.cic.pistar.model.SyntheticGeneration;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class PipelineMetricsTest {
+
+    private final Map<String, Long> durations = new TreeMap<>();
+    private final Map<String, Long> values = new TreeMap<>();
+
+    @After
+    public void uninstall() {
+        PipelineMetrics.setRecorder(null);
+    }
+
+    @Test
+    public void recordsTheGenerationStages() throws Exception {
+        PipelineMetrics.setRecorder(new PipelineMetrics.Recorder() {
+            @Override
+            public synchronized void recordDuration(String stage, long nanos) {
+                durations.merge(stage, 1L, Long::sum);
+            }
+
+            @Override
+            public synchronized void recordValue(String name, long value) {
+                values.put(name, value);
+            }
+
+            @Override
+            public void increment(String name) {
+            }
+        });
+        SyntheticGeneration generation = new SyntheticGeneration(SyntheticGeneration.annotated(5));
+        try (GenerationWorkspace workspace = new GenerationWorkspace()) {
+            generation.producer(workspace).run();
+            workspace.writeZip(new ByteArrayOutputStream());
+        }
+
+        Assert.assertEquals(Long.valueOf(1), durations.get("param"));
+        Assert.assertEquals(Long.valueOf(1), durations.get("prism"));
+        Assert.assertEquals(Long.valueOf(1), durations.get("zip"));
+        Assert.assertEquals(values.get("param.leaves"), durations.get("param.leaf"));
+        Assert.assertTrue(values.get("prism.bytes") > 0);
+        Assert.assertTrue(values.get("param.bytes") > 0);
+        Assert.assertTrue(values.get("zip.bytes") > values.get("prism.bytes"));
+    }
+}
@@ -0,0 +1,117 @@
+package br.unb.cic.goda.rtgoretoprism.util;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+public class ProcessRunnerTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Before
+    public void needsShell() {
+        Assume.assumeTrue(new File("/bin/sh").canExecute());
+    }
+
+    @Test
+    public void processPastItsTimeoutIsKilled() throws Exception {
+        ProcessRunner runner = new ProcessRunner(1);
+        Path pid = folder.getRoot().toPath().resolve("pid");
+        long start = System.nanoTime();
+        try {
+            runner.run(sh("echo $$ > pid; exec sleep 30"), folder.getRoot().toPath(), 500, TimeUnit.MILLISECONDS);
+            Assert.fail("The process should have timed out");
+        } catch (TimeoutException expected) {
+        }
+        Assert.assertTrue(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) < 10);
+        Assert.assertEquals(1, runner.getTimeouts());
+
+        String id = new String(Files.readAllBytes(pid), StandardCharsets.UTF_8).trim();
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (isAlive(id) && System.currentTimeMillis() < deadline)
+            Thread.sleep(50);
+        Assert.assertFalse("sleep " + id + " is still running", isAlive(id));
+    }
+
+    @Test
+    public void chattyProcessDoesNotBlock() throws Exception {
+        ProcessRunner runner = new ProcessRunner(1);
+        // Far more than a pipe holds, on both streams
+        ProcessResult result = runner.run(sh("head -c 4000000 /dev/zero | tr '\\0' o; head -c 4000000 /dev/zero | tr '\\0' e >&2"),
+                null, 30, TimeUnit.SECONDS);
+
+        Assert.assertEquals(0, result.getExitCode());
+        Assert.assertEquals(1 << 20, result.getOutput().length());
+        Assert.assertEquals(1 << 20, result.getError().length());
+        Assert.assertTrue(result.getOutput().matches("o+"));
+        Assert.assertTrue(result.getError().matches("e+"));
+    }
+
+    @Test
+    public void runsAtMostMaxConcurrentProcesses() throws Exception {
+        ProcessRunner runner = new ProcessRunner(2);
+        Path running = folder.newFolder("running").toPath();
+        // Each process counts the ones running alongside it
+        List<String> command = sh("touch \"$0/$$\"; ls \"$0\" | wc -l; sleep 0.3; rm \"$0/$$\"");
+        command.add(running.toString());
+        ExecutorService callers = Executors.newFixedThreadPool(6);
+        try {
+            List<Future<ProcessResult>> results = new ArrayList<>();
+            for (int i = 0; i < 6; i++)
+                results.add(callers.submit(() -> runner.run(command, null, 30, TimeUnit.SECONDS)));
+            for (Future<ProcessResult> result : results) {
+                ProcessResult done = result.get(30, TimeUnit.SECONDS);
+                Assert.assertEquals(done.getError(), 0, done.getExitCode());
+                int alongside = Integer.parseInt(done.getOutput().trim());
+                Assert.assertTrue(String.valueOf(alongside), alongside >= 1 && alongside <= 2);
+            }
+        } finally {
+            callers.shutdownNow();
+        }
+        Assert.assertEquals(6, runner.getInvocations());
+    }
+
+    @Test
+    public void countsInvocationsFailuresAndTime() throws Exception {
+        ProcessRunner runner = new ProcessRunner(1);
+        Assert.assertEquals(0, runner.run(sh("sleep 0.2"), null, 30, TimeUnit.SECONDS).getExitCode());
+        Assert.assertEquals(3, runner.run(sh("echo failed >&2; exit 3"), null, 30, TimeUnit.SECONDS).getExitCode());
+        try {
+            runner.run(Arrays.asList(folder.getRoot() + "/missing"), null, 30, TimeUnit.SECONDS);
+            Assert.fail("The executable does not exist");
+        } catch (IOException expected) {
+        }
+
+        Assert.assertEquals(3, runner.getInvocations());
+        Assert.assertEquals(2, runner.getFailures());
+        Assert.assertEquals(0, runner.getTimeouts());
+        Assert.assertTrue(String.valueOf(runner.getMaxMillis()), runner.getMaxMillis() >= 200);
+        Assert.assertTrue(runner.getTotalMillis() >= runner.getMaxMillis());
+    }
+
+    private static List<String> sh(String script) {
+        return new ArrayList<>(Arrays.asList("/bin/sh", "-c", script));
+    }
+
+    private static boolean isAlive(String pid) throws Exception {
+        return new ProcessBuilder("/bin/sh", "-c", "kill -0 " + pid + " 2>/dev/null").start().waitFor() == 0;
+    }
+}
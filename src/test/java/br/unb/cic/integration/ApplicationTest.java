@@ -7,14 +7,24 @@ import org.junit.runner.RunWith;
 import org.junit.runners.MethodSorters;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.http.MediaType;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @RunWith(SpringRunner.class)
@@ -453,4 +463,68 @@ public class ApplicationTest {
         }
     }
 
+    @Test
+    public void testPrismArchive() throws Exception {
+        String content = getContent("Test1.txt");
+        mockMvc.perform(post("/prism-dtmc/archive").param("content", content))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/zip"))
+                .andExpect(header().string("Content-Disposition", "attachment; filename=\"prism.zip\""));
+    }
+
+    @Test
+    public void testPrismArchiveProfile() throws Exception {
+        String content = getContent("Test1.txt");
+        byte[] archive = mockMvc.perform(post("/prism-dtmc/archive").param("content", content).param("profile", "true"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsByteArray();
+        Set<String> entries = new HashSet<>();
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(archive))) {
+            for (ZipEntry entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry())
+                entries.add(entry.getName());
+        }
+        Assert.assertTrue(entries.contains("timings.json"));
+    }
+
+    @Test
+    public void testParamJob() throws Exception {
+        String content = getContent("Test1.txt");
+        mockMvc.perform(post("/param-dtmc/jobs").param("content", content))
+                .andExpect(status().isAccepted())
+                .andExpect(jsonPath("$.id").exists());
+        mockMvc.perform(get("/param-dtmc/jobs/unknown"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void testPrismArchiveJson() throws Exception {
+        String content = getContent("Test1.txt");
+        mockMvc.perform(post("/prism-dtmc/archive").contentType(MediaType.APPLICATION_JSON).content(content))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/zip"));
+        mockMvc.perform(post("/prism-dtmc/archive").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"actors\": [{\"id\": \"a\", \"nodes\": [{\"type\": \"istar.Goal\"}]}]}"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void testDecompositionCycle() throws Exception {
+        String content = "{\"actors\": [{\"id\": \"a\", \"text\": \"Actor\", \"type\": \"istar.Actor\", \"nodes\": ["
+                + "{\"id\": \"g1\", \"text\": \"G1: first\", \"type\": \"istar.Goal\", \"customProperties\": {\"selected\": \"true\"}},"
+                + "{\"id\": \"g2\", \"text\": \"G2: second\", \"type\": \"istar.Goal\"}]}],"
+                + "\"links\": ["
+                + "{\"id\": \"l1\", \"type\": \"istar.AndRefinementLink\", \"source\": \"g2\", \"target\": \"g1\"},"
+                + "{\"id\": \"l2\", \"type\": \"istar.AndRefinementLink\", \"source\": \"g1\", \"target\": \"g2\"}],"
+                + "\"dependencies\": []}";
+        String cycle = "Decomposition cycle: G1: first -> G2: second -> G1: first";
+        for (String endpoint : new String[]{"/prism-dtmc", "/param-dtmc", "/prism-dtmc/archive", "/param-dtmc/archive", "/param-dtmc/jobs"}) {
+            mockMvc.perform(post(endpoint).param("content", content))
+                    .andExpect(status().isBadRequest())
+                    .andExpect(jsonPath("$.error").value(cycle));
+        }
+        mockMvc.perform(post("/param-dtmc/archive").contentType(MediaType.APPLICATION_JSON).content(content))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error").value(cycle));
+    }
+
 }
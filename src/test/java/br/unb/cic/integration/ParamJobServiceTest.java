@@ -0,0 +1,96 @@
+package br.unb.cic.integration;
+
+import br.unb.cic.goda.model.Actor;
+import br.unb.cic.goda.model.Goal;
+import br.unb.cic.goda.rtgoretoprism.generator.goda.writer.GenerationWorkspace;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+public class ParamJobServiceTest {
+
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final CountDownLatch interrupted = new CountDownLatch(1);
+
+    /** One thread and room for one queued job; a job runs until released. */
+    private final ParamJobService service = new ParamJobService(1, 1, 30) {
+        @Override
+        byte[] generate(ParamJob job, Set<Actor> selectedActors, Set<Goal> selectedGoals, GenerationWorkspace workspace) throws Exception {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+                throw e;
+            }
+            return new byte[0];
+        }
+    };
+
+    @After
+    public void shutdown() {
+        release.countDown();
+        service.shutdown();
+    }
+
+    @Test
+    public void cancelledJobGivesBackItsPlaceInTheQueue() throws Exception {
+        ParamJob running = submit();
+        Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+        ParamJob queued = submit();
+        try {
+            submit();
+            Assert.fail("The queue should be full");
+        } catch (RejectedExecutionException expected) {
+        }
+
+        Assert.assertTrue(service.cancel(queued.getId()));
+        Assert.assertEquals(ParamJob.State.CANCELLED, queued.getState());
+        ParamJob resubmitted = submit();
+
+        release.countDown();
+        awaitFinished(running);
+        awaitFinished(resubmitted);
+        Assert.assertEquals(ParamJob.State.DONE, running.getState());
+        Assert.assertEquals(ParamJob.State.DONE, resubmitted.getState());
+        Assert.assertEquals(ParamJob.State.CANCELLED, queued.getState());
+    }
+
+    @Test
+    public void cancelledRunningJobIsInterruptedAndStaysCancelled() throws Exception {
+        ParamJob running = submit();
+        Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        Assert.assertTrue(service.cancel(running.getId()));
+        Assert.assertEquals(ParamJob.State.CANCELLED, running.getState());
+        Assert.assertTrue(interrupted.await(10, TimeUnit.SECONDS));
+
+        // The only thread takes the next job once the cancelled one has returned
+        release.countDown();
+        ParamJob next = submit();
+        awaitFinished(next);
+        Assert.assertEquals(ParamJob.State.DONE, next.getState());
+        Assert.assertEquals(ParamJob.State.CANCELLED, running.getState());
+        Assert.assertNull(running.getArchive());
+        Assert.assertFalse(service.cancel(running.getId()));
+        Assert.assertFalse(service.cancel(next.getId()));
+        Assert.assertEquals(ParamJob.State.DONE, next.getState());
+    }
+
+    private ParamJob submit() {
+        return service.submit(Collections.emptySet(), Collections.emptySet());
+    }
+
+    private static void awaitFinished(ParamJob job) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (!job.getState().isFinished() && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+    }
+}
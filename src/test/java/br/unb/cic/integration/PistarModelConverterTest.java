@@ -0,0 +1,39 @@
+package br.unb.cic.integration;
+
+import br.unb.cic.goda.model.Actor;
+import br.unb.cic.goda.model.Goal;
+import br.unb.cic.goda.model.Plan;
+import br.unb.cic.pistar.model.PistarModel;
+import com.google.gson.Gson;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+public class PistarModelConverterTest {
+
+    @Test
+    public void meansEndPlansOfAGoalWithTwoIncomingLinksAreAddedOnce() {
+        String content = "{\"actors\": [{\"id\": \"a\", \"text\": \"Actor\", \"type\": \"istar.Actor\", \"nodes\": ["
+                + "{\"id\": \"g1\", \"text\": \"G1: root\", \"type\": \"istar.Goal\", \"customProperties\": {\"selected\": \"true\"}},"
+                + "{\"id\": \"t1\", \"text\": \"T1: first\", \"type\": \"istar.Task\"},"
+                + "{\"id\": \"t2\", \"text\": \"T2: second\", \"type\": \"istar.Task\"}]}],"
+                + "\"links\": ["
+                + "{\"id\": \"l1\", \"type\": \"istar.AndRefinementLink\", \"source\": \"t1\", \"target\": \"g1\"},"
+                + "{\"id\": \"l2\", \"type\": \"istar.AndRefinementLink\", \"source\": \"t2\", \"target\": \"g1\"}],"
+                + "\"dependencies\": []}";
+        Set<Actor> actors = new LinkedHashSet<>();
+        Set<Goal> goals = new LinkedHashSet<>();
+        new PistarModelConverter(new Gson().fromJson(content, PistarModel.class)).convert(actors, goals);
+
+        Assert.assertEquals(1, goals.size());
+        List<String> plans = new ArrayList<>();
+        for (Plan plan : goals.iterator().next().getMeansToAnEndPlans())
+            plans.add(plan.getName());
+        Assert.assertEquals(2, plans.size());
+        Assert.assertTrue(plans.toString(), plans.contains("T1: first") && plans.contains("T2: second"));
+    }
+}
@@ -0,0 +1,66 @@
+package br.unb.cic.integration;
+
+import br.unb.cic.goda.rtgoretoprism.generator.goda.producer.PARAMProducer;
+import br.unb.cic.goda.rtgoretoprism.generator.goda.writer.GenerationWorkspace;
+import br.unb.cic.goda.rtgoretoprism.util.Span;
+import br.unb.cic.pistar.model.PistarModel;
+import br.unb.cic.pistar.model.SyntheticGeneration;
+import br.unb.cic.pistar.model.SyntheticModelGenerator;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+public class ProfilingReportTest {
+
+    @Test
+    public void reportsTheTraceOfAParamGeneration() throws Exception {
+        SyntheticModelGenerator generator = SyntheticGeneration.annotated(3);
+        generator.setContextRatio(0.5);
+        SyntheticGeneration generation = new SyntheticGeneration(generator);
+        PistarModel model = generation.getModel();
+
+        JsonObject report;
+        try (GenerationWorkspace workspace = new GenerationWorkspace()) {
+            Span trace = Span.root("param-dtmc");
+            PARAMProducer producer = generation.producer(workspace);
+            producer.setSpan(trace);
+            producer.run();
+            ProfilingReport.write(trace, model, workspace);
+            String json = new String(workspace.readFile(ProfilingReport.FILE_NAME), StandardCharsets.UTF_8);
+            report = new JsonParser().parse(json).getAsJsonObject();
+        }
+
+        JsonObject statistics = report.getAsJsonObject("model");
+        int tasks = statistics.get("tasks").getAsInt();
+        Assert.assertEquals(model.getActors().get(0).getNodes().size(), statistics.get("nodes").getAsInt());
+        JsonObject generated = statistics.getAsJsonObject("generated").getAsJsonObject("Actor_1");
+        Assert.assertEquals(tasks, generated.get("tasks").getAsInt());
+        Assert.assertTrue(generated.get("modelBytes").getAsInt() > 0);
+        Assert.assertTrue(generated.get("formulaBytes").getAsInt() > 0);
+
+        JsonObject caches = report.getAsJsonObject("caches");
+        Assert.assertTrue(caches.has("rtParser.hits") || caches.has("rtParser.misses"));
+        Assert.assertTrue(caches.has("ctxParser.hits") || caches.has("ctxParser.misses"));
+
+        Map<String, Integer> spans = new HashMap<>();
+        countSpans(report.getAsJsonObject("spans"), spans);
+        Assert.assertEquals(Integer.valueOf(1), spans.get("formula"));
+        Assert.assertEquals(generated.get("leaves").getAsInt(), spans.get("leaf").intValue());
+        Assert.assertEquals(spans.get("leaf"), spans.get("render"));
+    }
+
+    private static void countSpans(JsonObject span, Map<String, Integer> spans) {
+        spans.merge(span.get("name").getAsString(), 1, Integer::sum);
+        JsonArray steps = span.getAsJsonArray("steps");
+        if (steps != null)
+            for (JsonElement step : steps)
+                countSpans(step.getAsJsonObject(), spans);
+    }
+}
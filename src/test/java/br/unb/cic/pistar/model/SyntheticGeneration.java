@@ -0,0 +1,82 @@
+package br.unb.cic.pistar.model;
+
+import br.unb.cic.goda.model.Actor;
+import br.unb.cic.goda.model.Goal;
+import br.unb.cic.goda.rtgoretoprism.generator.goda.producer.PARAMProducer;
+import br.unb.cic.goda.rtgoretoprism.generator.goda.writer.GenerationWorkspace;
+import br.unb.cic.integration.PistarModelConverter;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * A synthetic or bundled model converted for the generators, for the tests
+ * that run a whole PARAM generation without the PARAM tool: the model
+ * checker of {@link #producer} gives each leaf task its own parameter.
+ */
+public final class SyntheticGeneration {
+
+    private final PistarModel model;
+    private final Set<Actor> actors = new LinkedHashSet<>();
+    private final Set<Goal> goals = new LinkedHashSet<>();
+
+    public SyntheticGeneration(SyntheticModelGenerator generator) {
+        this(generator.generate());
+    }
+
+    public SyntheticGeneration(PistarModel model) {
+        this.model = model;
+        new PistarModelConverter(model).convert(actors, goals);
+    }
+
+    /**
+     * One of the models in src/main/resources/testFiles.
+     */
+    public static SyntheticGeneration testFile(String name) throws IOException {
+        try (Reader reader = Files.newBufferedReader(Paths.get("src/main/resources/testFiles", name))) {
+            return new SyntheticGeneration(PistarModelReader.read(reader));
+        }
+    }
+
+    /**
+     * A generator whose tasks all have an annotation, so every goal gets a
+     * formula.
+     */
+    public static SyntheticModelGenerator annotated(long seed) {
+        SyntheticModelGenerator generator = new SyntheticModelGenerator(seed);
+        generator.setAnnotationRatio(1);
+        return generator;
+    }
+
+    public PistarModel getModel() {
+        return model;
+    }
+
+    public Set<Actor> getActors() {
+        return actors;
+    }
+
+    public Set<Goal> getGoals() {
+        return goals;
+    }
+
+    /**
+     * A producer of all the actors of the model.
+     */
+    public PARAMProducer producer(GenerationWorkspace workspace) {
+        return producer(actors, workspace);
+    }
+
+    /**
+     * A producer of some of the actors of the model.
+     */
+    public PARAMProducer producer(Set<Actor> actors, GenerationWorkspace workspace) {
+        PARAMProducer producer = new PARAMProducer(actors, goals, workspace, "tools");
+        producer.setModelCheckerFactory(id -> dtmc -> "rTask" + id);
+        return producer;
+    }
+}
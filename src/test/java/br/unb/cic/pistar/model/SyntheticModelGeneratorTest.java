@@ -0,0 +1,71 @@
+package br.unb.cic.pistar.model;
+
+import br.unb.cic.goda.rtgoretoprism.generator.goda.writer.GenerationWorkspace;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.HashSet;
+import java.util.Set;
+
+public class SyntheticModelGeneratorTest {
+
+    @Test
+    public void sameSeedGivesSameModel() {
+        Assert.assertEquals(generator(42).generateJson(), generator(42).generateJson());
+        Assert.assertNotEquals(generator(42).generateJson(), generator(43).generateJson());
+    }
+
+    @Test
+    public void linksConnectNodesOfTheModel() {
+        SyntheticModelGenerator generator = generator(1);
+        generator.setActors(3);
+        PistarModel model = generator.generate();
+
+        Assert.assertEquals(3, model.getActors().size());
+        Set<String> ids = new HashSet<>();
+        for (PistarActor actor : model.getActors())
+            for (PistarNode node : actor.getNodes())
+                Assert.assertTrue(node.getId(), ids.add(node.getId()));
+        for (PistarLink link : model.getLinks()) {
+            Assert.assertTrue(ids.contains(link.getSource()));
+            Assert.assertTrue(ids.contains(link.getTarget()));
+        }
+    }
+
+    @Test
+    public void stopsRefiningAtMaxNodes() {
+        SyntheticModelGenerator generator = generator(1);
+        generator.setDepth(10);
+        generator.setFanOut(2, 4);
+        generator.setMaxNodes(500);
+        int nodes = generator.generate().getActors().get(0).getNodes().size();
+
+        Assert.assertTrue(String.valueOf(nodes), nodes >= 500 && nodes < 500 + 4 * 10);
+    }
+
+    @Test
+    public void generatedModelsAreAccepted() throws Exception {
+        for (long seed = 0; seed < 20; seed++) {
+            SyntheticModelGenerator generator = generator(seed);
+            generator.setTaskDepth((int) (seed % 3));
+            generator.setOrRatio(0.2);
+            generator.setAnnotationRatio(0.8);
+            generator.setContextRatio(0.3);
+            // Through the JSON text, so the reader accepts what the generator writes
+            SyntheticGeneration generation = new SyntheticGeneration(PistarModelReader.read(new StringReader(generator.generateJson())));
+            try (GenerationWorkspace workspace = new GenerationWorkspace()) {
+                generation.producer(workspace).run();
+                Assert.assertTrue(workspace.exists("Actor_1.pm"));
+                Assert.assertTrue(workspace.exists("result.out"));
+            }
+        }
+    }
+
+    private static SyntheticModelGenerator generator(long seed) {
+        SyntheticModelGenerator generator = new SyntheticModelGenerator(seed);
+        generator.setDepth(3);
+        generator.setFanOut(1, 3);
+        return generator;
+    }
+}